@@ -94,7 +94,7 @@ public class TestarConexaoAction implements AcaoRotinaJava {
                     FastchannelHttpClient httpClient = new FastchannelHttpClient();
                     // Fazer uma chamada simples para verificar conectividade
                     // GET em /orders com limit=1 apenas para testar
-                    String testUrl = config.getBaseUrl() + "/orders?PageNumber=1&PageSize=1";
+                    String testUrl = config.getOrderApiBase() + "/orders?PageNumber=1&PageSize=1";
                     resultado.append("   Testando: ").append(testUrl).append("\n");
 
                     // O cliente HTTP já trata erros e retries
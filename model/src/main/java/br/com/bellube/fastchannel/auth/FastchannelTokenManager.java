@@ -2,38 +2,34 @@ package br.com.bellube.fastchannel.auth;
 
 import br.com.bellube.fastchannel.config.FastchannelConfig;
 import br.com.bellube.fastchannel.config.FastchannelConstants;
+import br.com.bellube.fastchannel.http.FastchannelHttpClient;
+import br.com.bellube.fastchannel.http.FastchannelHttpTransport;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.Proxy;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 
 /**
  * Gerenciador de Token OAuth2 para Fastchannel Commerce API.
  *
  * Implementa padrão Singleton com:
- * - Cache em memória do access_token
- * - Renovação proativa antes da expiração (5 min buffer)
- * - Thread-safe com synchronized
- * - Retry em caso de falha
+ * - Token publicado como snapshot imutavel (volatile): leituras nunca bloqueiam
+ * - Renovação proativa em background dentro da janela
+ *   {@link FastchannelConstants#TOKEN_REFRESH_BUFFER_SECONDS}
+ * - Renovação single-flight: threads que recebem 401 com o mesmo token
+ *   disparam uma unica chamada ao Azure AD
+ * - Renovação síncrona apenas quando não há token válido
  */
 public class FastchannelTokenManager {
 
@@ -42,19 +38,64 @@ public class FastchannelTokenManager {
 
     private static FastchannelTokenManager instance;
 
-    // Cache de Token
-    private String accessToken;
-    private long expiresAt; // Timestamp em milissegundos
-
     // Timeout em ms
     private static final int CONNECT_TIMEOUT_MS = 30000;
     private static final int READ_TIMEOUT_MS = 30000;
-    private static volatile SSLSocketFactory insecureSslSocketFactory;
-    private static volatile HostnameVerifier insecureHostnameVerifier;
+
+    // Intervalo minimo entre tentativas de renovacao em background
+    private static final long BACKGROUND_RETRY_MS = 30_000;
+    // Margem minima de validade para entregar um token ainda nao renovado
+    private static final long EXPIRY_SAFETY_MS = 30_000;
+
+    /**
+     * Obtem um token novo no provedor OAuth2.
+     */
+    interface TokenFetcher {
+        TokenSnapshot fetch() throws Exception;
+    }
+
+    /**
+     * Token e expiracao publicados juntos, nunca alterados depois de criados.
+     */
+    static final class TokenSnapshot {
+        final String accessToken;
+        final long expiresAt; // Timestamp em milissegundos
+
+        TokenSnapshot(String accessToken, long expiresAt) {
+            this.accessToken = accessToken;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt - FastchannelConstants.TOKEN_REFRESH_BUFFER_SECONDS * 1000L;
+        }
+
+        boolean isUsable(long now) {
+            return now < expiresAt - EXPIRY_SAFETY_MS;
+        }
+    }
+
+    private final TokenFetcher fetcher;
+    private final ScheduledExecutorService refresher;
+    private final Object renewLock = new Object();
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+
+    private volatile TokenSnapshot snapshot;
+    private volatile long lastBackgroundAttempt;
+    private ScheduledFuture<?> scheduledRefresh; // guardado por renewLock
 
     private FastchannelTokenManager() {
-        this.accessToken = null;
-        this.expiresAt = 0;
+        this.fetcher = this::requestToken;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fc-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    FastchannelTokenManager(TokenFetcher fetcher) {
+        this.fetcher = fetcher;
+        this.refresher = null;
     }
 
     /**
@@ -69,61 +110,142 @@ public class FastchannelTokenManager {
 
     /**
      * Obtém token válido para uso em requisições.
-     * Renova automaticamente se necessário.
+     * Dentro da janela de renovação devolve o token atual e renova em
+     * background; só bloqueia quando não há token utilizável.
      *
      * @return Access token Bearer válido
      * @throws Exception se falhar na autenticação
      */
-    public synchronized String getValidToken() throws Exception {
+    public String getValidToken() throws Exception {
+        TokenSnapshot current = snapshot;
         long now = System.currentTimeMillis();
-        long bufferMs = FastchannelConstants.TOKEN_REFRESH_BUFFER_SECONDS * 1000L;
-
-        // Verifica se token ainda é válido (com margem de segurança)
-        if (accessToken != null && now < (expiresAt - bufferMs)) {
-            log.fine("Usando token Fastchannel em cache. Expira em: " + ((expiresAt - now) / 1000) + "s");
-            return accessToken;
+        if (current != null && current.isFresh(now)) {
+            return current.accessToken;
+        }
+        if (current != null && current.isUsable(now)) {
+            requestBackgroundRefresh();
+            return current.accessToken;
         }
 
-        // Token expirado ou inexistente - renovar
-        log.info("Token Fastchannel expirado ou inexistente. Renovando...");
-        return renewToken();
+        synchronized (renewLock) {
+            TokenSnapshot latest = snapshot;
+            if (latest != null && latest.isUsable(System.currentTimeMillis())) {
+                // Renovado por outra thread enquanto esperava
+                return latest.accessToken;
+            }
+            log.info("Token Fastchannel expirado ou inexistente. Renovando...");
+            return renewLocked();
+        }
     }
 
     /**
      * Força renovação do token (útil após erro 401).
      */
-    public synchronized String forceRenew() throws Exception {
-        log.info("Forçando renovação de token Fastchannel...");
-        return renewToken();
+    public String forceRenew() throws Exception {
+        TokenSnapshot current = snapshot;
+        return forceRenew(current != null ? current.accessToken : null);
+    }
+
+    /**
+     * Renova o token recusado pela API. Se outra thread já trocou o token
+     * enquanto esta esperava, devolve o novo sem nova chamada ao provedor.
+     */
+    public String forceRenew(String rejectedToken) throws Exception {
+        synchronized (renewLock) {
+            TokenSnapshot latest = snapshot;
+            if (latest != null && rejectedToken != null && !rejectedToken.equals(latest.accessToken)
+                    && latest.isUsable(System.currentTimeMillis())) {
+                return latest.accessToken;
+            }
+            log.info("Forçando renovação de token Fastchannel...");
+            return renewLocked();
+        }
     }
 
     /**
      * Invalida token atual.
      */
-    public synchronized void invalidate() {
-        this.accessToken = null;
-        this.expiresAt = 0;
+    public void invalidate() {
+        this.snapshot = null;
         log.info("Token Fastchannel invalidado.");
     }
 
     /**
      * Verifica se há token válido em cache.
      */
-    public synchronized boolean hasValidToken() {
-        long bufferMs = FastchannelConstants.TOKEN_REFRESH_BUFFER_SECONDS * 1000L;
-        return accessToken != null && System.currentTimeMillis() < (expiresAt - bufferMs);
+    public boolean hasValidToken() {
+        TokenSnapshot current = snapshot;
+        return current != null && current.isFresh(System.currentTimeMillis());
     }
 
     /**
      * Retorna tempo restante do token em segundos, ou 0 se expirado.
      */
-    public synchronized long getRemainingSeconds() {
-        if (accessToken == null) return 0;
-        long remaining = (expiresAt - System.currentTimeMillis()) / 1000;
+    public long getRemainingSeconds() {
+        TokenSnapshot current = snapshot;
+        if (current == null) return 0;
+        long remaining = (current.expiresAt - System.currentTimeMillis()) / 1000;
         return Math.max(0, remaining);
     }
 
-    private String renewToken() throws Exception {
+    /**
+     * Chamado com renewLock: obtem o token, publica o snapshot e agenda a
+     * proxima renovacao antecipada.
+     */
+    private String renewLocked() throws Exception {
+        TokenSnapshot fresh = fetcher.fetch();
+        snapshot = fresh;
+        scheduleRefresh(fresh);
+        return fresh.accessToken;
+    }
+
+    private void scheduleRefresh(TokenSnapshot token) {
+        if (refresher == null) {
+            return;
+        }
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        long bufferMs = FastchannelConstants.TOKEN_REFRESH_BUFFER_SECONDS * 1000L;
+        long delayMs = Math.max(BACKGROUND_RETRY_MS, token.expiresAt - bufferMs - System.currentTimeMillis());
+        scheduledRefresh = refresher.schedule(this::requestBackgroundRefresh, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void requestBackgroundRefresh() {
+        if (refresher == null) {
+            return;
+        }
+        if (System.currentTimeMillis() - lastBackgroundAttempt < BACKGROUND_RETRY_MS) {
+            return;
+        }
+        if (refreshPending.compareAndSet(false, true)) {
+            try {
+                refresher.execute(this::refreshInBackground);
+            } catch (RuntimeException e) {
+                refreshPending.set(false);
+                log.log(Level.WARNING, "Nao foi possivel agendar renovacao do token Fastchannel", e);
+            }
+        }
+    }
+
+    private void refreshInBackground() {
+        try {
+            synchronized (renewLock) {
+                TokenSnapshot current = snapshot;
+                if (current != null && current.isFresh(System.currentTimeMillis())) {
+                    return;
+                }
+                lastBackgroundAttempt = System.currentTimeMillis();
+                renewLocked();
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Renovacao antecipada do token Fastchannel falhou; token atual segue em uso.", e);
+        } finally {
+            refreshPending.set(false);
+        }
+    }
+
+    private TokenSnapshot requestToken() throws Exception {
         FastchannelConfig config = FastchannelConfig.getInstance();
 
         // Validar configuração
@@ -145,27 +267,16 @@ public class FastchannelTokenManager {
                 encode(config.getClientSecret()),
                 encode(config.getScope()));
 
-        HttpURLConnection connection = null;
         try {
-            URL url = new URL(config.getAuthUrl());
-            connection = (HttpURLConnection) url.openConnection(Proxy.NO_PROXY);
-            configureSslIfNeeded(connection);
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            connection.setReadTimeout(READ_TIMEOUT_MS);
-            connection.setDoOutput(true);
-
-            // Enviar body
-            try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = formBody.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "application/x-www-form-urlencoded");
+            FastchannelHttpClient.HttpResult response = FastchannelHttpTransport.getInstance().execute(
+                    "POST", config.getAuthUrl(), headers, formBody, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
 
-            int responseCode = connection.getResponseCode();
+            int responseCode = response.getStatusCode();
 
             if (responseCode == 200) {
-                String responseBody = readResponse(connection);
+                String responseBody = response.getBody();
                 TokenData tokenData = parseTokenResponse(responseBody);
                 if (tokenData.accessToken == null || tokenData.accessToken.isEmpty()) {
                     String snippet = responseBody == null ? "" : responseBody.substring(0, Math.min(200, responseBody.length()));
@@ -180,15 +291,15 @@ public class FastchannelTokenManager {
                     throw new Exception(msg);
                 }
 
-                this.accessToken = tokenData.accessToken;
                 int expiresIn = tokenData.expiresIn;
-                this.expiresAt = System.currentTimeMillis() + (expiresIn * 1000L);
+                TokenSnapshot token = new TokenSnapshot(tokenData.accessToken,
+                        System.currentTimeMillis() + (expiresIn * 1000L));
 
                 log.info("Token Fastchannel renovado com sucesso. Expira em: " + expiresIn + " segundos.");
-                return this.accessToken;
+                return token;
 
             } else {
-                String errorBody = readErrorResponse(connection);
+                String errorBody = response.getBody();
                 String snippet = errorBody == null ? "" : errorBody.substring(0, Math.min(200, errorBody.length()));
                 log.severe("Falha na autenticacao Fastchannel. HTTP " + responseCode + ": " + snippet);
                 String msg = "Falha na autenticacao Fastchannel: HTTP " + responseCode;
@@ -205,10 +316,6 @@ public class FastchannelTokenManager {
                 msg = e.getClass().getSimpleName();
             }
             throw new Exception("Falha de Autenticacao Fastchannel: " + msg, e);
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 
@@ -302,27 +409,6 @@ public class FastchannelTokenManager {
         return null;
     }
 
-    private String readResponse(HttpURLConnection connection) throws Exception {
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-            return br.lines().collect(Collectors.joining());
-        }
-    }
-
-    private String readErrorResponse(HttpURLConnection connection) {
-        try {
-            if (connection.getErrorStream() != null) {
-                try (BufferedReader br = new BufferedReader(
-                        new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8))) {
-                    return br.lines().collect(Collectors.joining());
-                }
-            }
-        } catch (Exception e) {
-            // Ignorar
-        }
-        return "";
-    }
-
     private String encode(String value) {
         try {
             return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
@@ -330,39 +416,4 @@ public class FastchannelTokenManager {
             return value;
         }
     }
-
-    private void configureSslIfNeeded(HttpURLConnection connection) throws Exception {
-        if (!(connection instanceof HttpsURLConnection)) {
-            return;
-        }
-
-        String configured = System.getProperty("fastchannel.ssl.insecure");
-        if (configured == null || configured.trim().isEmpty()) {
-            configured = System.getenv("FASTCHANNEL_SSL_INSECURE");
-        }
-        boolean insecure = configured == null || configured.trim().isEmpty() || Boolean.parseBoolean(configured);
-        if (!insecure) {
-            return;
-        }
-
-        if (insecureSslSocketFactory == null || insecureHostnameVerifier == null) {
-            synchronized (FastchannelTokenManager.class) {
-                if (insecureSslSocketFactory == null || insecureHostnameVerifier == null) {
-                    TrustManager[] trustAll = new TrustManager[]{new X509TrustManager() {
-                        public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
-                        public void checkClientTrusted(X509Certificate[] chain, String authType) {}
-                        public void checkServerTrusted(X509Certificate[] chain, String authType) {}
-                    }};
-                    SSLContext sc = SSLContext.getInstance("TLS");
-                    sc.init(null, trustAll, new SecureRandom());
-                    insecureSslSocketFactory = sc.getSocketFactory();
-                    insecureHostnameVerifier = (hostname, session) -> true;
-                }
-            }
-        }
-
-        HttpsURLConnection https = (HttpsURLConnection) connection;
-        https.setSSLSocketFactory(insecureSslSocketFactory);
-        https.setHostnameVerifier(insecureHostnameVerifier);
-    }
 }
@@ -9,6 +9,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,6 +61,7 @@ public class FastchannelConfig {
     private boolean uiEnableSource2;
     private boolean uiEnableSource3;
     private boolean disableDuplicateCheckFromConfig;
+    private String outboxLaneWeights;
 
     private long lastLoadTime;
     private static final long CACHE_TTL_MS = 300_000;
@@ -212,6 +217,12 @@ public class FastchannelConfig {
             this.disableDuplicateCheckFromConfig = false;
         }
 
+        if (DbColumnSupport.hasColumn(rs, "OUTBOX_LANE_WEIGHTS")) {
+            this.outboxLaneWeights = rs.getString("OUTBOX_LANE_WEIGHTS");
+        } else {
+            this.outboxLaneWeights = null;
+        }
+
         if (this.subscriptionKeyDistribution == null || this.subscriptionKeyDistribution.isEmpty()) {
             this.subscriptionKeyDistribution = this.subscriptionKey;
         }
@@ -244,6 +255,7 @@ public class FastchannelConfig {
         this.uiEnableSource2 = false;
         this.uiEnableSource3 = false;
         this.disableDuplicateCheckFromConfig = false;
+        this.outboxLaneWeights = null;
         this.batchSize = FastchannelConstants.DEFAULT_BATCH_SIZE;
         this.maxRequestsPerMinute = FastchannelConstants.DEFAULT_RATE_LIMIT_PER_MINUTE;
     }
@@ -289,10 +301,69 @@ public class FastchannelConfig {
     }
 
     public String getAuthUrl() {
+        String root = getApiRootOverride();
+        if (root != null) {
+            return root + FastchannelConstants.AUTH_PATH_OVERRIDE;
+        }
         checkCacheValidity();
         return authUrl != null ? authUrl : FastchannelConstants.AUTH_URL;
     }
 
+    /**
+     * Raiz alternativa para todas as APIs Fastchannel e o token OAuth2 (ex.:
+     * simulador local http://127.0.0.1:8089). Mantem os caminhos do gateway
+     * (/order-management/v1, /stock-management/v1, /price-management/v1).
+     * Propriedade fastchannel.api.root (ou env FASTCHANNEL_API_ROOT).
+     *
+     * @return raiz sem barra final, ou null se nao configurada
+     */
+    public String getApiRootOverride() {
+        String value = System.getProperty("fastchannel.api.root");
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv("FASTCHANNEL_API_ROOT");
+        }
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        String root = value.trim();
+        while (root.endsWith("/")) {
+            root = root.substring(0, root.length() - 1);
+        }
+        return root;
+    }
+
+    /**
+     * URL base da Order Management API (BASE_URL do AD_FCCONFIG quando
+     * aponta para order-management).
+     */
+    public String getOrderApiBase() {
+        String root = getApiRootOverride();
+        if (root != null) {
+            return rebase(root, FastchannelConstants.ORDER_API_BASE);
+        }
+        String configuredBase = getBaseUrl();
+        if (configuredBase != null && configuredBase.contains("/order-management/")) {
+            return configuredBase;
+        }
+        return FastchannelConstants.ORDER_API_BASE;
+    }
+
+    public String getStockApiBase() {
+        String root = getApiRootOverride();
+        return root != null ? rebase(root, FastchannelConstants.STOCK_API_BASE) : FastchannelConstants.STOCK_API_BASE;
+    }
+
+    public String getPriceApiBase() {
+        String root = getApiRootOverride();
+        return root != null ? rebase(root, FastchannelConstants.PRICE_API_BASE) : FastchannelConstants.PRICE_API_BASE;
+    }
+
+    private static String rebase(String root, String defaultBase) {
+        int scheme = defaultBase.indexOf("://");
+        int path = defaultBase.indexOf('/', scheme + 3);
+        return root + (path >= 0 ? defaultBase.substring(path) : "");
+    }
+
     public BigDecimal getCodTipOper() {
         checkCacheValidity();
         return codTipOper;
@@ -454,6 +525,296 @@ public class FastchannelConfig {
         return !disableDuplicateCheckFromConfig;
     }
 
+    /**
+     * Pesos das raias da fila por tipo de entidade (AD_FCCONFIG.OUTBOX_LANE_WEIGHTS),
+     * no formato TIPO=peso separado por virgula. Tipos da fila ausentes sao
+     * drenados com peso 1 pelo outbox.
+     */
+    public Map<String, Integer> getOutboxLaneWeights() {
+        checkCacheValidity();
+        Map<String, Integer> weights = parseLaneWeights(outboxLaneWeights);
+        if (weights.isEmpty()) {
+            weights = parseLaneWeights(FastchannelConstants.DEFAULT_OUTBOX_LANE_WEIGHTS);
+        }
+        return weights;
+    }
+
+    static Map<String, Integer> parseLaneWeights(String raw) {
+        if (raw == null || raw.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : raw.split("[,;]")) {
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String type = part.substring(0, eq).trim().toUpperCase(Locale.ROOT);
+            try {
+                int weight = Integer.parseInt(part.substring(eq + 1).trim());
+                if (!type.isEmpty() && weight > 0) {
+                    weights.put(type, weight);
+                }
+            } catch (NumberFormatException e) {
+                log.warning("Peso de raia invalido ignorado: " + part);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Quantidade de workers paralelos do processamento da fila.
+     * Propriedade fastchannel.outbox.workers (ou env FASTCHANNEL_OUTBOX_WORKERS).
+     */
+    public int getOutboxWorkers() {
+        return readPositiveInt("fastchannel.outbox.workers", FastchannelConstants.DEFAULT_OUTBOX_WORKERS);
+    }
+
+    /**
+     * Teto de workers simultaneos por tipo de entidade (ESTOQUE, PRECO...).
+     * Propriedade fastchannel.outbox.workers.per.entity (ou env FASTCHANNEL_OUTBOX_WORKERS_PER_ENTITY).
+     */
+    public int getOutboxWorkersPerEntity() {
+        return readPositiveInt("fastchannel.outbox.workers.per.entity",
+                FastchannelConstants.DEFAULT_OUTBOX_WORKERS_PER_ENTITY);
+    }
+
+    /**
+     * Duracao do lease de um item da fila em PROCESSANDO. Apos expirar, o item
+     * pode ser reivindicado por outro worker/no.
+     * Propriedade fastchannel.queue.lease.seconds (ou env FASTCHANNEL_QUEUE_LEASE_SECONDS).
+     */
+    public int getQueueLeaseSeconds() {
+        return readPositiveInt("fastchannel.queue.lease.seconds", FastchannelConstants.DEFAULT_QUEUE_LEASE_SECONDS);
+    }
+
+    /**
+     * Quantidade de desfechos acumulados antes de gravar o status da fila em lote.
+     * Propriedade fastchannel.queue.status.flush.size (ou env FASTCHANNEL_QUEUE_STATUS_FLUSH_SIZE).
+     */
+    public int getQueueStatusFlushSize() {
+        return readPositiveInt("fastchannel.queue.status.flush.size",
+                FastchannelConstants.DEFAULT_QUEUE_STATUS_FLUSH_SIZE);
+    }
+
+    /**
+     * Drenagem continua da fila: uma execucao do outbox processa varios lotes.
+     * Propriedade fastchannel.outbox.drain.enabled (ou env FASTCHANNEL_OUTBOX_DRAIN_ENABLED), padrao true.
+     */
+    public boolean isOutboxDrainEnabled() {
+        String value = System.getProperty("fastchannel.outbox.drain.enabled");
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv("FASTCHANNEL_OUTBOX_DRAIN_ENABLED");
+        }
+        return value == null || value.trim().isEmpty() || Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Tempo maximo (segundos) de uma execucao do outbox em modo de drenagem.
+     * Propriedade fastchannel.outbox.drain.seconds (ou env FASTCHANNEL_OUTBOX_DRAIN_SECONDS).
+     */
+    public int getOutboxDrainSeconds() {
+        return readPositiveInt("fastchannel.outbox.drain.seconds", FastchannelConstants.DEFAULT_OUTBOX_DRAIN_SECONDS);
+    }
+
+    /**
+     * Ajuste adaptativo (AIMD) de lote e workers do outbox pela latencia/429 da API,
+     * sempre abaixo do lote e de fastchannel.outbox.workers configurados.
+     * Propriedade fastchannel.adaptive.enabled (ou env FASTCHANNEL_ADAPTIVE_ENABLED), padrao true.
+     */
+    public boolean isAdaptiveThroughputEnabled() {
+        String value = System.getProperty("fastchannel.adaptive.enabled");
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv("FASTCHANNEL_ADAPTIVE_ENABLED");
+        }
+        return value == null || value.trim().isEmpty() || Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Menor lote do ajuste adaptativo.
+     * Propriedade fastchannel.adaptive.batch.min (ou env FASTCHANNEL_ADAPTIVE_BATCH_MIN).
+     */
+    public int getAdaptiveMinBatchSize() {
+        return readPositiveInt("fastchannel.adaptive.batch.min", FastchannelConstants.DEFAULT_ADAPTIVE_MIN_BATCH_SIZE);
+    }
+
+    /**
+     * Maior lote do ajuste adaptativo.
+     * Propriedade fastchannel.adaptive.batch.max (ou env FASTCHANNEL_ADAPTIVE_BATCH_MAX).
+     */
+    public int getAdaptiveMaxBatchSize() {
+        return readPositiveInt("fastchannel.adaptive.batch.max", FastchannelConstants.DEFAULT_ADAPTIVE_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Teto de workers do ajuste adaptativo.
+     * Propriedade fastchannel.adaptive.workers.max (ou env FASTCHANNEL_ADAPTIVE_WORKERS_MAX).
+     */
+    public int getAdaptiveMaxWorkers() {
+        return readPositiveInt("fastchannel.adaptive.workers.max", FastchannelConstants.DEFAULT_ADAPTIVE_MAX_WORKERS);
+    }
+
+    /**
+     * p95 de latencia (ms) acima do qual o ajuste adaptativo reduz a carga.
+     * Propriedade fastchannel.adaptive.latency.target.ms (ou env FASTCHANNEL_ADAPTIVE_LATENCY_TARGET_MS).
+     */
+    public int getAdaptiveLatencyTargetMs() {
+        return readPositiveInt("fastchannel.adaptive.latency.target.ms",
+                FastchannelConstants.DEFAULT_ADAPTIVE_LATENCY_TARGET_MS);
+    }
+
+    /**
+     * Dias que itens finalizados permanecem na fila antes de sair para o historico.
+     * Propriedade fastchannel.queue.archive.days (ou env FASTCHANNEL_QUEUE_ARCHIVE_DAYS).
+     */
+    public int getQueueArchiveDays() {
+        return readPositiveInt("fastchannel.queue.archive.days", FastchannelConstants.DEFAULT_QUEUE_ARCHIVE_DAYS);
+    }
+
+    /**
+     * Linhas movidas por comando no arquivamento da fila.
+     * Propriedade fastchannel.queue.archive.chunk (ou env FASTCHANNEL_QUEUE_ARCHIVE_CHUNK).
+     */
+    public int getQueueArchiveChunkSize() {
+        return readPositiveInt("fastchannel.queue.archive.chunk",
+                FastchannelConstants.DEFAULT_QUEUE_ARCHIVE_CHUNK_SIZE);
+    }
+
+    /**
+     * Pausa (ms) entre blocos do arquivamento, liberando a tabela para os listeners.
+     * Propriedade fastchannel.queue.archive.pause.ms (ou env FASTCHANNEL_QUEUE_ARCHIVE_PAUSE_MS).
+     */
+    public int getQueueArchivePauseMs() {
+        return readPositiveInt("fastchannel.queue.archive.pause.ms",
+                FastchannelConstants.DEFAULT_QUEUE_ARCHIVE_PAUSE_MS);
+    }
+
+    /**
+     * Tempo maximo (segundos) de uma execucao do arquivamento.
+     * Propriedade fastchannel.queue.archive.seconds (ou env FASTCHANNEL_QUEUE_ARCHIVE_SECONDS).
+     */
+    public int getQueueArchiveSeconds() {
+        return readPositiveInt("fastchannel.queue.archive.seconds", FastchannelConstants.DEFAULT_QUEUE_ARCHIVE_SECONDS);
+    }
+
+    /**
+     * Modo do arquivamento: ARQUIVAR (padrao) copia para AD_FCQUEUE_HIST;
+     * DESCARTAR apenas remove. Propriedade fastchannel.queue.archive.mode (ou env FASTCHANNEL_QUEUE_ARCHIVE_MODE).
+     */
+    public boolean isQueueArchiveKeepHistory() {
+        String value = System.getProperty("fastchannel.queue.archive.mode");
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv("FASTCHANNEL_QUEUE_ARCHIVE_MODE");
+        }
+        return value == null || !"DESCARTAR".equalsIgnoreCase(value.trim());
+    }
+
+    /**
+     * Validade (horas) do ultimo valor publicado; apos esse prazo o valor e
+     * reenviado mesmo sem alteracao. Propriedade fastchannel.published.max.age.hours
+     * (ou env FASTCHANNEL_PUBLISHED_MAX_AGE_HOURS).
+     */
+    public int getPublishedMaxAgeHours() {
+        return readPositiveInt("fastchannel.published.max.age.hours",
+                FastchannelConstants.DEFAULT_PUBLISHED_MAX_AGE_HOURS);
+    }
+
+    /**
+     * Atraso base da primeira retentativa de um item da fila (dobra a cada falha).
+     * Propriedade fastchannel.queue.retry.base.seconds (ou env FASTCHANNEL_QUEUE_RETRY_BASE_SECONDS).
+     */
+    public int getRetryBackoffBaseSeconds() {
+        return readPositiveInt("fastchannel.queue.retry.base.seconds",
+                FastchannelConstants.DEFAULT_RETRY_BACKOFF_BASE_SECONDS);
+    }
+
+    /**
+     * Teto do atraso entre retentativas de um item da fila.
+     * Propriedade fastchannel.queue.retry.max.seconds (ou env FASTCHANNEL_QUEUE_RETRY_MAX_SECONDS).
+     */
+    public int getRetryBackoffMaxSeconds() {
+        return readPositiveInt("fastchannel.queue.retry.max.seconds",
+                FastchannelConstants.DEFAULT_RETRY_BACKOFF_MAX_SECONDS);
+    }
+
+    /**
+     * Conexoes persistentes esperadas por host no pool HTTP (keep-alive).
+     * A JVM precisa subir com -Dhttp.maxConnections de ao menos este valor.
+     * Propriedade fastchannel.http.max.connections (ou env FASTCHANNEL_HTTP_MAX_CONNECTIONS).
+     */
+    public int getHttpMaxConnections() {
+        return readPositiveInt("fastchannel.http.max.connections", FastchannelConstants.DEFAULT_HTTP_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Limite de requisicoes assincronas em voo (updateStockAsync/updatePriceAsync).
+     * Propriedade fastchannel.http.async.max.inflight (ou env FASTCHANNEL_HTTP_ASYNC_MAX_INFLIGHT).
+     */
+    public int getHttpAsyncMaxInFlight() {
+        return readPositiveInt("fastchannel.http.async.max.inflight",
+                FastchannelConstants.DEFAULT_HTTP_ASYNC_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Falhas seguidas (5xx/conexao) que abrem o circuito de uma familia de API.
+     * Propriedade fastchannel.http.circuit.failures (ou env FASTCHANNEL_HTTP_CIRCUIT_FAILURES).
+     */
+    public int getCircuitFailureThreshold() {
+        return readPositiveInt("fastchannel.http.circuit.failures",
+                FastchannelConstants.DEFAULT_CIRCUIT_FAILURE_THRESHOLD);
+    }
+
+    /**
+     * Tempo que o circuito fica aberto antes da chamada de teste.
+     * Propriedade fastchannel.http.circuit.open.seconds (ou env FASTCHANNEL_HTTP_CIRCUIT_OPEN_SECONDS).
+     */
+    public int getCircuitOpenSeconds() {
+        return readPositiveInt("fastchannel.http.circuit.open.seconds",
+                FastchannelConstants.DEFAULT_CIRCUIT_OPEN_SECONDS);
+    }
+
+    /**
+     * Produtos lidos por consulta no full sync de estoque (cada pagina e um checkpoint).
+     * Propriedade fastchannel.stock.full.page.size (ou env FASTCHANNEL_STOCK_FULL_PAGE_SIZE).
+     */
+    public int getStockFullSyncPageSize() {
+        return readPositiveInt("fastchannel.stock.full.page.size",
+                FastchannelConstants.DEFAULT_STOCK_FULL_SYNC_PAGE_SIZE);
+    }
+
+    /**
+     * PUTs simultaneos do full sync de estoque; o restante dos slots assincronos
+     * fica livre para o outbox. Propriedade fastchannel.stock.full.parallel (ou env FASTCHANNEL_STOCK_FULL_PARALLEL).
+     */
+    public int getStockFullSyncParallelism() {
+        return readPositiveInt("fastchannel.stock.full.parallel",
+                FastchannelConstants.DEFAULT_STOCK_FULL_SYNC_PARALLELISM);
+    }
+
+    /**
+     * SKUs conferidos contra a API a cada execucao da verificacao de estoque.
+     * Propriedade fastchannel.stock.verify.batch (ou env FASTCHANNEL_STOCK_VERIFY_BATCH).
+     */
+    public int getStockVerifyBatchSize() {
+        return readPositiveInt("fastchannel.stock.verify.batch", FastchannelConstants.DEFAULT_STOCK_VERIFY_BATCH_SIZE);
+    }
+
+    private static int readPositiveInt(String key, int fallback) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv(key.toUpperCase(Locale.ROOT).replace('.', '_'));
+        }
+        if (value == null || value.trim().isEmpty()) {
+            return fallback;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
     public void updateLastOrderSync(Timestamp timestamp) {
         this.lastOrderSync = timestamp;
         persistLastSync("LAST_ORDER_SYNC", timestamp);
@@ -26,6 +26,9 @@ public final class FastchannelConstants {
     /** URL base da API de Price Management */
     public static final String PRICE_API_BASE = "https://api.commerce.fastchannel.com/price-management/v1";
 
+    /** Caminho do token OAuth2 quando fastchannel.api.root aponta para outra raiz (simulador) */
+    public static final String AUTH_PATH_OVERRIDE = "/oauth2/v2.0/token";
+
     // ==================== ENDPOINTS ====================
 
     // Orders
@@ -58,14 +61,41 @@ public final class FastchannelConstants {
     public static final String TABLE_DEPARA = "AD_FCDEPARA";
     public static final String TABLE_PEDIDO = "AD_FCPEDIDO";
     public static final String TABLE_LOG = "AD_FCLOG";
+    public static final String TABLE_QUEUE_HIST = "AD_FCQUEUE_HIST";
+    public static final String TABLE_PUBLICADO = "AD_FCPUBLICADO";
+    public static final String TABLE_SYNCSTATE = "AD_FCSYNCSTATE";
 
     // ==================== DEFAULTS ====================
 
     public static final int DEFAULT_BATCH_SIZE = 50;
     public static final int DEFAULT_MAX_RETRIES = 3;
     public static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    public static final int DEFAULT_HTTP_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_HTTP_ASYNC_MAX_IN_FLIGHT = 64;
+    public static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_CIRCUIT_OPEN_SECONDS = 30;
     public static final int DEFAULT_RATE_LIMIT_PER_MINUTE = 30;
     public static final int TOKEN_REFRESH_BUFFER_SECONDS = 300; // 5 minutos antes de expirar
+    public static final int DEFAULT_OUTBOX_WORKERS = 4;
+    public static final int DEFAULT_OUTBOX_WORKERS_PER_ENTITY = 2;
+    public static final int DEFAULT_QUEUE_LEASE_SECONDS = 300;
+    public static final int DEFAULT_QUEUE_STATUS_FLUSH_SIZE = 25;
+    public static final int DEFAULT_RETRY_BACKOFF_BASE_SECONDS = 60;
+    public static final int DEFAULT_RETRY_BACKOFF_MAX_SECONDS = 3600;
+    public static final int DEFAULT_OUTBOX_DRAIN_SECONDS = 50;
+    public static final int DEFAULT_ADAPTIVE_MIN_BATCH_SIZE = 10;
+    public static final int DEFAULT_ADAPTIVE_MAX_BATCH_SIZE = 500;
+    public static final int DEFAULT_ADAPTIVE_MAX_WORKERS = 16;
+    public static final int DEFAULT_ADAPTIVE_LATENCY_TARGET_MS = 2000;
+    public static final int DEFAULT_QUEUE_ARCHIVE_DAYS = 7;
+    public static final int DEFAULT_PUBLISHED_MAX_AGE_HOURS = 24;
+    public static final int DEFAULT_QUEUE_ARCHIVE_CHUNK_SIZE = 500;
+    public static final int DEFAULT_QUEUE_ARCHIVE_PAUSE_MS = 200;
+    public static final int DEFAULT_QUEUE_ARCHIVE_SECONDS = 120;
+    public static final int DEFAULT_STOCK_FULL_SYNC_PAGE_SIZE = 200;
+    public static final int DEFAULT_STOCK_FULL_SYNC_PARALLELISM = 8;
+    public static final int DEFAULT_STOCK_VERIFY_BATCH_SIZE = 20;
+    public static final String DEFAULT_OUTBOX_LANE_WEIGHTS = "PEDIDO_STATUS=4,PRECO=3,ESTOQUE=2,PRODUTO=1";
     public static final java.math.BigDecimal DEFAULT_CODVEND_PADRAO = new java.math.BigDecimal("167");
     public static final java.math.BigDecimal DEFAULT_TOP_PEDIDO = new java.math.BigDecimal("403");
 
@@ -85,6 +115,7 @@ public final class FastchannelConstants {
     public static final String QUEUE_STATUS_ERRO = "ERRO";
     public static final String QUEUE_STATUS_ERRO_FATAL = "ERRO_FATAL";
     public static final String QUEUE_STATUS_CANCELADO = "CANCELADO";
+    public static final String QUEUE_STATUS_SUBSTITUIDO = "SUBSTITUIDO";
 
     // ==================== OPERAÇÕES ====================
 
@@ -15,6 +15,7 @@ public class QueueItemDTO {
     private String operation;       // CREATE, UPDATE, DELETE
     private BigDecimal entityId;    // CODPROD, CODPARC, etc
     private String entityKey;       // SKU ou ID alternativo
+    private String entityScope;     // StorageId|ResellerId (estoque)
     private String payload;         // JSON com dados
     private String status;          // PENDENTE, PROCESSANDO, ENVIADO, ERRO
     private int retryCount;
@@ -79,6 +80,14 @@ public class QueueItemDTO {
         this.entityKey = entityKey;
     }
 
+    public String getEntityScope() {
+        return entityScope;
+    }
+
+    public void setEntityScope(String entityScope) {
+        this.entityScope = entityScope;
+    }
+
     public String getPayload() {
         return payload;
     }
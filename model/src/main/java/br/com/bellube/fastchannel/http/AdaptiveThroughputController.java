@@ -0,0 +1,200 @@
+package br.com.bellube.fastchannel.http;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Controle adaptativo (AIMD) do tamanho de lote e da concorrencia do outbox.
+ *
+ * Recebe de {@link FastchannelHttpClient} a latencia e o status das
+ * chamadas feitas pelos workers do outbox (entre {@link #beginDispatchSampling()}
+ * e {@link #endDispatchSampling()}); o trafego de jobs, telas e importacao
+ * de pedidos nao entra nas amostras. A cada janela avalia o p95 e as
+ * respostas 429: com a API saudavel aumenta o lote e os workers em passos
+ * fixos; com 429 corta pela metade, e com p95 acima do alvo (ou falhas
+ * frequentes) reduz em 30%.
+ *
+ * O teto e o lote e os workers configurados para o outbox (fastchannel.outbox.workers,
+ * tamanho de lote), limitados ainda por fastchannel.adaptive.batch.max e
+ * fastchannel.adaptive.workers.max: o ajuste so recua e volta ate esse teto.
+ */
+public class AdaptiveThroughputController {
+
+    private static final Logger log = Logger.getLogger(AdaptiveThroughputController.class.getName());
+    private static AdaptiveThroughputController instance;
+    private static final ThreadLocal<Boolean> DISPATCH_SAMPLING = new ThreadLocal<>();
+
+    private static final int WINDOW_SIZE = 20;
+    private static final double THROTTLE_DECREASE = 0.5;
+    private static final double LATENCY_DECREASE = 0.7;
+    private static final double MAX_FAILURE_RATIO = 0.1;
+
+    private final int minBatch;
+    private final int maxBatch;
+    private final int batchStep;
+    private final int maxConcurrency;
+    private final long targetP95Ms;
+    private final int windowSize;
+
+    private final long[] latencies;
+    private int samples;
+    private int throttled;
+    private int failures;
+
+    private volatile int batchSize;
+    private volatile int concurrency;
+    private volatile long lastP95Ms;
+    private volatile String lastDecision = "INICIAL";
+    private volatile long lastEvaluationAt;
+    private long increases;
+    private long decreases;
+
+    AdaptiveThroughputController(int minBatch, int maxBatch, int initialBatch,
+                                 int maxConcurrency, int initialConcurrency,
+                                 long targetP95Ms, int windowSize) {
+        this.minBatch = Math.max(1, minBatch);
+        this.maxBatch = Math.max(this.minBatch, maxBatch);
+        this.batchStep = Math.max(1, this.minBatch);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.targetP95Ms = Math.max(1L, targetP95Ms);
+        this.windowSize = Math.max(1, windowSize);
+        this.latencies = new long[this.windowSize];
+        this.batchSize = clamp(initialBatch, this.minBatch, this.maxBatch);
+        this.concurrency = clamp(initialConcurrency, 1, this.maxConcurrency);
+    }
+
+    public static synchronized AdaptiveThroughputController getInstance() {
+        if (instance == null) {
+            FastchannelConfig config = FastchannelConfig.getInstance();
+            instance = withConfiguredCeiling(
+                    config.getAdaptiveMinBatchSize(),
+                    config.getAdaptiveMaxBatchSize(),
+                    config.getBatchSize(),
+                    config.getAdaptiveMaxWorkers(),
+                    config.getOutboxWorkers(),
+                    config.getAdaptiveLatencyTargetMs(),
+                    WINDOW_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Controlador que parte do lote/workers configurados e nunca passa deles.
+     */
+    static AdaptiveThroughputController withConfiguredCeiling(int minBatch, int adaptiveMaxBatch, int configuredBatch,
+                                                              int adaptiveMaxWorkers, int configuredWorkers,
+                                                              long targetP95Ms, int windowSize) {
+        int maxBatch = Math.max(1, Math.min(adaptiveMaxBatch, configuredBatch));
+        int maxWorkers = Math.max(1, Math.min(adaptiveMaxWorkers, configuredWorkers));
+        return new AdaptiveThroughputController(Math.min(minBatch, maxBatch), maxBatch, maxBatch,
+                maxWorkers, maxWorkers, targetP95Ms, windowSize);
+    }
+
+    /**
+     * Marca a thread atual como worker do outbox: as chamadas HTTP dela
+     * passam a alimentar o controle adaptativo ate {@link #endDispatchSampling()}.
+     */
+    public static void beginDispatchSampling() {
+        DISPATCH_SAMPLING.set(Boolean.TRUE);
+    }
+
+    public static void endDispatchSampling() {
+        DISPATCH_SAMPLING.remove();
+    }
+
+    static boolean isDispatchSampling() {
+        return DISPATCH_SAMPLING.get() != null;
+    }
+
+    /**
+     * Registra uma resposta HTTP recebida.
+     */
+    public synchronized void recordResponse(long latencyMs, int statusCode) {
+        if (statusCode == 429) {
+            throttled++;
+        } else if (statusCode >= 500) {
+            failures++;
+        }
+        addSample(latencyMs);
+    }
+
+    /**
+     * Registra uma chamada que falhou sem resposta (timeout, conexao).
+     */
+    public synchronized void recordFailure(long latencyMs) {
+        failures++;
+        addSample(latencyMs);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("batchSize", batchSize);
+        map.put("concurrency", concurrency);
+        map.put("p95Ms", lastP95Ms);
+        map.put("targetP95Ms", targetP95Ms);
+        map.put("lastDecision", lastDecision);
+        map.put("lastEvaluationAt", lastEvaluationAt);
+        map.put("increases", increases);
+        map.put("decreases", decreases);
+        map.put("minBatch", minBatch);
+        map.put("maxBatch", maxBatch);
+        map.put("maxConcurrency", maxConcurrency);
+        return map;
+    }
+
+    private void addSample(long latencyMs) {
+        latencies[samples++] = Math.max(0L, latencyMs);
+        if (samples >= windowSize) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        long p95 = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.95) - 1)];
+        boolean unhealthy = p95 > targetP95Ms || failures > samples * MAX_FAILURE_RATIO;
+
+        if (throttled > 0) {
+            decrease(THROTTLE_DECREASE, "REDUZIR_429");
+        } else if (unhealthy) {
+            decrease(LATENCY_DECREASE, "REDUZIR_LATENCIA");
+        } else {
+            batchSize = Math.min(maxBatch, batchSize + batchStep);
+            concurrency = Math.min(maxConcurrency, concurrency + 1);
+            lastDecision = "AUMENTAR";
+            increases++;
+        }
+
+        lastP95Ms = p95;
+        lastEvaluationAt = System.currentTimeMillis();
+        log.fine("Throughput adaptativo: " + lastDecision + " p95=" + p95 + "ms 429=" + throttled
+                + " falhas=" + failures + " lote=" + batchSize + " workers=" + concurrency);
+        samples = 0;
+        throttled = 0;
+        failures = 0;
+    }
+
+    private void decrease(double factor, String decision) {
+        batchSize = clamp((int) (batchSize * factor), minBatch, maxBatch);
+        concurrency = clamp((int) (concurrency * factor), 1, maxConcurrency);
+        lastDecision = decision;
+        decreases++;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,152 @@
+package br.com.bellube.fastchannel.http;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker por familia de API Fastchannel (pedidos, estoque, preco).
+ *
+ * Apos fastchannel.http.circuit.failures falhas seguidas (5xx ou erro de conexao) o
+ * circuito abre por fastchannel.http.circuit.open.seconds e as chamadas da familia
+ * falham na hora com {@link CircuitOpenException}, sem ocupar threads nem
+ * rate limit. Vencido o prazo, uma unica chamada de teste e liberada: se der
+ * certo o circuito fecha, se falhar reabre. Uma familia instavel nao trava
+ * as demais.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger log = Logger.getLogger(CircuitBreaker.class.getName());
+    private static final Map<FastchannelRateLimiter.ApiFamily, CircuitBreaker> BY_FAMILY =
+            new EnumMap<>(FastchannelRateLimiter.ApiFamily.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private long probeStartedAt;
+    private long opens;
+    private long rejected;
+
+    CircuitBreaker(String name, int failureThreshold, long openMs) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = Math.max(1L, openMs);
+    }
+
+    public static CircuitBreaker forFamily(FastchannelRateLimiter.ApiFamily family) {
+        synchronized (BY_FAMILY) {
+            CircuitBreaker breaker = BY_FAMILY.get(family);
+            if (breaker == null) {
+                FastchannelConfig config = FastchannelConfig.getInstance();
+                breaker = new CircuitBreaker(family.name(), config.getCircuitFailureThreshold(),
+                        config.getCircuitOpenSeconds() * 1000L);
+                BY_FAMILY.put(family, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    public static Map<String, Object> snapshotAll() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        synchronized (BY_FAMILY) {
+            for (Map.Entry<FastchannelRateLimiter.ApiFamily, CircuitBreaker> entry : BY_FAMILY.entrySet()) {
+                map.put(entry.getKey().name(), entry.getValue().snapshot());
+            }
+        }
+        return map;
+    }
+
+    public boolean allowRequest() {
+        return allowRequest(System.currentTimeMillis());
+    }
+
+    synchronized boolean allowRequest(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now < openUntil) {
+                    rejected++;
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeStartedAt = now;
+                return true;
+            default:
+                // Uma chamada de teste por vez; se ela nao voltar, libera outra apos o prazo
+                if (now - probeStartedAt >= openMs) {
+                    probeStartedAt = now;
+                    return true;
+                }
+                rejected++;
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Circuito " + name + " fechado.");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public void recordFailure() {
+        recordFailure(System.currentTimeMillis());
+    }
+
+    synchronized void recordFailure(long now) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openUntil = now + openMs;
+            opens++;
+            log.warning("Circuito " + name + " aberto por " + openMs + "ms apos "
+                    + consecutiveFailures + " falha(s) seguida(s).");
+        }
+    }
+
+    /**
+     * @return true enquanto novas chamadas da familia seriam recusadas
+     */
+    public boolean isOpen() {
+        return remainingOpenMs() > 0;
+    }
+
+    public long remainingOpenMs() {
+        return remainingOpenMs(System.currentTimeMillis());
+    }
+
+    synchronized long remainingOpenMs(long now) {
+        if (state == State.OPEN) {
+            return Math.max(0L, openUntil - now);
+        }
+        if (state == State.HALF_OPEN) {
+            return Math.max(0L, probeStartedAt + openMs - now);
+        }
+        return 0L;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("state", state.name());
+        map.put("consecutiveFailures", consecutiveFailures);
+        map.put("remainingOpenMs", remainingOpenMs(System.currentTimeMillis()));
+        map.put("opens", opens);
+        map.put("rejected", rejected);
+        return map;
+    }
+}
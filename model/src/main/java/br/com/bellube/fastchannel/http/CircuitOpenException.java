@@ -0,0 +1,26 @@
+package br.com.bellube.fastchannel.http;
+
+/**
+ * Chamada recusada sem ir a rede: o circuito da familia de API esta aberto.
+ */
+public class CircuitOpenException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final FastchannelRateLimiter.ApiFamily family;
+    private final long retryInMs;
+
+    public CircuitOpenException(FastchannelRateLimiter.ApiFamily family, long retryInMs) {
+        super("Circuito " + family.name() + " aberto. Nova tentativa em " + Math.max(0L, retryInMs) + "ms");
+        this.family = family;
+        this.retryInMs = Math.max(0L, retryInMs);
+    }
+
+    public FastchannelRateLimiter.ApiFamily getFamily() {
+        return family;
+    }
+
+    public long getRetryInMs() {
+        return retryInMs;
+    }
+}
@@ -0,0 +1,136 @@
+package br.com.bellube.fastchannel.http;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executor das chamadas assincronas dos clientes Fastchannel.
+ *
+ * Limita as requisicoes em voo a fastchannel.http.async.max.inflight: quem submete
+ * alem do limite espera um slot (contrapressao), sem fila ilimitada em
+ * memoria. Em JVMs com virtual threads (Java 21+) cada chamada roda numa
+ * virtual thread; nas demais, num pool de threads daemon do mesmo tamanho.
+ * O ritmo real continua controlado pelo {@link FastchannelRateLimiter}.
+ */
+public final class FastchannelAsyncExecutor {
+
+    private static final Logger log = Logger.getLogger(FastchannelAsyncExecutor.class.getName());
+    private static FastchannelAsyncExecutor instance;
+
+    private final ExecutorService delegate;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final boolean virtualThreads;
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+
+    FastchannelAsyncExecutor(int maxInFlight, boolean preferVirtualThreads) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight, true);
+        ExecutorService virtual = preferVirtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtual != null;
+        this.delegate = virtual != null ? virtual : newPlatformExecutor(this.maxInFlight);
+    }
+
+    public static synchronized FastchannelAsyncExecutor getInstance() {
+        if (instance == null) {
+            instance = new FastchannelAsyncExecutor(FastchannelConfig.getInstance().getHttpAsyncMaxInFlight(), true);
+        }
+        return instance;
+    }
+
+    /**
+     * Executa a chamada fora da thread atual. Bloqueia enquanto o limite de
+     * requisicoes em voo estiver ocupado.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        submitted.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                T result = null;
+                Throwable error = null;
+                try {
+                    result = call.call();
+                } catch (Throwable t) {
+                    error = t;
+                } finally {
+                    // Libera o slot antes de completar: continuacoes podem submeter de novo
+                    inFlight.release();
+                }
+                if (error != null) {
+                    failed.incrementAndGet();
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            failed.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("maxInFlight", maxInFlight);
+        map.put("inFlight", maxInFlight - inFlight.availablePermits());
+        map.put("submitted", submitted.get());
+        map.put("failed", failed.get());
+        map.put("virtualThreads", virtualThreads);
+        return map;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() via reflexao: o add-on
+     * compila em Java 8 mas pode rodar numa JVM mais nova.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object executor = java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Chamadas assincronas Fastchannel usando virtual threads.");
+            return (ExecutorService) executor;
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            log.log(Level.FINE, "Virtual threads indisponiveis", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(int size) {
+        AtomicInteger counter = new AtomicInteger(0);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "fc-http-async-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -3,37 +3,28 @@ package br.com.bellube.fastchannel.http;
 import br.com.bellube.fastchannel.auth.FastchannelTokenManager;
 import br.com.bellube.fastchannel.config.FastchannelConfig;
 import br.com.bellube.fastchannel.config.FastchannelConstants;
+import br.com.bellube.fastchannel.util.RetryBackoff;
 import com.google.gson.Gson;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.Proxy;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 
 /**
  * Cliente HTTP para comunicação com a API Fastchannel Commerce.
  *
  * Características:
- * - Rate Limiting com sliding window
- * - Retry com exponential backoff
+ * - Rate Limiting global (token bucket por familia de API)
+ * - Retry com Retry-After e jitter decorrelacionado
+ * - Circuit breaker por familia de API
  * - Renovação automática de token em 401
  * - Headers Ocp-Apim-Subscription-Key
+ * - Conexoes persistentes via {@link FastchannelHttpTransport}
+ * - Metricas por endpoint em {@link FastchannelHttpMetrics}
  * - Thread-safe
  */
 public class FastchannelHttpClient {
@@ -43,19 +34,22 @@ public class FastchannelHttpClient {
 
     private final FastchannelTokenManager tokenManager;
     private final FastchannelConfig config;
+    private final FastchannelHttpTransport transport;
     private final int timeoutMs;
+    private final AdaptiveThroughputController throughput = AdaptiveThroughputController.getInstance();
+    private final FastchannelHttpMetrics metrics = FastchannelHttpMetrics.getInstance();
 
-    // Rate Limiting - sliding window
-    private final AtomicInteger requestCount = new AtomicInteger(0);
-    private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
-    private static final long WINDOW_SIZE_MS = 60_000; // 1 minuto
+    // Rate Limiting - token bucket global por familia de API e chave
+    private final FastchannelRateLimiter rateLimiter = FastchannelRateLimiter.getInstance();
+    private static final long THROTTLE_WINDOW_MS = 60_000; // 1 minuto
+    private static volatile long lastThrottledAt;
 
     // Retry config
     private static final int MAX_RETRIES = FastchannelConstants.DEFAULT_MAX_RETRIES;
     private static final long INITIAL_BACKOFF_MS = 1000;
-    private static final double BACKOFF_MULTIPLIER = 2.0;
-    private static volatile SSLSocketFactory insecureSslSocketFactory;
-    private static volatile HostnameVerifier insecureHostnameVerifier;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final long MAX_RETRY_WAIT_MS = 60_000;
+    private static volatile FastchannelHttpClient shared;
 
     public FastchannelHttpClient() {
         this(FastchannelConstants.DEFAULT_TIMEOUT_SECONDS);
@@ -65,6 +59,22 @@ public class FastchannelHttpClient {
         this.timeoutMs = timeoutSeconds * 1000;
         this.tokenManager = FastchannelTokenManager.getInstance();
         this.config = FastchannelConfig.getInstance();
+        this.transport = FastchannelHttpTransport.getInstance();
+    }
+
+    /**
+     * Cliente compartilhado pelo processo: mesmo transporte (conexoes
+     * persistentes) e mesmo controle de rate limit para todos os clientes.
+     */
+    public static FastchannelHttpClient getShared() {
+        if (shared == null) {
+            synchronized (FastchannelHttpClient.class) {
+                if (shared == null) {
+                    shared = new FastchannelHttpClient();
+                }
+            }
+        }
+        return shared;
     }
 
     /**
@@ -72,7 +82,17 @@ public class FastchannelHttpClient {
      */
     public HttpResult getOrders(String endpoint) throws Exception {
         String url = buildOrderUrl(endpoint);
-        return executeWithRetry("GET", url, null, config.getSubscriptionKeyDistribution());
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.ORDERS, "GET", url, null, config.getSubscriptionKeyDistribution());
+    }
+
+    /**
+     * GET na Order Management API decodificando a resposta 2xx direto do
+     * socket. Mesmo retry, rate limit e circuit breaker de {@link #getOrders}.
+     */
+    public HttpResult getOrders(String endpoint, FastchannelHttpTransport.ResponseHandler<?> handler) throws Exception {
+        String url = buildOrderUrl(endpoint);
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.ORDERS, "GET", url, null,
+                config.getSubscriptionKeyDistribution(), handler);
     }
 
     /**
@@ -80,7 +100,7 @@ public class FastchannelHttpClient {
      */
     public HttpResult postOrders(String endpoint, String jsonBody) throws Exception {
         String url = buildOrderUrl(endpoint);
-        return executeWithRetry("POST", url, jsonBody, config.getSubscriptionKeyDistribution());
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.ORDERS, "POST", url, jsonBody, config.getSubscriptionKeyDistribution());
     }
 
     /**
@@ -88,33 +108,29 @@ public class FastchannelHttpClient {
      */
     public HttpResult putOrders(String endpoint, String jsonBody) throws Exception {
         String url = buildOrderUrl(endpoint);
-        return executeWithRetry("PUT", url, jsonBody, config.getSubscriptionKeyDistribution());
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.ORDERS, "PUT", url, jsonBody, config.getSubscriptionKeyDistribution());
     }
 
     private String buildOrderUrl(String endpoint) {
-        String configuredBase = config.getBaseUrl();
-        if (configuredBase != null && configuredBase.contains("/order-management/")) {
-            return configuredBase + endpoint;
-        }
-        return FastchannelConstants.ORDER_API_BASE + endpoint;
+        return config.getOrderApiBase() + endpoint;
     }
 
     /**
      * GET request para Stock Management API.
      */
     public HttpResult getStock(String endpoint) throws Exception {
-        String url = FastchannelConstants.STOCK_API_BASE + endpoint;
+        String url = config.getStockApiBase() + endpoint;
         // Legado usa chave de distribuicao para rotas de estoque.
-        return executeWithRetry("GET", url, null, config.getSubscriptionKeyDistribution());
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.STOCK, "GET", url, null, config.getSubscriptionKeyDistribution());
     }
 
     /**
      * PUT request para Stock Management API.
      */
     public HttpResult putStock(String endpoint, String jsonBody) throws Exception {
-        String url = FastchannelConstants.STOCK_API_BASE + endpoint;
+        String url = config.getStockApiBase() + endpoint;
         // Legado usa chave de distribuicao para rotas de estoque.
-        return executeWithRetry("PUT", url, jsonBody, config.getSubscriptionKeyDistribution());
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.STOCK, "PUT", url, jsonBody, config.getSubscriptionKeyDistribution());
     }
 
     /**
@@ -139,66 +155,123 @@ public class FastchannelHttpClient {
     }
 
     public HttpResult getPrice(String endpoint, String subscriptionKey) throws Exception {
-        String url = FastchannelConstants.PRICE_API_BASE + endpoint;
-        return executeWithRetry("GET", url, null, subscriptionKey);
+        String url = config.getPriceApiBase() + endpoint;
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.PRICE, "GET", url, null, subscriptionKey);
     }
 
     public HttpResult putPrice(String endpoint, String jsonBody, String subscriptionKey) throws Exception {
-        String url = FastchannelConstants.PRICE_API_BASE + endpoint;
-        return executeWithRetry("PUT", url, jsonBody, subscriptionKey);
+        String url = config.getPriceApiBase() + endpoint;
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.PRICE, "PUT", url, jsonBody, subscriptionKey);
     }
 
     public HttpResult postPrice(String endpoint, String jsonBody, String subscriptionKey) throws Exception {
-        String url = FastchannelConstants.PRICE_API_BASE + endpoint;
-        return executeWithRetry("POST", url, jsonBody, subscriptionKey);
+        String url = config.getPriceApiBase() + endpoint;
+        return executeWithRetry(FastchannelRateLimiter.ApiFamily.PRICE, "POST", url, jsonBody, subscriptionKey);
     }
 
     /**
-     * Executa requisição com retry e exponential backoff.
+     * Executa requisição com retry.
+     *
+     * Em 429/503 respeita o Retry-After; sem o header, espera com jitter
+     * decorrelacionado. Esperas acima de {@link #MAX_RETRY_WAIT_MS} nao sao
+     * feitas aqui: a resposta volta ao chamador (a fila agenda a retentativa).
+     * Com o circuito da familia aberto a chamada falha na hora com
+     * {@link CircuitOpenException}. Corpo 2xx que nao decodifica falha na hora
+     * com {@link ResponseDecodeException}, sem retentativa.
      */
-    private HttpResult executeWithRetry(String method, String url, String jsonBody, String subscriptionKey) throws Exception {
+    private HttpResult executeWithRetry(FastchannelRateLimiter.ApiFamily family, String method, String url,
+                                        String jsonBody, String subscriptionKey) throws Exception {
+        return executeWithRetry(family, method, url, jsonBody, subscriptionKey, null);
+    }
+
+    private HttpResult executeWithRetry(FastchannelRateLimiter.ApiFamily family, String method, String url,
+                                        String jsonBody, String subscriptionKey,
+                                        FastchannelHttpTransport.ResponseHandler<?> handler) throws Exception {
+        CircuitBreaker breaker = CircuitBreaker.forFamily(family);
         Exception lastException = null;
         long backoff = INITIAL_BACKOFF_MS;
+        long callStartedAt = 0L;
 
         for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            if (!breaker.allowRequest()) {
+                throw new CircuitOpenException(family, breaker.remainingOpenMs());
+            }
             try {
-                // Rate limiting
-                waitForRateLimit();
+                // Rate limiting (espera na fila de reservas, sem segurar monitor)
+                rateLimiter.acquire(family, subscriptionKey);
 
                 String token = tokenManager.getValidToken();
-                HttpResult result = doHttpCall(method, url, token, jsonBody, subscriptionKey);
+                callStartedAt = System.currentTimeMillis();
+                HttpResult result = doHttpCall(method, url, token, jsonBody, subscriptionKey, handler);
+                if (AdaptiveThroughputController.isDispatchSampling()) {
+                    throughput.recordResponse(System.currentTimeMillis() - callStartedAt, result.getStatusCode());
+                }
+                callStartedAt = 0L;
+
+                if (result.getStatusCode() >= 500) {
+                    breaker.recordFailure();
+                } else {
+                    breaker.recordSuccess();
+                }
 
                 // Se 401, tentar renovar token e repetir UMA vez
                 if (result.getStatusCode() == 401 && attempt < MAX_RETRIES) {
                     log.warning("Recebido 401. Renovando token Fastchannel...");
-                    tokenManager.forceRenew();
+                    tokenManager.forceRenew(token);
+                    metrics.recordRetry(method, url);
                     continue;
                 }
 
-                // Se 429 (rate limited), esperar e tentar novamente
-                if (result.getStatusCode() == 429 && attempt < MAX_RETRIES) {
-                    log.warning("Rate limited (429). Aguardando " + backoff + "ms...");
-                    Thread.sleep(backoff);
-                    backoff = (long) (backoff * BACKOFF_MULTIPLIER);
-                    continue;
+                if (result.getStatusCode() == 429) {
+                    lastThrottledAt = System.currentTimeMillis();
                 }
 
-                // Se 5xx, retry com backoff
-                if (result.getStatusCode() >= 500 && attempt < MAX_RETRIES) {
-                    log.warning("Erro servidor (" + result.getStatusCode() + "). Retry em " + backoff + "ms...");
-                    Thread.sleep(backoff);
-                    backoff = (long) (backoff * BACKOFF_MULTIPLIER);
+                // 429 (rate limited) ou 5xx: aguardar e tentar novamente
+                if ((result.getStatusCode() == 429 || result.getStatusCode() >= 500) && attempt < MAX_RETRIES) {
+                    long retryAfterMs = parseRetryAfterMs(result.getRetryAfter(), System.currentTimeMillis());
+                    long waitMs;
+                    if (retryAfterMs >= 0) {
+                        waitMs = retryAfterMs;
+                    } else {
+                        backoff = RetryBackoff.decorrelatedJitterMs(backoff, INITIAL_BACKOFF_MS, MAX_BACKOFF_MS);
+                        waitMs = backoff;
+                    }
+                    if (waitMs > MAX_RETRY_WAIT_MS) {
+                        log.warning("HTTP " + result.getStatusCode() + " com Retry-After de " + waitMs
+                                + "ms. Retentativa devolvida ao chamador.");
+                        return result;
+                    }
+                    log.warning("HTTP " + result.getStatusCode() + " em " + family + ". Retry em " + waitMs + "ms...");
+                    metrics.recordRetry(method, url);
+                    Thread.sleep(waitMs);
                     continue;
                 }
 
                 return result;
 
+            } catch (ResponseDecodeException e) {
+                // API respondeu: nao e falha do circuito nem motivo para repetir
+                if (callStartedAt > 0L) {
+                    if (AdaptiveThroughputController.isDispatchSampling()) {
+                        throughput.recordResponse(System.currentTimeMillis() - callStartedAt, e.getStatusCode());
+                    }
+                    breaker.recordSuccess();
+                }
+                throw e;
             } catch (Exception e) {
                 lastException = e;
+                if (callStartedAt > 0L) {
+                    if (AdaptiveThroughputController.isDispatchSampling()) {
+                        throughput.recordFailure(System.currentTimeMillis() - callStartedAt);
+                    }
+                    breaker.recordFailure();
+                    callStartedAt = 0L;
+                }
                 if (attempt < MAX_RETRIES) {
+                    backoff = RetryBackoff.decorrelatedJitterMs(backoff, INITIAL_BACKOFF_MS, MAX_BACKOFF_MS);
                     log.warning("Erro na tentativa " + (attempt + 1) + ": " + e.getMessage() + ". Retry em " + backoff + "ms...");
+                    metrics.recordRetry(method, url);
                     Thread.sleep(backoff);
-                    backoff = (long) (backoff * BACKOFF_MULTIPLIER);
                 }
             }
         }
@@ -208,126 +281,61 @@ public class FastchannelHttpClient {
     }
 
     /**
-     * Implementa rate limiting com sliding window.
+     * Converte o header Retry-After (segundos ou data HTTP) em milissegundos.
+     *
+     * @return espera em ms, ou -1 se ausente/invalido
      */
-    private synchronized void waitForRateLimit() throws InterruptedException {
-        long now = System.currentTimeMillis();
-        long windowStartTime = windowStart.get();
-
-        // Reset window se passou de 1 minuto
-        if (now - windowStartTime >= WINDOW_SIZE_MS) {
-            windowStart.set(now);
-            requestCount.set(0);
+    static long parseRetryAfterMs(String value, long nowMs) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1L;
         }
-
-        int maxRequests = config.getMaxRequestsPerMinute();
-        int currentCount = requestCount.get();
-
-        // Se atingiu limite, esperar até próxima janela
-        if (currentCount >= maxRequests) {
-            long waitTime = WINDOW_SIZE_MS - (now - windowStart.get());
-            if (waitTime > 0) {
-                log.info("Rate limit atingido. Aguardando " + waitTime + "ms...");
-                Thread.sleep(waitTime);
-                windowStart.set(System.currentTimeMillis());
-                requestCount.set(0);
-            }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0L, Long.parseLong(trimmed) * 1000L);
+        } catch (NumberFormatException ignored) {
+            // Formato de data HTTP
         }
-
-        requestCount.incrementAndGet();
-    }
-
-    private HttpResult doHttpCall(String method, String urlString, String token, String jsonBody, String subscriptionKey) throws Exception {
-        HttpURLConnection connection = null;
         try {
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection(Proxy.NO_PROXY);
-            configureSslIfNeeded(connection);
-
-            connection.setRequestMethod(method);
-            connection.setConnectTimeout(timeoutMs);
-            connection.setReadTimeout(timeoutMs);
-
-            // Headers padrão Fastchannel
-            connection.setRequestProperty("Authorization", "Bearer " + token);
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestProperty(getSubscriptionHeaderName(), subscriptionKey);
-            connection.setRequestProperty("Ocp-Apim-Subscription-Key", subscriptionKey);
-            // Compatibilidade com variacoes de gateway
-            connection.setRequestProperty("subscription-key", subscriptionKey);
-
-            if (jsonBody != null) {
-                connection.setRequestProperty("Content-Type", "application/json");
-                connection.setDoOutput(true);
-                try (OutputStream os = connection.getOutputStream()) {
-                    byte[] input = jsonBody.getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
-                }
-            }
-
-            int statusCode = connection.getResponseCode();
-            String responseBody;
-
-            if (statusCode >= 200 && statusCode < 300) {
-                responseBody = readStream(connection.getInputStream());
-            } else {
-                responseBody = readStream(connection.getErrorStream());
-            }
-
-            log.fine(method + " " + urlString + " -> " + statusCode);
-            return new HttpResult(statusCode, responseBody);
-
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+            long at = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0L, at - nowMs);
+        } catch (DateTimeParseException e) {
+            return -1L;
         }
     }
 
-    private static String getSubscriptionHeaderName() {
-        return "Subscription-Key";
-    }
-
-    private void configureSslIfNeeded(HttpURLConnection connection) throws Exception {
-        if (!(connection instanceof HttpsURLConnection)) {
-            return;
-        }
-
-        String configured = System.getProperty("fastchannel.ssl.insecure");
-        if (configured == null || configured.trim().isEmpty()) {
-            configured = System.getenv("FASTCHANNEL_SSL_INSECURE");
-        }
-        boolean insecure = configured == null || configured.trim().isEmpty() || Boolean.parseBoolean(configured);
-        if (!insecure) {
-            return;
+    /**
+     * Indica se novas requisicoes teriam que esperar: a fila de reservas do
+     * rate limit passou da janela de rajada ou a API respondeu 429 no ultimo minuto.
+     */
+    public boolean isRateLimitSaturated() {
+        long now = System.currentTimeMillis();
+        if (lastThrottledAt > 0 && now - lastThrottledAt < THROTTLE_WINDOW_MS) {
+            return true;
         }
+        return rateLimiter.isSaturated();
+    }
 
-        if (insecureSslSocketFactory == null || insecureHostnameVerifier == null) {
-            synchronized (FastchannelHttpClient.class) {
-                if (insecureSslSocketFactory == null || insecureHostnameVerifier == null) {
-                    TrustManager[] trustAll = new TrustManager[]{new X509TrustManager() {
-                        public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
-                        public void checkClientTrusted(X509Certificate[] chain, String authType) {}
-                        public void checkServerTrusted(X509Certificate[] chain, String authType) {}
-                    }};
-                    SSLContext sc = SSLContext.getInstance("TLS");
-                    sc.init(null, trustAll, new SecureRandom());
-                    insecureSslSocketFactory = sc.getSocketFactory();
-                    insecureHostnameVerifier = (hostname, session) -> true;
-                }
-            }
+    private HttpResult doHttpCall(String method, String urlString, String token, String jsonBody, String subscriptionKey,
+                                  FastchannelHttpTransport.ResponseHandler<?> handler) throws Exception {
+        Map<String, String> headers = new LinkedHashMap<>();
+        // Headers padrão Fastchannel
+        headers.put("Authorization", "Bearer " + token);
+        headers.put("Accept", "application/json");
+        headers.put(getSubscriptionHeaderName(), subscriptionKey);
+        headers.put("Ocp-Apim-Subscription-Key", subscriptionKey);
+        // Compatibilidade com variacoes de gateway
+        headers.put("subscription-key", subscriptionKey);
+        if (jsonBody != null) {
+            headers.put("Content-Type", "application/json");
         }
 
-        HttpsURLConnection https = (HttpsURLConnection) connection;
-        https.setSSLSocketFactory(insecureSslSocketFactory);
-        https.setHostnameVerifier(insecureHostnameVerifier);
+        HttpResult result = transport.execute(method, urlString, headers, jsonBody, timeoutMs, timeoutMs, handler);
+        log.fine(method + " " + urlString + " -> " + result.getStatusCode());
+        return result;
     }
 
-    private String readStream(java.io.InputStream stream) throws Exception {
-        if (stream == null) return "";
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-            return br.lines().collect(Collectors.joining());
-        }
+    private static String getSubscriptionHeaderName() {
+        return "Subscription-Key";
     }
 
     /**
@@ -336,10 +344,38 @@ public class FastchannelHttpClient {
     public static class HttpResult {
         private final int statusCode;
         private final String body;
+        private final String retryAfter;
+        private final Object decoded;
 
         public HttpResult(int statusCode, String body) {
+            this(statusCode, body, null);
+        }
+
+        public HttpResult(int statusCode, String body, String retryAfter) {
+            this(statusCode, body, retryAfter, null);
+        }
+
+        public HttpResult(int statusCode, String body, String retryAfter, Object decoded) {
             this.statusCode = statusCode;
             this.body = body;
+            this.retryAfter = retryAfter;
+            this.decoded = decoded;
+        }
+
+        /**
+         * Valor produzido pelo {@link FastchannelHttpTransport.ResponseHandler}
+         * nas chamadas com decodificacao em streaming (corpo textual nulo).
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T getDecoded() {
+            return (T) decoded;
+        }
+
+        /**
+         * Valor bruto do header Retry-After (segundos ou data HTTP), se enviado.
+         */
+        public String getRetryAfter() {
+            return retryAfter;
         }
 
         public int getStatusCode() {
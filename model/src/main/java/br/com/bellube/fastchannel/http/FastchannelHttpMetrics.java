@@ -0,0 +1,197 @@
+package br.com.bellube.fastchannel.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metricas em memoria das chamadas HTTP as APIs Fastchannel.
+ *
+ * Agregadas por metodo e template de endpoint (ex.: PUT /stock/{sku}):
+ * histograma de latencia, retentativas, contadores por faixa de status
+ * (401, 429, 5xx, erros de I/O) e bytes enviados/recebidos. Apenas
+ * contadores atomicos, sem I/O nem lock no caminho da requisicao.
+ */
+public final class FastchannelHttpMetrics {
+
+    private static final FastchannelHttpMetrics INSTANCE = new FastchannelHttpMetrics();
+
+    // Segmento seguinte a estes recursos e um identificador
+    private static final Map<String, String> ID_SEGMENTS = new HashMap<>();
+
+    static {
+        ID_SEGMENTS.put("orders", "{orderId}");
+        ID_SEGMENTS.put("stock", "{sku}");
+        ID_SEGMENTS.put("prices", "{sku}");
+    }
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    FastchannelHttpMetrics() {
+    }
+
+    public static FastchannelHttpMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registra uma resposta HTTP (qualquer status).
+     */
+    public void recordResponse(String method, String url, int statusCode, long elapsedNanos,
+                               long requestBytes, long responseBytes) {
+        EndpointMetrics metrics = endpoint(method, url);
+        metrics.latency.recordMicros(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        metrics.requestBytes.addAndGet(requestBytes);
+        metrics.responseBytes.addAndGet(responseBytes);
+        if (statusCode >= 200 && statusCode < 300) {
+            metrics.status2xx.incrementAndGet();
+        } else if (statusCode == 401) {
+            metrics.status401.incrementAndGet();
+        } else if (statusCode == 429) {
+            metrics.status429.incrementAndGet();
+        } else if (statusCode >= 500) {
+            metrics.status5xx.incrementAndGet();
+        } else {
+            metrics.statusOther.incrementAndGet();
+        }
+    }
+
+    /**
+     * Registra falha de conexao/leitura (sem status HTTP).
+     */
+    public void recordIoError(String method, String url, long elapsedNanos, long requestBytes) {
+        EndpointMetrics metrics = endpoint(method, url);
+        metrics.latency.recordMicros(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        metrics.requestBytes.addAndGet(requestBytes);
+        metrics.ioErrors.incrementAndGet();
+    }
+
+    /**
+     * Registra que a chamada sera repetida (401, 429, 5xx ou erro de I/O).
+     */
+    public void recordRetry(String method, String url) {
+        endpoint(method, url).retries.incrementAndGet();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("since", since);
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map.Entry<String, EndpointMetrics> entry : new TreeMap<>(endpoints).entrySet()) {
+            Map<String, Object> item = entry.getValue().toMap();
+            item.put("endpoint", entry.getKey());
+            list.add(item);
+        }
+        map.put("endpoints", Collections.unmodifiableList(list));
+        return map;
+    }
+
+    public void reset() {
+        endpoints.clear();
+        since = System.currentTimeMillis();
+    }
+
+    private EndpointMetrics endpoint(String method, String url) {
+        String key = (method != null ? method : "?") + " " + endpointTemplate(url);
+        EndpointMetrics metrics = endpoints.get(key);
+        if (metrics == null) {
+            metrics = endpoints.computeIfAbsent(key, k -> new EndpointMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Reduz a URL ao template do endpoint: sem host, base da API e query,
+     * com identificadores trocados por marcadores.
+     * Ex.: https://.../stock-management/v1/stock/ABC-1?x=1 -> /stock/{sku}
+     */
+    static String endpointTemplate(String url) {
+        if (url == null || url.isEmpty()) {
+            return "/";
+        }
+        String path = url;
+        int scheme = path.indexOf("://");
+        if (scheme >= 0) {
+            int slash = path.indexOf('/', scheme + 3);
+            path = slash >= 0 ? path.substring(slash) : "/";
+        }
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+
+        String[] segments = path.split("/");
+        int start = -1;
+        for (int i = 0; i < segments.length; i++) {
+            if (ID_SEGMENTS.containsKey(segments[i])) {
+                start = i;
+                break;
+            }
+        }
+
+        StringBuilder template = new StringBuilder();
+        String pendingId = null;
+        for (int i = Math.max(0, start); i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                continue;
+            }
+            template.append('/');
+            if (pendingId != null) {
+                template.append(pendingId);
+                pendingId = null;
+            } else if (start < 0 && isIdentifier(segment)) {
+                template.append("{id}");
+            } else {
+                template.append(segment);
+                pendingId = ID_SEGMENTS.get(segment);
+            }
+        }
+        return template.length() > 0 ? template.toString() : "/";
+    }
+
+    private static boolean isIdentifier(String segment) {
+        if (segment.matches("\\d+")) {
+            return true;
+        }
+        // GUIDs, hashes e codigos longos; preserva trechos como v1 e oauth2
+        return segment.length() >= 8 && segment.matches(".*\\d.*");
+    }
+
+    private static final class EndpointMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong retries = new AtomicLong(0);
+        private final AtomicLong status2xx = new AtomicLong(0);
+        private final AtomicLong status401 = new AtomicLong(0);
+        private final AtomicLong status429 = new AtomicLong(0);
+        private final AtomicLong status5xx = new AtomicLong(0);
+        private final AtomicLong statusOther = new AtomicLong(0);
+        private final AtomicLong ioErrors = new AtomicLong(0);
+        private final AtomicLong requestBytes = new AtomicLong(0);
+        private final AtomicLong responseBytes = new AtomicLong(0);
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("requests", latency.getCount());
+            map.put("retries", retries.get());
+            map.put("status2xx", status2xx.get());
+            map.put("status401", status401.get());
+            map.put("status429", status429.get());
+            map.put("status5xx", status5xx.get());
+            map.put("statusOther", statusOther.get());
+            map.put("ioErrors", ioErrors.get());
+            map.put("requestBytes", requestBytes.get());
+            map.put("responseBytes", responseBytes.get());
+            map.put("latency", latency.snapshot());
+            return map;
+        }
+    }
+}
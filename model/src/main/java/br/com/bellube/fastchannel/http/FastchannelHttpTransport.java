@@ -0,0 +1,329 @@
+package br.com.bellube.fastchannel.http;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Transporte HTTP unico do processo para as APIs Fastchannel.
+ *
+ * Usa o pool de conexoes persistentes do HttpURLConnection: a resposta e
+ * sempre lida ate o fim e o stream fechado, sem disconnect(), para que o
+ * socket (e a sessao TLS) volte ao cache de keep-alive e seja reutilizado.
+ * Em falha de I/O a conexao e descartada.
+ *
+ * O pool de keep-alive e da JVM inteira e o transporte nao altera as
+ * propriedades globais. Para aproveitar os workers do outbox, a JVM do
+ * servidor deve subir com -Dhttp.keepAlive=true (padrao) e
+ * -Dhttp.maxConnections=N, com N ao menos fastchannel.http.max.connections; o
+ * padrao da JVM e 5 por host. Se a JVM ficar abaixo do configurado, um
+ * aviso e registrado na criacao do transporte. O SSL
+ * (fastchannel.ssl.insecure) e montado uma unica vez.
+ *
+ * Respostas grandes podem ser decodificadas direto do socket com um
+ * {@link ResponseHandler}, sem materializar o corpo numa String.
+ */
+public final class FastchannelHttpTransport {
+
+    private static final Logger log = Logger.getLogger(FastchannelHttpTransport.class.getName());
+    private static volatile FastchannelHttpTransport instance;
+    private static final int JVM_DEFAULT_MAX_CONNECTIONS = 5;
+
+    private final SSLSocketFactory sslSocketFactory;
+    private final HostnameVerifier hostnameVerifier;
+    private final int maxConnections;
+
+    private final FastchannelHttpMetrics metrics = FastchannelHttpMetrics.getInstance();
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong ioFailures = new AtomicLong(0);
+
+    /**
+     * Decodifica o corpo de uma resposta 2xx direto do stream. O stream e
+     * drenado e fechado pelo transporte depois do retorno.
+     */
+    public interface ResponseHandler<T> {
+        T handle(InputStream body) throws IOException;
+    }
+
+    private FastchannelHttpTransport(int maxConnections, boolean insecureSsl) {
+        this.maxConnections = maxConnections;
+        checkKeepAlive(maxConnections);
+        SSLSocketFactory factory = null;
+        HostnameVerifier verifier = null;
+        if (insecureSsl) {
+            try {
+                TrustManager[] trustAll = new TrustManager[]{new X509TrustManager() {
+                    public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+                    public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+                    public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+                }};
+                SSLContext sc = SSLContext.getInstance("TLS");
+                sc.init(null, trustAll, new SecureRandom());
+                factory = sc.getSocketFactory();
+                verifier = (hostname, session) -> true;
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Falha ao configurar SSL permissivo. Usando SSL padrao da JVM.", e);
+            }
+        }
+        this.sslSocketFactory = factory;
+        this.hostnameVerifier = verifier;
+    }
+
+    public static FastchannelHttpTransport getInstance() {
+        if (instance == null) {
+            synchronized (FastchannelHttpTransport.class) {
+                if (instance == null) {
+                    instance = new FastchannelHttpTransport(
+                            FastchannelConfig.getInstance().getHttpMaxConnections(), isInsecureSslConfigured());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Executa a requisicao e devolve status e corpo (sucesso ou erro).
+     *
+     * @throws IOException falha de conexao/leitura (a conexao e descartada)
+     */
+    public FastchannelHttpClient.HttpResult execute(String method, String urlString, Map<String, String> headers,
+                                                    String body, int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        return execute(method, urlString, headers, body, connectTimeoutMs, readTimeoutMs, null);
+    }
+
+    /**
+     * Como {@link #execute(String, String, Map, String, int, int)}, mas em 2xx
+     * entrega o stream ao handler; o valor decodificado fica em
+     * {@link FastchannelHttpClient.HttpResult#getDecoded()} e o corpo textual
+     * vem nulo. Respostas de erro continuam lidas como texto.
+     *
+     * @throws IOException falha de conexao/leitura (a conexao e descartada)
+     */
+    public FastchannelHttpClient.HttpResult execute(String method, String urlString, Map<String, String> headers,
+                                                    String body, int connectTimeoutMs, int readTimeoutMs,
+                                                    ResponseHandler<?> handler) throws IOException {
+        requests.incrementAndGet();
+        byte[] requestBody = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+        long requestBytes = requestBody != null ? requestBody.length : 0L;
+        long startedAt = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection(Proxy.NO_PROXY);
+        try {
+            if (connection instanceof HttpsURLConnection && sslSocketFactory != null) {
+                // Mesma instancia de factory em todas as chamadas: requisito para reaproveitar o socket TLS
+                HttpsURLConnection https = (HttpsURLConnection) connection;
+                https.setSSLSocketFactory(sslSocketFactory);
+                https.setHostnameVerifier(hostnameVerifier);
+            }
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    if (header.getValue() != null) {
+                        connection.setRequestProperty(header.getKey(), header.getValue());
+                    }
+                }
+            }
+
+            if (requestBody != null) {
+                connection.setDoOutput(true);
+                try (OutputStream os = connection.getOutputStream()) {
+                    os.write(requestBody, 0, requestBody.length);
+                }
+            }
+
+            int statusCode = connection.getResponseCode();
+            String retryAfter = connection.getHeaderField("Retry-After");
+            boolean success = statusCode >= 200 && statusCode < 300;
+            FastchannelHttpClient.HttpResult result;
+            CountingInputStream stream = CountingInputStream.wrap(
+                    success ? connection.getInputStream() : connection.getErrorStream());
+            if (success && handler != null) {
+                Object decoded;
+                try (InputStream in = stream) {
+                    decoded = decode(handler, in, statusCode);
+                    drain(in);
+                }
+                result = new FastchannelHttpClient.HttpResult(statusCode, null, retryAfter, decoded);
+            } else {
+                result = new FastchannelHttpClient.HttpResult(statusCode, readFully(stream), retryAfter);
+            }
+            metrics.recordResponse(method, urlString, statusCode, System.nanoTime() - startedAt,
+                    requestBytes, stream != null ? stream.getCount() : 0L);
+            return result;
+
+        } catch (ResponseDecodeException e) {
+            // Troca HTTP completa; so o corpo e invalido
+            metrics.recordResponse(method, urlString, e.getStatusCode(), System.nanoTime() - startedAt,
+                    requestBytes, 0L);
+            connection.disconnect();
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            ioFailures.incrementAndGet();
+            metrics.recordIoError(method, urlString, System.nanoTime() - startedAt, requestBytes);
+            // Socket em estado desconhecido (ou corpo lido pela metade): nao devolver ao pool
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Executa o handler separando corpo invalido (JSON/XML malformado, tipo
+     * inesperado) de falha de leitura do socket, que continua como I/O.
+     */
+    static Object decode(ResponseHandler<?> handler, InputStream in, int statusCode) throws IOException {
+        try {
+            return handler.handle(in);
+        } catch (MalformedJsonException e) {
+            throw new ResponseDecodeException(statusCode, e);
+        } catch (JsonIOException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+        } catch (RuntimeException e) {
+            throw new ResponseDecodeException(statusCode, e);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("requests", requests.get());
+        map.put("ioFailures", ioFailures.get());
+        map.put("maxConnections", maxConnections);
+        map.put("jvmMaxConnections", jvmMaxConnections());
+        map.put("keepAlive", System.getProperty("http.keepAlive", "true"));
+        map.put("insecureSsl", sslSocketFactory != null);
+        return map;
+    }
+
+    /**
+     * Le o corpo ate o fim e fecha o stream, liberando a conexao para reuso.
+     */
+    static String readFully(InputStream stream) throws IOException {
+        if (stream == null) return "";
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Consome o que o handler nao leu: so um stream lido ate o fim devolve
+     * o socket ao cache de keep-alive.
+     */
+    private static void drain(InputStream stream) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (stream.read(buffer) != -1) {
+            // descarta
+        }
+    }
+
+    /**
+     * Conta os bytes do corpo da resposta para as metricas.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        static CountingInputStream wrap(InputStream in) {
+            return in != null ? new CountingInputStream(in) : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += Math.max(0L, skipped);
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Avisa quando o pool de keep-alive da JVM e menor que o configurado;
+     * as propriedades sao globais e ficam a cargo do administrador.
+     */
+    private static void checkKeepAlive(int maxConnections) {
+        if (!Boolean.parseBoolean(System.getProperty("http.keepAlive", "true"))) {
+            log.warning("http.keepAlive=false na JVM: conexoes com o Fastchannel nao serao reutilizadas.");
+            return;
+        }
+        int jvmMax = jvmMaxConnections();
+        if (jvmMax < maxConnections) {
+            log.warning("Pool de keep-alive da JVM com " + jvmMax + " conexoes por host, abaixo de "
+                    + "fastchannel.http.max.connections=" + maxConnections
+                    + ". Inicie a JVM com -Dhttp.maxConnections=" + maxConnections + ".");
+        }
+    }
+
+    /**
+     * Conexoes ociosas por host mantidas pela JVM (http.maxConnections, padrao 5).
+     */
+    static int jvmMaxConnections() {
+        String configured = System.getProperty("http.maxConnections");
+        try {
+            int value = configured != null ? Integer.parseInt(configured.trim()) : JVM_DEFAULT_MAX_CONNECTIONS;
+            return value > 0 ? value : JVM_DEFAULT_MAX_CONNECTIONS;
+        } catch (NumberFormatException e) {
+            return JVM_DEFAULT_MAX_CONNECTIONS;
+        }
+    }
+
+    static boolean isInsecureSslConfigured() {
+        String configured = System.getProperty("fastchannel.ssl.insecure");
+        if (configured == null || configured.trim().isEmpty()) {
+            configured = System.getenv("FASTCHANNEL_SSL_INSECURE");
+        }
+        return configured == null || configured.trim().isEmpty() || Boolean.parseBoolean(configured);
+    }
+}
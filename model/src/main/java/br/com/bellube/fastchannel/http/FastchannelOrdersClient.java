@@ -14,17 +14,22 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -59,7 +64,7 @@ public class FastchannelOrdersClient {
     private final FastchannelConfig config;
 
     public FastchannelOrdersClient() {
-        this.httpClient = new FastchannelHttpClient();
+        this.httpClient = FastchannelHttpClient.getShared();
         this.config = FastchannelConfig.getInstance();
     }
 
@@ -104,40 +109,20 @@ public class FastchannelOrdersClient {
 
         log.info("Buscando pedidos: " + endpoint);
 
-        FastchannelHttpClient.HttpResult result = httpClient.getOrders(endpoint.toString());
+        FastchannelHttpClient.HttpResult result = httpClient.getOrders(endpoint.toString(),
+                stream -> decodeOrderList(new InputStreamReader(stream, StandardCharsets.UTF_8)));
 
         if (!result.isSuccess()) {
             log.warning("Erro ao listar pedidos: HTTP " + result.getStatusCode() + " - " + result.getBody());
             throw new Exception("Erro ao listar pedidos: " + result.getErrorMessage());
         }
 
-        String body = sanitizeBody(result.getBody());
-        List<OrderDTO> orders = new ArrayList<>();
-        Integer totalRecords = null;
-        Integer totalPages = null;
-        if (body.startsWith("<")) {
-            OrderListResult xmlResult = parseOrdersXml(body);
-            if (xmlResult != null) {
-                orders = xmlResult.getOrders();
-                totalRecords = xmlResult.getTotalRecords();
-                totalPages = xmlResult.getTotalPages();
-            }
-        } else if (body.startsWith("[")) {
-            Type listType = new TypeToken<ArrayList<OrderDTO>>(){}.getType();
-            orders = gson.fromJson(body, listType);
-        } else {
-            OrderListResponse response = gson.fromJson(body, OrderListResponse.class);
-            if (response != null) {
-                if (response.payload != null) {
-                    orders = response.payload;
-                }
-                totalRecords = response.totalRecords;
-                totalPages = response.totalPages;
-            }
+        OrderListResult decoded = result.getDecoded();
+        if (decoded == null) {
+            decoded = new OrderListResult(new ArrayList<>(), null, null);
         }
-
-        log.info("Retornados " + (orders != null ? orders.size() : 0) + " pedidos.");
-        return new OrderListResult(orders != null ? orders : new ArrayList<>(), totalRecords, totalPages);
+        log.info("Retornados " + decoded.getOrders().size() + " pedidos.");
+        return decoded;
     }
 
     /**
@@ -149,14 +134,15 @@ public class FastchannelOrdersClient {
     public OrderDTO getOrder(String orderId) throws Exception {
         String endpoint = FastchannelConstants.ENDPOINT_ORDERS + "/" + orderId;
 
-        FastchannelHttpClient.HttpResult result = httpClient.getOrders(endpoint);
+        FastchannelHttpClient.HttpResult result = httpClient.getOrders(endpoint,
+                stream -> decodeOrder(new InputStreamReader(stream, StandardCharsets.UTF_8)));
 
         if (!result.isSuccess()) {
             log.warning("Erro ao obter pedido " + orderId + ": HTTP " + result.getStatusCode());
             throw new Exception("Erro ao obter pedido: " + result.getErrorMessage());
         }
 
-        return parseOrderPayload(result.getBody());
+        return result.getDecoded();
     }
 
     /**
@@ -279,44 +265,153 @@ public class FastchannelOrdersClient {
         updateOrderStatus(orderId, FastchannelConstants.STATUS_DELIVERED, "Pedido entregue");
     }
 
-    private static OrderDTO parseOrderPayload(String body) {
-        if (body == null || body.trim().isEmpty()) {
+    /**
+     * Decodifica a listagem direto do stream: cada item de Payload vira um
+     * OrderDTO assim que e lido, sem String intermediaria nem arvore JSON.
+     * Corpo XML segue para o parser DOM.
+     */
+    static OrderListResult decodeOrderList(Reader source) throws IOException {
+        PushbackReader reader = new PushbackReader(source, 1);
+        List<OrderDTO> orders = new ArrayList<>();
+        int first = peekSignificant(reader);
+        if (first == -1) {
+            return new OrderListResult(orders, null, null);
+        }
+        if (first == '<') {
+            OrderListResult xmlResult = parseOrdersXml(readAll(reader));
+            return xmlResult != null ? xmlResult : new OrderListResult(orders, null, null);
+        }
+
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        Integer totalRecords = null;
+        Integer totalPages = null;
+        JsonToken token = json.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            readOrders(json, orders);
+        } else if (token == JsonToken.BEGIN_OBJECT) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if ("Payload".equals(name) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                    readOrders(json, orders);
+                } else if ("TotalRecords".equals(name)) {
+                    totalRecords = nextIntOrNull(json);
+                } else if ("TotalPages".equals(name)) {
+                    totalPages = nextIntOrNull(json);
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        } else {
+            json.skipValue();
+        }
+        return new OrderListResult(orders, totalRecords, totalPages);
+    }
+
+    /**
+     * Decodifica o detalhe de um pedido direto do stream. O pedido e lido
+     * numa unica passada para a arvore JSON, necessaria para os campos
+     * alternativos de cliente e documento.
+     */
+    static OrderDTO decodeOrder(Reader source) throws IOException {
+        PushbackReader reader = new PushbackReader(source, 1);
+        int first = peekSignificant(reader);
+        if (first == -1) {
             return null;
         }
+        if (first == '<') {
+            return parseOrderXml(readAll(reader));
+        }
 
-        String trimmed = sanitizeBody(body);
-        if (trimmed.startsWith("<")) {
-            return parseOrderXml(trimmed);
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        JsonElement tree = JsonParser.parseReader(json);
+        if (tree != null && tree.isJsonObject()) {
+            OrderDTO parsed = parseOrderFromTree(tree.getAsJsonObject());
+            if (parsed != null) {
+                return parsed;
+            }
         }
-        if (trimmed.startsWith("{")) {
-            try {
-                JsonObject obj = new com.google.gson.JsonParser().parse(trimmed).getAsJsonObject();
-                if (obj.has("Payload")) {
-                    JsonElement payload = obj.get("Payload");
-                    if (payload != null) {
-                        if (payload.isJsonObject()) {
-                            OrderDTO parsed = parseOrderFromJsonObject(payload.getAsJsonObject());
-                            if (parsed != null) {
-                                return parsed;
-                            }
-                        } else if (payload.isJsonArray() && payload.getAsJsonArray().size() > 0
-                                && payload.getAsJsonArray().get(0).isJsonObject()) {
-                            OrderDTO parsed = parseOrderFromJsonObject(payload.getAsJsonArray().get(0).getAsJsonObject());
-                            if (parsed != null) {
-                                return parsed;
-                            }
+        return gson.fromJson(tree, OrderDTO.class);
+    }
+
+    private static void readOrders(JsonReader json, List<OrderDTO> orders) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            OrderDTO order = gson.fromJson(json, OrderDTO.class);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        json.endArray();
+    }
+
+    private static Integer nextIntOrNull(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        if (json.peek() != JsonToken.NUMBER && json.peek() != JsonToken.STRING) {
+            json.skipValue();
+            return null;
+        }
+        try {
+            return json.nextInt();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Pula espacos e BOM e devolve o primeiro caractere significativo ao
+     * reader, ou -1 se o corpo estiver vazio.
+     */
+    private static int peekSignificant(PushbackReader reader) throws IOException {
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF'));
+        if (c != -1) {
+            reader.unread(c);
+        }
+        return c;
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
+
+    private static OrderDTO parseOrderFromTree(JsonObject obj) {
+        try {
+            if (obj.has("Payload")) {
+                JsonElement payload = obj.get("Payload");
+                if (payload != null) {
+                    if (payload.isJsonObject()) {
+                        OrderDTO parsed = parseOrderFromJsonObject(payload.getAsJsonObject());
+                        if (parsed != null) {
+                            return parsed;
+                        }
+                    } else if (payload.isJsonArray() && payload.getAsJsonArray().size() > 0
+                            && payload.getAsJsonArray().get(0).isJsonObject()) {
+                        OrderDTO parsed = parseOrderFromJsonObject(payload.getAsJsonArray().get(0).getAsJsonObject());
+                        if (parsed != null) {
+                            return parsed;
                         }
                     }
                 }
-                OrderDTO parsed = parseOrderFromJsonObject(obj);
-                if (parsed != null) {
-                    return parsed;
-                }
-            } catch (Exception ignored) {
             }
+            return parseOrderFromJsonObject(obj);
+        } catch (Exception ignored) {
+            return null;
         }
-
-        return gson.fromJson(trimmed, OrderDTO.class);
     }
 
     private static OrderDTO parseOrderFromJsonObject(JsonObject json) {
@@ -495,15 +590,6 @@ public class FastchannelOrdersClient {
         return null;
     }
 
-    private static String sanitizeBody(String body) {
-        if (body == null) return "";
-        String trimmed = body.trim();
-        if (!trimmed.isEmpty() && trimmed.charAt(0) == '\uFEFF') {
-            trimmed = trimmed.substring(1).trim();
-        }
-        return trimmed;
-    }
-
     private static OrderListResult parseOrdersXml(String xml) {
         try {
             Document doc = parseXml(xml);
@@ -741,15 +827,6 @@ public class FastchannelOrdersClient {
         return b;
     }
 
-    private static class OrderListResponse {
-        @SerializedName("Payload")
-        private List<OrderDTO> payload;
-        @SerializedName("TotalRecords")
-        private Integer totalRecords;
-        @SerializedName("TotalPages")
-        private Integer totalPages;
-    }
-
     public static class OrderListResult {
         private final List<OrderDTO> orders;
         private final Integer totalRecords;
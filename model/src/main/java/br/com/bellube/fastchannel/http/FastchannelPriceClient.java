@@ -10,6 +10,7 @@ import com.google.gson.GsonBuilder;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 /**
@@ -19,6 +20,9 @@ import java.util.logging.Logger;
  * - Atualizar preço de produto individual
  * - Atualizar preços em lote (batch)
  * - Consultar preço atual
+ *
+ * As variantes *Async rodam no {@link FastchannelAsyncExecutor} e respeitam
+ * o mesmo rate limit global das chamadas sincronas.
  */
 public class FastchannelPriceClient {
     public enum Channel {
@@ -36,11 +40,11 @@ public class FastchannelPriceClient {
     private final Channel channel;
 
     public FastchannelPriceClient() {
-        this(new FastchannelHttpClient(), Channel.CONSUMPTION);
+        this(FastchannelHttpClient.getShared(), Channel.CONSUMPTION);
     }
 
     public FastchannelPriceClient(Channel channel) {
-        this(new FastchannelHttpClient(), channel);
+        this(FastchannelHttpClient.getShared(), channel);
     }
 
     public FastchannelPriceClient(FastchannelHttpClient httpClient) {
@@ -99,6 +103,18 @@ public class FastchannelPriceClient {
         log.info("Preço do SKU " + sku + " atualizado com sucesso.");
     }
 
+    /**
+     * Versao assincrona de {@link #updatePrice(String, BigDecimal, BigDecimal, BigDecimal)}.
+     * O future completa com erro nas mesmas situacoes em que a versao sincrona lanca.
+     */
+    public CompletableFuture<Void> updatePriceAsync(String sku, BigDecimal price, BigDecimal listPrice,
+                                                    BigDecimal priceTableId) {
+        return FastchannelAsyncExecutor.getInstance().submit(() -> {
+            updatePrice(sku, price, listPrice, priceTableId);
+            return null;
+        });
+    }
+
     /**
      * Atualiza preço com dados completos.
      *
@@ -198,6 +214,17 @@ public class FastchannelPriceClient {
         }
     }
 
+    /**
+     * Versao assincrona de {@link #updatePriceBatches(String, BigDecimal, List)}.
+     */
+    public CompletableFuture<Void> updatePriceBatchesAsync(String sku, BigDecimal priceTableId,
+                                                           List<PriceBatchItemDTO> batches) {
+        return FastchannelAsyncExecutor.getInstance().submit(() -> {
+            updatePriceBatches(sku, priceTableId, batches);
+            return null;
+        });
+    }
+
     /**
      * Consulta preço atual de um SKU.
      *
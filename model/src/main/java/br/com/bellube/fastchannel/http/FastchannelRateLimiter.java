@@ -0,0 +1,204 @@
+package br.com.bellube.fastchannel.http;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rate limit global do processo para as APIs Fastchannel.
+ *
+ * Um token bucket por familia de API (pedidos, estoque, preco) e chave de
+ * assinatura, com reposicao continua de AD_FCCONFIG.MAX_REQUESTS_MIN
+ * (requisicoes por minuto) e rajada de ate {@value #BURST_SECONDS}s de cota.
+ *
+ * {@link #acquire} reserva o proximo token sob um lock justo e dorme fora
+ * dele: quem chegou primeiro sai primeiro e nenhuma thread bloqueia as
+ * demais enquanto espera. {@link #tryAcquire} nunca espera.
+ */
+public final class FastchannelRateLimiter {
+
+    public enum ApiFamily { ORDERS, STOCK, PRICE }
+
+    static final int BURST_SECONDS = 10;
+
+    private static FastchannelRateLimiter instance;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    FastchannelRateLimiter() {
+    }
+
+    public static synchronized FastchannelRateLimiter getInstance() {
+        if (instance == null) {
+            instance = new FastchannelRateLimiter();
+        }
+        return instance;
+    }
+
+    /**
+     * Consome um token se houver disponivel agora.
+     */
+    public boolean tryAcquire(ApiFamily family, String subscriptionKey) {
+        return bucket(family, subscriptionKey).tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Reserva um token e espera ate o momento reservado (ordem de chegada).
+     */
+    public void acquire(ApiFamily family, String subscriptionKey) throws InterruptedException {
+        long waitNanos = bucket(family, subscriptionKey).reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Indica se a fila de reservas de alguma familia ja passa da janela de
+     * rajada, ou seja, novas requisicoes ficariam esperando por muito tempo.
+     */
+    public boolean isSaturated() {
+        long now = System.nanoTime();
+        for (TokenBucket bucket : buckets.values()) {
+            if (bucket.waitNanos(now) > TimeUnit.SECONDS.toNanos(BURST_SECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<String, Object> snapshot() {
+        long now = System.nanoTime();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().toMap(now));
+        }
+        return map;
+    }
+
+    private TokenBucket bucket(ApiFamily family, String subscriptionKey) {
+        int perMinute = FastchannelConfig.getInstance().getMaxRequestsPerMinute();
+        TokenBucket bucket = buckets.computeIfAbsent(bucketKey(family, subscriptionKey),
+                key -> new TokenBucket(perMinute, System.nanoTime()));
+        bucket.setRate(perMinute);
+        return bucket;
+    }
+
+    /**
+     * Chave do bucket sem expor a chave de assinatura (apenas o final).
+     */
+    static String bucketKey(ApiFamily family, String subscriptionKey) {
+        String key = subscriptionKey != null ? subscriptionKey.trim() : "";
+        String suffix = key.length() > 4 ? key.substring(key.length() - 4) : key;
+        return family.name() + ":" + (key.isEmpty() ? "-" : "*" + suffix + "#" + Integer.toHexString(key.hashCode()));
+    }
+
+    /**
+     * Token bucket com reservas: os tokens podem ficar negativos, e cada
+     * unidade negativa representa uma thread ja agendada para o futuro.
+     */
+    static final class TokenBucket {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private volatile int perMinute;
+        private double capacity;
+        private double nanosPerToken;
+        private double tokens;
+        private long lastRefill;
+        private long acquired;
+        private long rejected;
+
+        TokenBucket(int perMinute, long now) {
+            configure(perMinute);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        void setRate(int newPerMinute) {
+            if (newPerMinute == perMinute) {
+                return;
+            }
+            lock.lock();
+            try {
+                configure(newPerMinute);
+                tokens = Math.min(tokens, capacity);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean tryAcquire(long now) {
+            lock.lock();
+            try {
+                refill(now);
+                if (tokens >= 1d) {
+                    tokens -= 1d;
+                    acquired++;
+                    return true;
+                }
+                rejected++;
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return nanos que o chamador deve esperar antes de usar o token
+         */
+        long reserve(long now) {
+            lock.lock();
+            try {
+                refill(now);
+                tokens -= 1d;
+                acquired++;
+                return tokens >= 0d ? 0L : (long) Math.ceil(-tokens * nanosPerToken);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long waitNanos(long now) {
+            lock.lock();
+            try {
+                refill(now);
+                return tokens >= 1d ? 0L : (long) Math.ceil((1d - tokens) * nanosPerToken);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> toMap(long now) {
+            lock.lock();
+            try {
+                refill(now);
+                Map<String, Object> map = new LinkedHashMap<>();
+                map.put("perMinute", perMinute);
+                map.put("capacity", capacity);
+                map.put("available", Math.max(0d, Math.floor(tokens)));
+                map.put("queued", tokens < 0d ? (long) Math.ceil(-tokens) : 0L);
+                map.put("acquired", acquired);
+                map.put("rejected", rejected);
+                return map;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void configure(int newPerMinute) {
+            perMinute = Math.max(1, newPerMinute);
+            nanosPerToken = TimeUnit.MINUTES.toNanos(1) / (double) perMinute;
+            capacity = Math.max(1d, Math.floor(perMinute * BURST_SECONDS / 60d));
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed / nanosPerToken);
+                lastRefill = now;
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.google.gson.GsonBuilder;
 import java.math.BigDecimal;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 /**
@@ -17,6 +18,9 @@ import java.util.logging.Logger;
  * Operações:
  * - Atualizar estoque de produto
  * - Consultar estoque atual
+ *
+ * As variantes *Async rodam no {@link FastchannelAsyncExecutor} e respeitam
+ * o mesmo rate limit global das chamadas sincronas.
  */
 public class FastchannelStockClient {
 
@@ -29,7 +33,7 @@ public class FastchannelStockClient {
     private final FastchannelConfig config;
 
     public FastchannelStockClient() {
-        this.httpClient = new FastchannelHttpClient();
+        this.httpClient = FastchannelHttpClient.getShared();
         this.config = FastchannelConfig.getInstance();
     }
 
@@ -83,6 +87,18 @@ public class FastchannelStockClient {
         log.info("Estoque do SKU " + sku + " atualizado com sucesso.");
     }
 
+    /**
+     * Versao assincrona de {@link #updateStock(String, BigDecimal, String, String)}.
+     * O future completa com erro nas mesmas situacoes em que a versao sincrona lanca.
+     */
+    public CompletableFuture<Void> updateStockAsync(String sku, BigDecimal quantity,
+                                                    String storageIdOverride, String resellerIdOverride) {
+        return FastchannelAsyncExecutor.getInstance().submit(() -> {
+            updateStock(sku, quantity, storageIdOverride, resellerIdOverride);
+            return null;
+        });
+    }
+
     /**
      * Atualiza estoque com dados completos.
      *
@@ -160,6 +176,13 @@ public class FastchannelStockClient {
         return gson.fromJson(result.getBody(), StockDTO.class);
     }
 
+    /**
+     * Versao assincrona de {@link #getStock(String)}.
+     */
+    public CompletableFuture<StockDTO> getStockAsync(String sku) {
+        return FastchannelAsyncExecutor.getInstance().submit(() -> getStock(sku));
+    }
+
     /**
      * Zera o estoque de um SKU (usado quando produto é inativado).
      *
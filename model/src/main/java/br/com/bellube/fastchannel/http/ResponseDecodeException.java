@@ -0,0 +1,25 @@
+package br.com.bellube.fastchannel.http;
+
+import java.io.IOException;
+
+/**
+ * A API respondeu 2xx mas o corpo nao pode ser decodificado.
+ *
+ * Nao e falha de rede: a chamada nao e repetida, nao conta para o circuito
+ * da familia nem como falha de I/O do transporte; so a chamada atual falha.
+ */
+public class ResponseDecodeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public ResponseDecodeException(int statusCode, Throwable cause) {
+        super("Resposta HTTP " + statusCode + " com corpo invalido: " + cause.getMessage(), cause);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -5,7 +5,10 @@ import br.com.bellube.fastchannel.job.OrderImportJob;
 import br.com.bellube.fastchannel.job.OrderStatusSyncJob;
 import br.com.bellube.fastchannel.job.OutboxProcessorJob;
 import br.com.bellube.fastchannel.job.PriceFullSyncJob;
+import br.com.bellube.fastchannel.job.QueueArchiveJob;
 import br.com.bellube.fastchannel.job.StockFullSyncJob;
+import br.com.bellube.fastchannel.job.StockIncrementalSyncJob;
+import br.com.bellube.fastchannel.job.StockVerifyJob;
 import br.com.bellube.fastchannel.util.DBUtil;
 import br.com.sankhya.jape.vo.DynamicVO;
 
@@ -145,7 +148,7 @@ public final class FastchannelAutoProvisioning {
             t.setDaemon(true);
             return t;
         };
-        internalScheduler = Executors.newScheduledThreadPool(5, factory);
+        internalScheduler = Executors.newScheduledThreadPool(8, factory);
 
         schedule("order-import", readPositiveLong("fc.auto.order.import.minutes", 5), TimeUnit.MINUTES,
                 () -> new OrderImportJob().executeScheduler());
@@ -155,8 +158,15 @@ public final class FastchannelAutoProvisioning {
                 () -> new OrderStatusSyncJob().executeScheduler());
         schedule("price-full", readPositiveLong("fc.auto.price.hours", 6), TimeUnit.HOURS,
                 () -> new PriceFullSyncJob().executeScheduler());
-        schedule("stock-full", readPositiveLong("fc.auto.stock.hours", 6), TimeUnit.HOURS,
+        // Full sync semanal como rede de seguranca; o incremental cobre as alteracoes fora do listener
+        schedule("stock-full", readPositiveLong("fc.auto.stock.hours", 168), TimeUnit.HOURS,
                 () -> new StockFullSyncJob().executeScheduler());
+        schedule("stock-incremental", readPositiveLong("fc.auto.stock.incremental.minutes", 5), TimeUnit.MINUTES,
+                () -> new StockIncrementalSyncJob().executeScheduler());
+        schedule("stock-verify", readPositiveLong("fc.auto.stock.verify.minutes", 30), TimeUnit.MINUTES,
+                () -> new StockVerifyJob().executeScheduler());
+        schedule("queue-archive", readPositiveLong("fc.auto.archive.minutes", 30), TimeUnit.MINUTES,
+                () -> new QueueArchiveJob().executeScheduler());
 
         INTERNAL_STARTED.set(true);
         log.info("AutoProvisionamento: fallback interno ativado.");
@@ -0,0 +1,142 @@
+package br.com.bellube.fastchannel.job;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Despachante concorrente dos itens da fila (Outbox).
+ *
+ * Executa as tarefas num pool limitado de workers, respeitando um teto
+ * de execucoes simultaneas por tipo de entidade. Tarefas que excedem o
+ * teto aguardam numa fila propria do tipo, sem ocupar worker, e sao
+ * liberadas conforme as anteriores do mesmo tipo terminam.
+ */
+class OutboxDispatcher {
+
+    private static final Logger log = Logger.getLogger(OutboxDispatcher.class.getName());
+    private static final AtomicInteger POOL_SEQ = new AtomicInteger(0);
+
+    private final ExecutorService executor;
+    private final int maxPerType;
+    private final Map<String, Integer> inFlightByType = new HashMap<>();
+    private final Map<String, Deque<Runnable>> waitingByType = new HashMap<>();
+    private final Object lock = new Object();
+    private int outstanding;
+
+    OutboxDispatcher(int workers, int maxPerType) {
+        int poolSize = Math.max(1, workers);
+        this.maxPerType = Math.max(1, Math.min(maxPerType, poolSize));
+        int poolId = POOL_SEQ.incrementAndGet();
+        ThreadFactory factory = runnable -> {
+            Thread t = new Thread(runnable);
+            t.setName("fastchannel-outbox-" + poolId + "-" + t.getId());
+            t.setDaemon(true);
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+    }
+
+    /**
+     * Agenda a tarefa respeitando o teto do tipo de entidade.
+     */
+    void submit(String entityType, Runnable task) {
+        String type = entityType != null ? entityType : "";
+        Runnable wrapped = () -> runAndRelease(type, task);
+        synchronized (lock) {
+            outstanding++;
+            int inFlight = inFlightByType.getOrDefault(type, 0);
+            if (inFlight < maxPerType) {
+                inFlightByType.put(type, inFlight + 1);
+                executor.execute(wrapped);
+            } else {
+                waitingByType.computeIfAbsent(type, key -> new ArrayDeque<>()).addLast(wrapped);
+            }
+        }
+    }
+
+    private void runAndRelease(String type, Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Falha nao tratada em tarefa da fila (" + type + ")", e);
+        } finally {
+            synchronized (lock) {
+                Deque<Runnable> waiting = waitingByType.get(type);
+                Runnable next = waiting != null ? waiting.pollFirst() : null;
+                if (next != null) {
+                    executor.execute(next);
+                } else {
+                    inFlightByType.put(type, Math.max(0, inFlightByType.getOrDefault(type, 1) - 1));
+                }
+                outstanding--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Aguarda a conclusao das tarefas submetidas.
+     *
+     * @return true se todas terminaram dentro do prazo
+     */
+    boolean awaitCompletion(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            while (outstanding > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                lock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    int getMaxPerType() {
+        return maxPerType;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Descarta as tarefas que ainda nao comecaram e interrompe os workers.
+     *
+     * @return quantidade de tarefas descartadas sem executar
+     */
+    int shutdownNow() {
+        synchronized (lock) {
+            int dropped = 0;
+            for (Deque<Runnable> waiting : waitingByType.values()) {
+                dropped += waiting.size();
+                waiting.clear();
+            }
+            dropped += executor.shutdownNow().size();
+            outstanding = Math.max(0, outstanding - dropped);
+            lock.notifyAll();
+            return dropped;
+        }
+    }
+
+    /**
+     * Aguarda os workers terminarem apos {@link #shutdownNow()}.
+     *
+     * @return true se todos terminaram dentro do prazo
+     */
+    boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,191 @@
+package br.com.bellube.fastchannel.job;
+
+import br.com.bellube.fastchannel.config.FastchannelConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Raias da fila por tipo de entidade com quotas por round-robin ponderado.
+ *
+ * Cada ciclo divide o tamanho do lote entre as raias proporcionalmente ao
+ * peso (minimo 1 por raia). A sobra do arredondamento e entregue a partir
+ * de uma raia que gira a cada ciclo, de modo que nenhuma raia monopoliza o
+ * lote mesmo com backlog grande em outra.
+ */
+final class OutboxLanePlanner {
+
+    private static final Logger log = Logger.getLogger(OutboxLanePlanner.class.getName());
+    private static final AtomicInteger ROTATION = new AtomicInteger(0);
+
+    // Tipos enfileirados pelo addon: todos precisam de raia para serem drenados
+    static final List<String> QUEUE_ENTITY_TYPES = Collections.unmodifiableList(Arrays.asList(
+            FastchannelConstants.ENTITY_PEDIDO_STATUS, FastchannelConstants.ENTITY_PRECO,
+            FastchannelConstants.ENTITY_ESTOQUE, FastchannelConstants.ENTITY_PRODUTO));
+    private static final Set<String> WARNED_MISSING = ConcurrentHashMap.newKeySet();
+
+    private OutboxLanePlanner() {
+    }
+
+    /**
+     * Completa os pesos configurados com peso 1 para os tipos da fila que
+     * ficaram fora de OUTBOX_LANE_WEIGHTS; sem raia, esses itens nunca seriam
+     * reivindicados. Avisa uma vez por tipo.
+     */
+    static Map<String, Integer> withDefaultLanes(Map<String, Integer> weights, List<String> types) {
+        Map<String, Integer> complete = new LinkedHashMap<>(weights);
+        for (String type : types) {
+            if (complete.containsKey(type)) {
+                continue;
+            }
+            complete.put(type, 1);
+            if (WARNED_MISSING.add(type)) {
+                log.warning("Tipo " + type + " ausente de OUTBOX_LANE_WEIGHTS. Drenado com peso 1.");
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Ordem das raias neste ciclo (rotacionada).
+     */
+    static List<String> rotatedLanes(Map<String, Integer> weights) {
+        List<String> lanes = new ArrayList<>(weights.keySet());
+        if (lanes.isEmpty()) {
+            return lanes;
+        }
+        int shift = Math.floorMod(ROTATION.getAndIncrement(), lanes.size());
+        List<String> rotated = new ArrayList<>(lanes.size());
+        for (int i = 0; i < lanes.size(); i++) {
+            rotated.add(lanes.get((i + shift) % lanes.size()));
+        }
+        return rotated;
+    }
+
+    /**
+     * Calcula a quota de cada raia para o lote.
+     *
+     * @param weights pesos por tipo
+     * @param order ordem de atendimento do ciclo (define quem recebe a sobra)
+     * @param batchSize total de itens do ciclo
+     */
+    static Map<String, Integer> computeQuotas(Map<String, Integer> weights, List<String> order, int batchSize) {
+        Map<String, Integer> quotas = new LinkedHashMap<>();
+        if (batchSize <= 0 || order.isEmpty()) {
+            return quotas;
+        }
+        if (batchSize <= order.size()) {
+            for (int i = 0; i < order.size(); i++) {
+                quotas.put(order.get(i), i < batchSize ? 1 : 0);
+            }
+            return quotas;
+        }
+
+        long totalWeight = 0;
+        for (String lane : order) {
+            totalWeight += Math.max(1, weights.getOrDefault(lane, 1));
+        }
+        int assigned = 0;
+        for (String lane : order) {
+            int weight = Math.max(1, weights.getOrDefault(lane, 1));
+            int quota = (int) Math.max(1L, (long) batchSize * weight / totalWeight);
+            quotas.put(lane, quota);
+            assigned += quota;
+        }
+        int index = 0;
+        while (assigned < batchSize) {
+            String lane = order.get(index++ % order.size());
+            quotas.put(lane, quotas.get(lane) + 1);
+            assigned++;
+        }
+        while (assigned > batchSize) {
+            String lane = order.get(order.size() - 1 - (index++ % order.size()));
+            if (quotas.get(lane) > 1) {
+                quotas.put(lane, quotas.get(lane) - 1);
+                assigned--;
+            }
+        }
+        return quotas;
+    }
+
+    /**
+     * Metricas de uma raia num ciclo: volume, tempo de processamento e
+     * tempo de espera na fila (criacao ate o inicio do envio).
+     */
+    static final class LaneStats {
+        private final int weight;
+        private final AtomicInteger claimed = new AtomicInteger(0);
+        private final AtomicInteger succeeded = new AtomicInteger(0);
+        private final AtomicInteger failed = new AtomicInteger(0);
+        private final AtomicInteger deferred = new AtomicInteger(0);
+        private final AtomicLong totalProcessingMs = new AtomicLong(0);
+        private final AtomicLong maxProcessingMs = new AtomicLong(0);
+        private final AtomicLong totalWaitMs = new AtomicLong(0);
+        private final AtomicLong maxWaitMs = new AtomicLong(0);
+
+        LaneStats(int weight) {
+            this.weight = weight;
+        }
+
+        void addClaimed(int count) {
+            claimed.addAndGet(count);
+        }
+
+        void record(boolean success, long processingMs, long waitMs) {
+            if (success) {
+                succeeded.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+            totalProcessingMs.addAndGet(processingMs);
+            maxProcessingMs.accumulateAndGet(processingMs, Math::max);
+            totalWaitMs.addAndGet(Math.max(0L, waitMs));
+            maxWaitMs.accumulateAndGet(waitMs, Math::max);
+        }
+
+        /**
+         * Item devolvido a PENDENTE por circuito aberto: nao conta como falha
+         * nem entra nas medias de processamento.
+         */
+        void recordDeferred() {
+            deferred.incrementAndGet();
+        }
+
+        int getClaimed() {
+            return claimed.get();
+        }
+
+        Map<String, Object> toMap() {
+            int done = succeeded.get() + failed.get();
+            Map<String, Object> map = new HashMap<>();
+            map.put("weight", weight);
+            map.put("claimed", claimed.get());
+            map.put("succeeded", succeeded.get());
+            map.put("failed", failed.get());
+            map.put("deferred", deferred.get());
+            map.put("avgProcessingMs", done > 0 ? totalProcessingMs.get() / done : 0L);
+            map.put("maxProcessingMs", maxProcessingMs.get());
+            map.put("avgQueueWaitMs", done > 0 ? totalWaitMs.get() / done : 0L);
+            map.put("maxQueueWaitMs", maxWaitMs.get());
+            return map;
+        }
+
+        String summary(String lane) {
+            int done = succeeded.get() + failed.get();
+            return lane + "[peso=" + weight + ", itens=" + claimed.get()
+                    + ", ok=" + succeeded.get() + ", erro=" + failed.get() + ", adiados=" + deferred.get()
+                    + ", procMedio=" + (done > 0 ? totalProcessingMs.get() / done : 0) + "ms"
+                    + ", esperaMax=" + maxWaitMs.get() + "ms]";
+        }
+    }
+}
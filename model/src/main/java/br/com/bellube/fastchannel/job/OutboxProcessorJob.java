@@ -2,29 +2,49 @@ package br.com.bellube.fastchannel.job;
 
 import br.com.bellube.fastchannel.config.FastchannelConfig;
 import br.com.bellube.fastchannel.config.FastchannelConstants;
+import br.com.bellube.fastchannel.dto.OrderInvoiceDTO;
+import br.com.bellube.fastchannel.dto.OrderTrackingDTO;
 import br.com.bellube.fastchannel.dto.PriceBatchItemDTO;
 import br.com.bellube.fastchannel.dto.QueueItemDTO;
+import br.com.bellube.fastchannel.http.AdaptiveThroughputController;
+import br.com.bellube.fastchannel.http.CircuitBreaker;
+import br.com.bellube.fastchannel.http.CircuitOpenException;
+import br.com.bellube.fastchannel.http.FastchannelHttpClient;
+import br.com.bellube.fastchannel.http.FastchannelOrdersClient;
 import br.com.bellube.fastchannel.http.FastchannelPriceClient;
+import br.com.bellube.fastchannel.http.FastchannelRateLimiter;
 import br.com.bellube.fastchannel.http.FastchannelStockClient;
 import br.com.bellube.fastchannel.service.DeparaService;
 import br.com.bellube.fastchannel.service.LogService;
 import br.com.bellube.fastchannel.service.PriceBatchResolver;
 import br.com.bellube.fastchannel.service.PriceResolver;
 import br.com.bellube.fastchannel.service.PriceTableResolver;
+import br.com.bellube.fastchannel.service.PublishedStateCache;
 import br.com.bellube.fastchannel.service.QueueService;
+import br.com.bellube.fastchannel.service.QueueStatusBatch;
 import br.com.bellube.fastchannel.service.StockResolver;
 import br.com.bellube.fastchannel.util.DBUtil;
 import br.com.sankhya.extensions.eventoprogramavel.EventoProgramavelJava;
 import br.com.sankhya.jape.event.PersistenceEvent;
 import br.com.sankhya.jape.event.TransactionContext;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +55,30 @@ import java.util.logging.Logger;
  * - ESTOQUE: Envia atualiza??es de estoque para Fastchannel
  * - PRECO: Envia atualiza??es de pre?o para Fastchannel
  * - PRODUTO: Sincroniza informa??es de produto
+ * - PEDIDO_STATUS: Envia transicoes de status do pedido (com NF e rastreio ao faturar)
+ *
+ * Transicoes do mesmo pedido sao coalescidas: apenas a mais recente do lote
+ * e enviada; as anteriores, e as que ja tem transicao mais nova na fila em
+ * qualquer status, ficam SUBSTITUIDO.
+ *
+ * Os itens sao despachados em paralelo por um pool limitado de workers
+ * (fastchannel.outbox.workers), com teto por tipo de entidade (fastchannel.outbox.workers.per.entity).
+ * O lote e dividido em raias por tipo, com quotas ponderadas por
+ * AD_FCCONFIG.OUTBOX_LANE_WEIGHTS, para que todo tipo avance a cada ciclo.
+ * O lease dos itens do lote e prorrogado enquanto aguardam worker; no
+ * timeout do lote, os nao iniciados voltam a PENDENTE e os workers sao
+ * interrompidos antes da gravacao final dos desfechos.
+ *
+ * Em modo de drenagem (fastchannel.outbox.drain.enabled, padrao ligado) uma execucao
+ * segue reivindicando lotes ate a fila esvaziar, o tempo de
+ * fastchannel.outbox.drain.seconds acabar ou o rate limit da API saturar.
+ * Com fastchannel.adaptive.enabled o lote e os workers de cada lote vem do
+ * AdaptiveThroughputController, que reage a latencia e aos 429 das chamadas
+ * do proprio outbox, sem passar do lote e dos workers configurados.
+ *
+ * Raias cuja API esta com o circuito aberto nao sao reivindicadas; itens
+ * que encontram o circuito aberto durante o envio voltam a PENDENTE com
+ * nova tentativa agendada, sem consumir retentativas nem parar as demais raias.
  *
  * Configura??o no Sankhya:
  * - Eventos Program?veis > Agendamento
@@ -45,6 +89,10 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
 
     private static final Logger log = Logger.getLogger(OutboxProcessorJob.class.getName());
     private static final Gson gson = new Gson();
+    private static final long DISPATCH_TIMEOUT_MS = 10 * 60_000L;
+    // Espera pelos workers interrompidos apos o timeout do lote, antes do flush final
+    private static final long WORKER_STOP_TIMEOUT_MS = 30_000L;
+    private static volatile Map<String, Object> lastLaneReport = Collections.emptyMap();
 
     @Override
     public void beforeInsert(PersistenceEvent event) throws Exception {}
@@ -81,92 +129,547 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
                 return;
             }
 
-            int batchSize = config.getBatchSize();
-            int processed = 0;
-            int errors = 0;
-
-            // Reativar itens com erro para reprocessamento
-            queueService.reactivateErrorItems(FastchannelConstants.DEFAULT_MAX_RETRIES);
-
-            // Buscar itens pendentes
-            List<QueueItemDTO> items = queueService.fetchPendingItems(batchSize);
+            boolean adaptive = config.isAdaptiveThroughputEnabled();
+            AdaptiveThroughputController throughput = AdaptiveThroughputController.getInstance();
+            boolean drain = config.isOutboxDrainEnabled();
+            long startedAt = System.currentTimeMillis();
+            long deadline = startedAt + config.getOutboxDrainSeconds() * 1000L;
+
+            // Colapsar pendencias redundantes do mesmo produto/destino
+            queueService.compactPending();
+
+            // Cliente HTTP do processo: rate limit global e conexoes persistentes entre lotes e execucoes.
+            FastchannelHttpClient httpClient = FastchannelHttpClient.getShared();
+            DispatchContext context = new DispatchContext(httpClient, DeparaService.getInstance(), config);
+            Map<String, OutboxLanePlanner.LaneStats> laneStats = new LinkedHashMap<>();
+            AtomicInteger processed = new AtomicInteger(0);
+            AtomicInteger errors = new AtomicInteger(0);
+            AtomicInteger deferred = new AtomicInteger(0);
+            int batches = 0;
+            String stopReason = "fila vazia";
+
+            while (true) {
+                // Lote e workers acompanham a saude da API a cada lote (AIMD)
+                int batchSize = adaptive ? throughput.getBatchSize() : config.getBatchSize();
+                int workers = adaptive ? throughput.getConcurrency() : config.getOutboxWorkers();
+                int claimed = runBatch(queueService, context, config, batchSize, workers,
+                        laneStats, processed, errors, deferred, logService);
+                if (claimed == 0) {
+                    break;
+                }
+                batches++;
+                if (!drain) {
+                    stopReason = "lote unico";
+                    break;
+                }
+                if (claimed < batchSize) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    stopReason = "tempo esgotado";
+                    break;
+                }
+                if (httpClient.isRateLimitSaturated()) {
+                    stopReason = "rate limit saturado";
+                    break;
+                }
+            }
 
-            if (items.isEmpty()) {
+            if (batches == 0) {
                 log.fine("Nenhum item pendente na fila.");
                 return;
             }
 
-            log.info("Processando " + items.size() + " itens da fila");
-            logService.info(LogService.OP_QUEUE_PROCESS, "Iniciando processamento de " + items.size() + " item(ns) da fila");
+            publishLaneReport(laneStats);
+
+            long elapsedMs = Math.max(1L, System.currentTimeMillis() - startedAt);
+            int total = processed.get() + errors.get();
+            String message = String.format(Locale.ROOT,
+                    "Job conclu?do. Processados: %d, Erros: %d, Adiados: %d, Lotes: %d, Tempo: %dms, Itens/s: %.2f, "
+                            + "Parada: %s. Raias: %s",
+                    processed.get(), errors.get(), deferred.get(), batches, elapsedMs, total * 1000d / elapsedMs,
+                    stopReason, describeLanes(laneStats));
+            log.info(message);
+            logService.info(LogService.OP_QUEUE_PROCESS, message);
+
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Erro no Job Outbox", e);
+            logService.error(LogService.OP_QUEUE_PROCESS, "Erro no job outbox", e);
+            throw e;
+        }
 
-            FastchannelStockClient stockClient = new FastchannelStockClient();
-            DeparaService deparaService = DeparaService.getInstance();
+        log.info("=== Job de Processamento Outbox Finalizado ===");
+    }
 
-            for (QueueItemDTO item : items) {
-                try {
-                    queueService.markAsProcessing(item.getIdQueue());
+    /**
+     * Reivindica e despacha um lote.
+     *
+     * @return quantidade de itens reivindicados (0 = fila vazia)
+     */
+    private int runBatch(QueueService queueService, DispatchContext context, FastchannelConfig config,
+                         int batchSize, int workers, Map<String, OutboxLanePlanner.LaneStats> laneStats, AtomicInteger processed,
+                         AtomicInteger errors, AtomicInteger deferred, LogService logService) throws InterruptedException {
+        // Reivindicar itens pendentes (lease) por raia - evita envio duplicado entre threads/nos
+        Map<String, Integer> weights = OutboxLanePlanner.withDefaultLanes(config.getOutboxLaneWeights(),
+                OutboxLanePlanner.QUEUE_ENTITY_TYPES);
+        List<QueueItemDTO> items = claimByLanes(queueService, weights, batchSize, laneStats);
+        if (items.isEmpty()) {
+            return 0;
+        }
 
-                    switch (item.getEntityType()) {
-                        case FastchannelConstants.ENTITY_ESTOQUE:
-                            processStockItem(item, stockClient, deparaService);
-                            break;
+        log.info("Processando " + items.size() + " itens da fila");
+        logService.info(LogService.OP_QUEUE_PROCESS, "Iniciando processamento de " + items.size() + " item(ns) da fila");
 
-                        case FastchannelConstants.ENTITY_PRECO:
-                            processPriceItem(item, deparaService, config);
-                            break;
+        QueueStatusBatch statusBatch = queueService.newStatusBatch();
 
-                        case FastchannelConstants.ENTITY_PRODUTO:
-                            processProductItem(item, deparaService);
-                            break;
+        // Status de pedido: so a transicao mais recente de cada pedido vai para a API
+        List<QueueItemDTO> superseded = new ArrayList<>();
+        List<QueueItemDTO> dispatchable = dropSupersededInQueue(queueService,
+                coalesceOrderStatus(items, superseded), superseded);
+        for (QueueItemDTO item : superseded) {
+            statusBatch.superseded(item.getIdQueue(), "Substituido por transicao mais recente do pedido " + item.getEntityKey());
+            processed.incrementAndGet();
+        }
 
-                        default:
-                            log.warning("Tipo de entidade desconhecido: " + item.getEntityType());
-                            queueService.markAsFatalError(item.getIdQueue(), "Tipo desconhecido");
-                            continue;
-                    }
+        Map<String, Map<Long, BigDecimal>> stockSnapshot = prefetchStock(dispatchable);
 
-                    queueService.markAsSuccess(item.getIdQueue());
-                    processed++;
-
-                } catch (Exception e) {
-                    log.log(Level.WARNING, "Erro ao processar item " + item.getIdQueue(), e);
-                    String detailedError = buildDetailedErrorMessage(item, e);
-                    logService.error(resolveOperationByEntity(item), detailedError, item.getEntityKey(), e);
-
-                    if (isNonPublishableSkuError(e)) {
-                        String msg = "SKU nao publicado no Fastchannel. Item marcado como ENVIADO para evitar retry infinito: "
-                                + item.getEntityKey();
-                        log.warning(msg);
-                        queueService.markAsSuccess(item.getIdQueue());
-                        LogService.getInstance().logPriceSync(item.getEntityKey(), false, msg);
-                        continue;
-                    }
+        // Itens ainda sem desfecho (lease prorrogado enquanto aguardam) e itens que ja comecaram
+        Set<BigDecimal> unfinished = ConcurrentHashMap.newKeySet();
+        Set<BigDecimal> started = ConcurrentHashMap.newKeySet();
+        for (QueueItemDTO item : dispatchable) {
+            if (item.getIdQueue() != null) {
+                unfinished.add(item.getIdQueue());
+            }
+        }
 
-                    if (item.canRetry(FastchannelConstants.DEFAULT_MAX_RETRIES)) {
-                        queueService.markAsError(item.getIdQueue(), detailedError);
-                    } else {
-                        queueService.markAsFatalError(item.getIdQueue(),
-                                "Excedeu maximo de tentativas. " + detailedError);
+        OutboxDispatcher dispatcher = new OutboxDispatcher(workers, config.getOutboxWorkersPerEntity());
+        boolean completed = false;
+        try {
+            for (QueueItemDTO item : dispatchable) {
+                OutboxLanePlanner.LaneStats lane = laneStats.get(item.getEntityType());
+                dispatcher.submit(item.getEntityType(), () -> {
+                    long startedAt = System.currentTimeMillis();
+                    if (item.getIdQueue() != null) {
+                        started.add(item.getIdQueue());
                     }
-                    errors++;
-                }
+                    AdaptiveThroughputController.beginDispatchSampling();
+                    try {
+                        DispatchResult result = processItem(item, context, stockSnapshot, statusBatch, logService);
+                        if (result == DispatchResult.DEFERRED) {
+                            // Circuito aberto: nao e erro do item nem amostra de processamento
+                            deferred.incrementAndGet();
+                            if (lane != null) {
+                                lane.recordDeferred();
+                            }
+                            return;
+                        }
+                        boolean ok = result == DispatchResult.SENT;
+                        if (ok) {
+                            processed.incrementAndGet();
+                        } else {
+                            errors.incrementAndGet();
+                        }
+                        if (lane != null) {
+                            long waitMs = item.getCreatedAt() != null ? startedAt - item.getCreatedAt().getTime() : 0L;
+                            lane.record(ok, System.currentTimeMillis() - startedAt, waitMs);
+                        }
+                    } finally {
+                        AdaptiveThroughputController.endDispatchSampling();
+                        if (item.getIdQueue() != null) {
+                            unfinished.remove(item.getIdQueue());
+                        }
+                    }
+                });
+            }
+            completed = awaitDispatch(dispatcher, queueService, unfinished, config.getQueueLeaseSeconds());
+            if (!completed) {
+                stopDispatch(dispatcher, statusBatch, unfinished, started);
+            }
+        } finally {
+            if (completed) {
+                dispatcher.shutdown();
             }
+            statusBatch.flush();
+        }
+        return items.size();
+    }
 
-            String message = String.format("Job conclu?do. Processados: %d, Erros: %d", processed, errors);
-            log.info(message);
-            logService.info(LogService.OP_QUEUE_PROCESS, message);
+    /**
+     * Aguarda o lote prorrogando o lease dos itens ainda sem desfecho a cada
+     * terco do lease, para que nenhum expire (e seja reenviado por outro no)
+     * enquanto espera worker.
+     *
+     * @return true se todos os itens terminaram antes de DISPATCH_TIMEOUT_MS
+     */
+    private static boolean awaitDispatch(OutboxDispatcher dispatcher, QueueService queueService,
+                                         Set<BigDecimal> unfinished, int leaseSeconds) throws InterruptedException {
+        long renewEveryMs = leaseRenewalIntervalMs(leaseSeconds);
+        long deadline = System.currentTimeMillis() + DISPATCH_TIMEOUT_MS;
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            if (dispatcher.awaitCompletion(Math.min(renewEveryMs, remaining))) {
+                return true;
+            }
+            queueService.renewLease(new ArrayList<>(unfinished));
+        }
+    }
+
+    /**
+     * Timeout do lote: descarta o que nao comecou (volta a PENDENTE),
+     * interrompe os workers e espera que terminem antes do flush final.
+     * Itens que seguem presos numa chamada HTTP ficam para o lease expirar.
+     */
+    private static void stopDispatch(OutboxDispatcher dispatcher, QueueStatusBatch statusBatch,
+                                     Set<BigDecimal> unfinished, Set<BigDecimal> started) throws InterruptedException {
+        int dropped = dispatcher.shutdownNow();
+        boolean terminated = dispatcher.awaitTermination(WORKER_STOP_TIMEOUT_MS);
+        int returned = 0;
+        for (BigDecimal idQueue : unfinished) {
+            if (!started.contains(idQueue)) {
+                statusBatch.deferred(idQueue, 1, "Timeout do lote: item nao iniciado");
+                returned++;
+            }
+        }
+        log.warning("Timeout aguardando workers da fila. Descartados " + dropped + " item(ns) nao iniciados ("
+                + returned + " devolvidos a PENDENTE)"
+                + (terminated ? "." : "; workers ainda ativos, itens em andamento serao reivindicados apos o lease."));
+    }
+
+    /**
+     * Intervalo de renovacao do lease durante o despacho: um terco do lease,
+     * sempre menor que o proprio lease.
+     */
+    static long leaseRenewalIntervalMs(int leaseSeconds) {
+        long leaseMs = Math.max(1, leaseSeconds) * 1000L;
+        return Math.max(100L, leaseMs / 3);
+    }
+
+    /**
+     * Mantem apenas a transicao de status mais recente (DH_CRIACAO, depois IDQUEUE)
+     * de cada pedido. As demais sao devolvidas em {@code superseded}.
+     * Itens de outros tipos passam inalterados, na mesma ordem.
+     */
+    static List<QueueItemDTO> coalesceOrderStatus(List<QueueItemDTO> items, List<QueueItemDTO> superseded) {
+        Map<String, QueueItemDTO> latest = new HashMap<>();
+        for (QueueItemDTO item : items) {
+            if (!isOrderStatus(item)) {
+                continue;
+            }
+            QueueItemDTO current = latest.get(item.getEntityKey());
+            if (current == null || isNewer(item, current)) {
+                latest.put(item.getEntityKey(), item);
+            }
+        }
+        if (latest.isEmpty()) {
+            return items;
+        }
+        List<QueueItemDTO> kept = new ArrayList<>(items.size());
+        for (QueueItemDTO item : items) {
+            if (isOrderStatus(item) && latest.get(item.getEntityKey()) != item) {
+                superseded.add(item);
+            } else {
+                kept.add(item);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Remove transicoes de pedido que ja tem outra mais nova na fila fora do
+     * lote (ex.: retentativa de ERRO antiga reivindicada depois que a mais
+     * nova foi ENVIADO). As removidas vao para {@code superseded}.
+     */
+    private static List<QueueItemDTO> dropSupersededInQueue(QueueService queueService, List<QueueItemDTO> items,
+                                                            List<QueueItemDTO> superseded) {
+        List<BigDecimal> orderStatusIds = new ArrayList<>();
+        for (QueueItemDTO item : items) {
+            if (isOrderStatus(item) && item.getIdQueue() != null) {
+                orderStatusIds.add(item.getIdQueue());
+            }
+        }
+        if (orderStatusIds.isEmpty()) {
+            return items;
+        }
+        Set<BigDecimal> stale = queueService.findSupersededOrderStatus(orderStatusIds);
+        if (stale.isEmpty()) {
+            return items;
+        }
+        List<QueueItemDTO> kept = new ArrayList<>(items.size());
+        for (QueueItemDTO item : items) {
+            if (isOrderStatus(item) && stale.contains(item.getIdQueue())) {
+                superseded.add(item);
+            } else {
+                kept.add(item);
+            }
+        }
+        return kept;
+    }
+
+    private static boolean isOrderStatus(QueueItemDTO item) {
+        return FastchannelConstants.ENTITY_PEDIDO_STATUS.equals(item.getEntityType())
+                && item.getEntityKey() != null && !item.getEntityKey().isEmpty();
+    }
+
+    private static boolean isNewer(QueueItemDTO candidate, QueueItemDTO current) {
+        if (candidate.getCreatedAt() != null && current.getCreatedAt() != null
+                && !candidate.getCreatedAt().equals(current.getCreatedAt())) {
+            return candidate.getCreatedAt().after(current.getCreatedAt());
+        }
+        if (candidate.getIdQueue() == null || current.getIdQueue() == null) {
+            return false;
+        }
+        return candidate.getIdQueue().compareTo(current.getIdQueue()) > 0;
+    }
+
+    /**
+     * Reivindica o lote dividido em raias por tipo de entidade.
+     * Primeiro cada raia recebe sua quota ponderada; a capacidade que sobrar
+     * (raias com pouco backlog) e oferecida as raias que preencheram a quota.
+     */
+    private List<QueueItemDTO> claimByLanes(QueueService queueService, Map<String, Integer> weights,
+                                            int batchSize, Map<String, OutboxLanePlanner.LaneStats> laneStats) {
+        List<String> order = OutboxLanePlanner.rotatedLanes(weights);
+        Map<String, Integer> quotas = OutboxLanePlanner.computeQuotas(weights, order, batchSize);
+        List<QueueItemDTO> items = new ArrayList<>();
+        List<String> saturated = new ArrayList<>();
+
+        for (String lane : order) {
+            OutboxLanePlanner.LaneStats stats = laneStats.computeIfAbsent(lane,
+                    key -> new OutboxLanePlanner.LaneStats(weights.getOrDefault(key, 1)));
+            if (isCircuitOpen(lane)) {
+                log.fine("Raia " + lane + " ignorada: circuito da API aberto.");
+                continue;
+            }
+            int quota = quotas.getOrDefault(lane, 0);
+            if (quota <= 0) {
+                saturated.add(lane);
+                continue;
+            }
+            List<QueueItemDTO> claimed = queueService.claimPendingByType(lane, quota);
+            stats.addClaimed(claimed.size());
+            items.addAll(claimed);
+            if (claimed.size() >= quota) {
+                saturated.add(lane);
+            }
+        }
+
+        int spare = batchSize - items.size();
+        for (String lane : saturated) {
+            if (spare <= 0) {
+                break;
+            }
+            List<QueueItemDTO> claimed = queueService.claimPendingByType(lane, spare);
+            laneStats.get(lane).addClaimed(claimed.size());
+            items.addAll(claimed);
+            spare -= claimed.size();
+        }
+        return items;
+    }
+
+    /**
+     * Familia de API usada por um tipo de item (null = nao chama a API).
+     */
+    static FastchannelRateLimiter.ApiFamily apiFamilyOf(String entityType) {
+        if (FastchannelConstants.ENTITY_ESTOQUE.equals(entityType)) {
+            return FastchannelRateLimiter.ApiFamily.STOCK;
+        }
+        if (FastchannelConstants.ENTITY_PRECO.equals(entityType)) {
+            return FastchannelRateLimiter.ApiFamily.PRICE;
+        }
+        if (FastchannelConstants.ENTITY_PEDIDO_STATUS.equals(entityType)) {
+            return FastchannelRateLimiter.ApiFamily.ORDERS;
+        }
+        return null;
+    }
+
+    private static boolean isCircuitOpen(String entityType) {
+        FastchannelRateLimiter.ApiFamily family = apiFamilyOf(entityType);
+        return family != null && CircuitBreaker.forFamily(family).isOpen();
+    }
+
+    private static CircuitOpenException findCircuitOpen(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof CircuitOpenException) {
+                return (CircuitOpenException) t;
+            }
+        }
+        return null;
+    }
+
+    private static void publishLaneReport(Map<String, OutboxLanePlanner.LaneStats> laneStats) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        for (Map.Entry<String, OutboxLanePlanner.LaneStats> entry : laneStats.entrySet()) {
+            report.put(entry.getKey(), entry.getValue().toMap());
+        }
+        lastLaneReport = Collections.unmodifiableMap(report);
+    }
+
+    private static String describeLanes(Map<String, OutboxLanePlanner.LaneStats> laneStats) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, OutboxLanePlanner.LaneStats> entry : laneStats.entrySet()) {
+            if (entry.getValue().getClaimed() == 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getValue().summary(entry.getKey()));
+        }
+        return sb.length() > 0 ? sb.toString() : "-";
+    }
+
+    /**
+     * Metricas por raia do ultimo ciclo com itens (volume, processamento e espera na fila).
+     */
+    public static Map<String, Object> getLastLaneReport() {
+        return lastLaneReport;
+    }
+
+    /**
+     * Desfecho do despacho de um item.
+     */
+    enum DispatchResult {
+        /** Enviado (ou descartado como nao publicavel). */
+        SENT,
+        /** Falhou: ERRO com retentativa ou ERRO_FATAL. */
+        FAILED,
+        /** Devolvido a PENDENTE sem contar tentativa (circuito aberto). */
+        DEFERRED
+    }
+
+    /**
+     * Processa um item da fila, registrando o resultado no proprio item.
+     */
+    private DispatchResult processItem(QueueItemDTO item, DispatchContext context,
+                                Map<String, Map<Long, BigDecimal>> stockSnapshot,
+                                QueueStatusBatch statusBatch, LogService logService) {
+        try {
+            switch (item.getEntityType()) {
+                case FastchannelConstants.ENTITY_ESTOQUE:
+                    processStockItem(item, context.stockClient, context.deparaService, stockSnapshot);
+                    break;
+
+                case FastchannelConstants.ENTITY_PRECO:
+                    processPriceItem(item, context);
+                    break;
+
+                case FastchannelConstants.ENTITY_PRODUTO:
+                    processProductItem(item, context.deparaService);
+                    break;
+
+                case FastchannelConstants.ENTITY_PEDIDO_STATUS:
+                    processOrderStatusItem(item, context.ordersClient);
+                    break;
+
+                default:
+                    log.warning("Tipo de entidade desconhecido: " + item.getEntityType());
+                    statusBatch.fatal(item.getIdQueue(), "Tipo desconhecido");
+                    return DispatchResult.FAILED;
+            }
+
+            statusBatch.success(item.getIdQueue());
+            return DispatchResult.SENT;
 
         } catch (Exception e) {
-            log.log(Level.SEVERE, "Erro no Job Outbox", e);
-            logService.error(LogService.OP_QUEUE_PROCESS, "Erro no job outbox", e);
-            throw e;
+            CircuitOpenException circuitOpen = findCircuitOpen(e);
+            if (circuitOpen != null) {
+                // API indisponivel: adia sem contar tentativa e sem segurar o worker
+                int delaySeconds = (int) Math.max(1L, (circuitOpen.getRetryInMs() + 999L) / 1000L);
+                statusBatch.deferred(item.getIdQueue(), delaySeconds, circuitOpen.getMessage());
+                log.fine("Item " + item.getIdQueue() + " adiado: " + circuitOpen.getMessage());
+                return DispatchResult.DEFERRED;
+            }
+            log.log(Level.WARNING, "Erro ao processar item " + item.getIdQueue(), e);
+            String detailedError = buildDetailedErrorMessage(item, e);
+            logService.error(resolveOperationByEntity(item), detailedError, item.getEntityKey(), e);
+
+            if (isNonPublishableSkuError(e)) {
+                String msg = "SKU nao publicado no Fastchannel. Item marcado como ENVIADO para evitar retry infinito: "
+                        + item.getEntityKey();
+                log.warning(msg);
+                statusBatch.success(item.getIdQueue());
+                LogService.getInstance().logPriceSync(item.getEntityKey(), false, msg);
+                return DispatchResult.SENT;
+            }
+
+            if (item.canRetry(FastchannelConstants.DEFAULT_MAX_RETRIES)) {
+                statusBatch.error(item.getIdQueue(), item.getRetryCount(), detailedError);
+            } else {
+                statusBatch.fatal(item.getIdQueue(),
+                        "Excedeu maximo de tentativas. " + detailedError);
+            }
+            return DispatchResult.FAILED;
         }
+    }
 
-        log.info("=== Job de Processamento Outbox Finalizado ===");
+    /**
+     * Clientes compartilhados pelos workers de uma execucao do job.
+     */
+    private static final class DispatchContext {
+        private final FastchannelStockClient stockClient;
+        private final FastchannelPriceClient distributionPriceClient;
+        private final FastchannelPriceClient consumptionPriceClient;
+        private final FastchannelOrdersClient ordersClient;
+        private final DeparaService deparaService;
+        private final FastchannelConfig config;
+
+        private DispatchContext(FastchannelHttpClient httpClient, DeparaService deparaService, FastchannelConfig config) {
+            this.stockClient = new FastchannelStockClient(httpClient);
+            this.distributionPriceClient = new FastchannelPriceClient(httpClient, FastchannelPriceClient.Channel.DISTRIBUTION);
+            this.consumptionPriceClient = new FastchannelPriceClient(httpClient, FastchannelPriceClient.Channel.CONSUMPTION);
+            this.ordersClient = new FastchannelOrdersClient(httpClient);
+            this.deparaService = deparaService;
+            this.config = config;
+        }
+
+        private FastchannelPriceClient priceClient(FastchannelPriceClient.Channel channel) {
+            return channel == FastchannelPriceClient.Channel.DISTRIBUTION
+                    ? distributionPriceClient : consumptionPriceClient;
+        }
+    }
+
+    /**
+     * Le de uma vez o estoque dos itens ESTOQUE do lote: uma consulta agrupada
+     * por empresa/local em vez de uma por item.
+     */
+    private Map<String, Map<Long, BigDecimal>> prefetchStock(List<QueueItemDTO> items) {
+        Map<String, List<BigDecimal>> idsByScope = new HashMap<>();
+        Map<String, StockPayload> scopes = new HashMap<>();
+        for (QueueItemDTO item : items) {
+            if (!FastchannelConstants.ENTITY_ESTOQUE.equals(item.getEntityType()) || item.getEntityId() == null) {
+                continue;
+            }
+            StockPayload payload = parseStockPayload(item.getPayload());
+            if (payload == null || payload.codEmp == null || payload.codLocal == null) {
+                continue;
+            }
+            String key = stockSnapshotKey(payload.codEmp, payload.codLocal);
+            idsByScope.computeIfAbsent(key, k -> new ArrayList<>()).add(item.getEntityId());
+            scopes.putIfAbsent(key, payload);
+        }
+
+        Map<String, Map<Long, BigDecimal>> snapshot = new HashMap<>();
+        if (idsByScope.isEmpty()) {
+            return snapshot;
+        }
+        StockResolver resolver = new StockResolver();
+        for (Map.Entry<String, List<BigDecimal>> entry : idsByScope.entrySet()) {
+            StockPayload scope = scopes.get(entry.getKey());
+            snapshot.put(entry.getKey(), resolver.resolveMany(entry.getValue(), scope.codEmp, scope.codLocal));
+        }
+        return snapshot;
+    }
+
+    private static String stockSnapshotKey(BigDecimal codEmp, BigDecimal codLocal) {
+        return codEmp.toPlainString() + ":" + codLocal.toPlainString();
     }
 
     private void processStockItem(QueueItemDTO item, FastchannelStockClient stockClient,
-                                  DeparaService deparaService) throws Exception {
+                                  DeparaService deparaService,
+                                  Map<String, Map<Long, BigDecimal>> stockSnapshot) throws Exception {
 
         // A fila já carrega a chave externa resolvida no enqueue; use-a como fonte primária.
         String sku = item.getEntityKey();
@@ -187,22 +690,38 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
             throw new Exception("Payload de estoque incompleto. SKU=" + sku + ", payload=" + item.getPayload());
         }
 
-        // Buscar estoque atual do Sankhya
-        BigDecimal quantity = new StockResolver().resolve(item.getEntityId(), payload.codEmp, payload.codLocal);
+        // Buscar estoque atual do Sankhya (lido em lote no inicio do ciclo; consulta individual se faltar)
+        Map<Long, BigDecimal> prefetched = stockSnapshot != null
+                ? stockSnapshot.get(stockSnapshotKey(payload.codEmp, payload.codLocal)) : null;
+        BigDecimal quantity = prefetched != null && item.getEntityId() != null
+                ? prefetched.get(item.getEntityId().longValue()) : null;
+        if (quantity == null) {
+            quantity = new StockResolver().resolve(item.getEntityId(), payload.codEmp, payload.codLocal);
+        }
         if (quantity == null) {
             throw new Exception("Estoque nao encontrado no Sankhya para SKU " + sku
                     + " (CODPROD=" + item.getEntityId() + ", CODEMP=" + payload.codEmp + ", CODLOCAL=" + payload.codLocal + ")");
         }
 
+        // Mesmo valor ja publicado para o destino: nada a enviar
+        PublishedStateCache publishedState = PublishedStateCache.getInstance();
+        String scope = PublishedStateCache.stockScope(payload.storageId, payload.resellerId);
+        String hash = PublishedStateCache.hash(quantity);
+        if (publishedState.isUnchanged(FastchannelConstants.ENTITY_ESTOQUE, sku, scope, hash)) {
+            log.fine("Estoque sem alteracao: SKU " + sku + " = " + quantity + ". Envio suprimido.");
+            return;
+        }
+
         log.info("Atualizando estoque: SKU " + sku + " = " + quantity);
         stockClient.updateStock(sku, quantity, payload.storageId, payload.resellerId);
+        publishedState.recordPublished(FastchannelConstants.ENTITY_ESTOQUE, sku, scope, hash);
 
         LogService.getInstance().logStockSync(sku, quantity, true, null);
     }
 
-    private void processPriceItem(QueueItemDTO item,
-                                  DeparaService deparaService,
-                                  FastchannelConfig config) throws Exception {
+    private void processPriceItem(QueueItemDTO item, DispatchContext context) throws Exception {
+        DeparaService deparaService = context.deparaService;
+        FastchannelConfig config = context.config;
 
         // Mantém comportamento do legado: prioriza ProductId/EntityKey já resolvido no enqueue.
         String sku = item.getEntityKey();
@@ -235,6 +754,7 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
             throw new Exception("Nenhuma tabela de preco elegivel configurada");
         }
 
+        PublishedStateCache publishedState = PublishedStateCache.getInstance();
         int sentCount = 0;
         int skippedNoIntegration = 0;
         int skippedNoPrice = 0;
@@ -256,16 +776,27 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
             BigDecimal price = priceResult.getPriceCentavos();
             BigDecimal listPrice = priceResult.getListPriceCentavos();
 
-            FastchannelPriceClient priceClient = resolvePriceClient(item.getEntityId(), sku, nuTab);
+            FastchannelPriceClient priceClient = context.priceClient(resolvePriceChannel(item.getEntityId(), sku, nuTab));
+            List<PriceBatchItemDTO> batches = batchResolver.resolve(item.getEntityId(), nuTab, priceTableId);
+
+            // Mesmo preco (e faixas) ja publicado para a tabela/canal: nada a enviar
+            String scope = PublishedStateCache.priceScope(priceTableId, priceClient.getChannel().name());
+            String hash = hashPrice(price, listPrice, batches);
+            if (publishedState.isUnchanged(FastchannelConstants.ENTITY_PRECO, sku, scope, hash)) {
+                log.fine("Preco sem alteracao: SKU " + sku + " NUTAB " + nuTab + ". Envio suprimido.");
+                sentCount++;
+                continue;
+            }
+
             log.info("Atualizando pre?o: SKU " + sku + " NUTAB " + nuTab + " = " + price
                     + " canal=" + priceClient.getChannel());
             priceClient.updatePrice(sku, price, listPrice, priceTableId);
             sentCount++;
 
-            List<PriceBatchItemDTO> batches = batchResolver.resolve(item.getEntityId(), nuTab, priceTableId);
             if (!batches.isEmpty()) {
                 priceClient.updatePriceBatches(sku, priceTableId, batches);
             }
+            publishedState.recordPublished(FastchannelConstants.ENTITY_PRECO, sku, scope, hash);
         }
 
         if (sentCount == 0) {
@@ -278,9 +809,17 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
         LogService.getInstance().logPriceSync(sku, true, null);
     }
 
-    private FastchannelPriceClient resolvePriceClient(BigDecimal codProd, String sku, BigDecimal nuTab) {
-        FastchannelPriceClient.Channel channel = resolvePriceChannel(codProd, sku, nuTab);
-        return new FastchannelPriceClient(channel);
+    private static String hashPrice(BigDecimal price, BigDecimal listPrice, List<PriceBatchItemDTO> batches) {
+        List<Object> values = new ArrayList<>();
+        values.add(price);
+        values.add(listPrice);
+        for (PriceBatchItemDTO batch : batches) {
+            values.add(batch.getMinimumBatchSize());
+            values.add(batch.getMaximumBatchSize());
+            values.add(batch.getUnitaryPriceForBatch());
+            values.add(batch.getBatchDisabled());
+        }
+        return PublishedStateCache.hash(values.toArray());
     }
 
     private FastchannelPriceClient.Channel resolvePriceChannel(BigDecimal codProd, String sku, BigDecimal nuTab) {
@@ -375,6 +914,140 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
         }
     }
 
+    /**
+     * Envia uma transicao de status do pedido. Ao faturar (INVOICE_CREATED/DELIVERED)
+     * envia antes a NF da nota e o rastreio, quando existirem.
+     */
+    private void processOrderStatusItem(QueueItemDTO item, FastchannelOrdersClient ordersClient) throws Exception {
+        OrderStatusPayload payload = parseOrderStatusPayload(item.getPayload());
+        if (payload == null) {
+            throw new Exception("Payload de status de pedido invalido: " + item.getPayload());
+        }
+        String orderId = payload.orderId != null ? payload.orderId : item.getEntityKey();
+        if (orderId == null || orderId.isEmpty()) {
+            throw new Exception("OrderId ausente no item de status " + item.getIdQueue());
+        }
+
+        String message = null;
+        if (payload.status == FastchannelConstants.STATUS_INVOICE_CREATED
+                || payload.status == FastchannelConstants.STATUS_DELIVERED) {
+            OrderInvoiceDTO invoice = loadInvoice(item.getEntityId());
+            if (invoice != null) {
+                ordersClient.sendInvoice(orderId, invoice);
+                message = "Nota fiscal emitida: " + invoice.getInvoiceNumber();
+            }
+            String trackingCode = loadTrackingCode(orderId);
+            if (trackingCode != null) {
+                ordersClient.sendTracking(orderId, new OrderTrackingDTO(trackingCode, null));
+            }
+        }
+
+        log.info("Atualizando status do pedido " + orderId + " para " + payload.status);
+        ordersClient.updateOrderStatus(orderId, payload.status, message);
+        updateLocalOrderStatus(orderId, payload.status);
+    }
+
+    /**
+     * Payload gerado por {@link QueueService#enqueueOrderStatus}: [orderId, status].
+     */
+    static OrderStatusPayload parseOrderStatusPayload(String payloadJson) {
+        if (payloadJson == null || payloadJson.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonArray array = JsonParser.parseString(payloadJson).getAsJsonArray();
+            if (array.size() < 2 || array.get(1).isJsonNull()) {
+                return null;
+            }
+            OrderStatusPayload payload = new OrderStatusPayload();
+            payload.orderId = array.get(0).isJsonNull() ? null : array.get(0).getAsString();
+            payload.status = array.get(1).getAsNumber().intValue();
+            return payload;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao parsear payload de status de pedido", e);
+            return null;
+        }
+    }
+
+    static final class OrderStatusPayload {
+        String orderId;
+        int status;
+    }
+
+    private OrderInvoiceDTO loadInvoice(BigDecimal nuNota) {
+        if (nuNota == null) {
+            return null;
+        }
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "SELECT CHAVENFE, NUMNOTA, SERIENOTA, DTFATUR, VLRNOTA FROM TGFCAB WHERE NUNOTA = ?");
+            stmt.setBigDecimal(1, nuNota);
+            rs = stmt.executeQuery();
+            if (rs.next()) {
+                String chave = rs.getString("CHAVENFE");
+                if (chave == null || chave.trim().isEmpty()) {
+                    return null;
+                }
+                BigDecimal numNota = rs.getBigDecimal("NUMNOTA");
+                OrderInvoiceDTO invoice = new OrderInvoiceDTO();
+                invoice.setNuNota(nuNota);
+                invoice.setInvoiceKey(chave.trim());
+                invoice.setInvoiceNumber(numNota != null ? numNota.toPlainString() : null);
+                invoice.setInvoiceSeries(rs.getString("SERIENOTA"));
+                invoice.setInvoiceDate(rs.getTimestamp("DTFATUR"));
+                invoice.setTotalValue(rs.getBigDecimal("VLRNOTA"));
+                return invoice;
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao carregar NF da nota " + nuNota, e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+        return null;
+    }
+
+    private String loadTrackingCode(String orderId) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement("SELECT TRACKING_CODE FROM AD_FCPEDIDO WHERE ORDER_ID = ?");
+            stmt.setString(1, orderId);
+            rs = stmt.executeQuery();
+            if (rs.next()) {
+                String code = rs.getString("TRACKING_CODE");
+                return code != null && !code.trim().isEmpty() ? code.trim() : null;
+            }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Erro ao carregar rastreio do pedido " + orderId, e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+        return null;
+    }
+
+    private void updateLocalOrderStatus(String orderId, int status) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "UPDATE AD_FCPEDIDO SET STATUS_FC = ? WHERE ORDER_ID = ?");
+            stmt.setInt(1, status);
+            stmt.setString(2, orderId);
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            log.log(Level.FINE, "Erro ao atualizar STATUS_FC do pedido " + orderId, e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+    }
+
     private StockPayload parseStockPayload(String payloadJson) {
         if (payloadJson == null || payloadJson.isEmpty()) {
             return null;
@@ -622,6 +1295,9 @@ public class OutboxProcessorJob implements EventoProgramavelJava {
         if (FastchannelConstants.ENTITY_PRODUTO.equals(item.getEntityType())) {
             return LogService.OP_PRODUCT_SYNC;
         }
+        if (FastchannelConstants.ENTITY_PEDIDO_STATUS.equals(item.getEntityType())) {
+            return LogService.OP_ORDER_IMPORT;
+        }
         return LogService.OP_QUEUE_PROCESS;
     }
 }
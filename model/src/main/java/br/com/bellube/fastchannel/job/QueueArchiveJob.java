@@ -0,0 +1,34 @@
+package br.com.bellube.fastchannel.job;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+import br.com.bellube.fastchannel.service.QueueService;
+import br.com.sankhya.extensions.eventoprogramavel.EventoProgramavelJava;
+import br.com.sankhya.jape.event.PersistenceEvent;
+import br.com.sankhya.jape.event.TransactionContext;
+
+import java.util.logging.Logger;
+
+/**
+ * Arquivamento da fila: move itens finalizados antigos para AD_FCQUEUE_HIST
+ * (ou descarta, conforme fastchannel.queue.archive.mode) em blocos pequenos,
+ * mantendo a AD_FCQUEUE enxuta para as consultas de pendencia e debounce.
+ */
+public class QueueArchiveJob implements EventoProgramavelJava {
+    private static final Logger log = Logger.getLogger(QueueArchiveJob.class.getName());
+
+    public void executeScheduler() throws Exception {
+        FastchannelConfig config = FastchannelConfig.getInstance();
+        int moved = QueueService.getInstance().cleanupOldItems(config.getQueueArchiveDays());
+        if (moved > 0) {
+            log.info("Arquivamento da fila concluido: " + moved + " item(ns)");
+        }
+    }
+
+    @Override public void beforeInsert(PersistenceEvent event) {}
+    @Override public void beforeUpdate(PersistenceEvent event) {}
+    @Override public void beforeDelete(PersistenceEvent event) {}
+    @Override public void afterInsert(PersistenceEvent event) {}
+    @Override public void afterUpdate(PersistenceEvent event) {}
+    @Override public void afterDelete(PersistenceEvent event) {}
+    @Override public void beforeCommit(TransactionContext transactionContext) {}
+}
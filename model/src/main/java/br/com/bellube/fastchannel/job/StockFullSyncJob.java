@@ -1,9 +1,12 @@
 package br.com.bellube.fastchannel.job;
 
 import br.com.bellube.fastchannel.config.FastchannelConfig;
+import br.com.bellube.fastchannel.config.FastchannelConstants;
 import br.com.bellube.fastchannel.http.FastchannelStockClient;
 import br.com.bellube.fastchannel.service.DeparaService;
+import br.com.bellube.fastchannel.service.PublishedStateCache;
 import br.com.bellube.fastchannel.service.StockResolver;
+import br.com.bellube.fastchannel.service.SyncStateService;
 import br.com.bellube.fastchannel.util.DBUtil;
 import br.com.sankhya.extensions.eventoprogramavel.EventoProgramavelJava;
 import br.com.sankhya.jape.event.PersistenceEvent;
@@ -13,51 +16,280 @@ import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Sincronizacao completa de estoque (safety net diario).
+ * Sincronizacao completa de estoque (safety net semanal; as alteracoes do
+ * dia a dia chegam pelo listener e pelo {@link StockIncrementalSyncJob}).
+ *
+ * Pipeline em duas etapas:
+ * - leitura: paginas de produtos em ordem de CODPROD, cada uma numa unica
+ *   consulta que ja traz SKU e estoque ({@link StockResolver#readPage});
+ * - envio: PUTs assincronos limitados a fastchannel.stock.full.parallel em voo,
+ *   enquanto a proxima pagina e lida.
+ *
+ * Envio diferencial: a quantidade resolvida e comparada com o ultimo valor
+ * publicado para o SKU/destino (AD_FCPUBLICADO, lido em lote por pagina) e
+ * so as diferencas sao enviadas. O {@link StockVerifyJob} confere esse
+ * registro contra a API aos poucos.
+ *
+ * Quando todos os envios de uma pagina (e das anteriores) terminam, o ultimo
+ * CODPROD dela e gravado como checkpoint em AD_FCSYNCSTATE. Uma execucao
+ * interrompida e retomada a partir desse ponto na proxima vez.
  */
 public class StockFullSyncJob implements EventoProgramavelJava {
     private static final Logger log = Logger.getLogger(StockFullSyncJob.class.getName());
 
+    public static final String SYNC_NAME = "STOCK_FULL";
+
     public void executeScheduler() throws Exception {
         FastchannelConfig config = FastchannelConfig.getInstance();
         if (!config.isAtivo()) {
             return;
         }
+        String storageId = config.getStorageId();
+        if (storageId == null || storageId.isEmpty()) {
+            log.warning("Full sync de estoque ignorado: Storage ID nao configurado.");
+            return;
+        }
+
+        SyncStateService syncState = SyncStateService.getInstance();
+        SyncStateService.SyncState previous = syncState.load(SYNC_NAME);
+        if (previous != null && previous.isRunningElsewhere(System.currentTimeMillis())) {
+            log.info("Full sync de estoque ja em execucao (checkpoint " + previous.getLastKey() + "). Ignorando.");
+            return;
+        }
+        SyncStateService.SyncState resumed = previous != null && previous.isResumable() ? previous : null;
+        BigDecimal afterCodProd = resumed != null ? parseKey(resumed.getLastKey()) : null;
+        if (afterCodProd == null) {
+            resumed = null;
+        } else {
+            log.info("Retomando full sync de estoque apos CODPROD " + afterCodProd);
+        }
 
         FastchannelStockClient stockClient = new FastchannelStockClient();
         DeparaService depara = DeparaService.getInstance();
         StockResolver resolver = new StockResolver();
+        String resellerId = config.getResellerId();
+        int pageSize = config.getStockFullSyncPageSize();
+        Semaphore sendSlots = new Semaphore(config.getStockFullSyncParallelism());
+
+        AtomicLong processed = new AtomicLong(resumed != null ? resumed.getProcessed() : 0L);
+        AtomicLong sent = new AtomicLong(resumed != null ? resumed.getSent() : 0L);
+        AtomicLong failed = new AtomicLong(resumed != null ? resumed.getFailed() : 0L);
+        AtomicLong unchanged = new AtomicLong(0L);
+        PublishedStateCache publishedState = PublishedStateCache.getInstance();
+        String scope = PublishedStateCache.stockScope(storageId, resellerId);
+        CheckpointTracker tracker = new CheckpointTracker(afterCodProd != null ? afterCodProd.toPlainString() : null);
 
+        syncState.begin(SYNC_NAME, resumed, countProducts());
+        boolean completed = false;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<StockResolver.StockRow> page = resolver.readPage(
+                        config.getCodemp(), config.getCodLocal(), afterCodProd, pageSize);
+                if (page == null) {
+                    // Falha na leitura: para aqui e retoma do checkpoint na proxima execucao
+                    break;
+                }
+                if (page.isEmpty()) {
+                    completed = true;
+                    break;
+                }
+
+                List<StockResolver.StockRow> rows = new ArrayList<>(page.size());
+                List<String> skus = new ArrayList<>(page.size());
+                for (StockResolver.StockRow row : page) {
+                    String sku = row.getSku();
+                    if (sku == null || sku.trim().isEmpty()) {
+                        sku = depara.getSkuForStock(row.getCodProd());
+                    }
+                    if (sku == null || sku.trim().isEmpty()) {
+                        processed.incrementAndGet();
+                        continue;
+                    }
+                    rows.add(row);
+                    skus.add(sku);
+                }
+                Map<String, String> publishedHashes =
+                        publishedState.publishedHashes(FastchannelConstants.ENTITY_ESTOQUE, skus, scope);
+
+                List<CompletableFuture<Void>> sends = new ArrayList<>(rows.size());
+                for (int i = 0; i < rows.size(); i++) {
+                    String sku = skus.get(i);
+                    BigDecimal quantity = rows.get(i).getQuantity() != null ? rows.get(i).getQuantity() : BigDecimal.ZERO;
+                    String hash = PublishedStateCache.hash(quantity);
+                    if (hash.equals(publishedHashes.get(sku))) {
+                        // Mesmo valor ja publicado para o destino
+                        unchanged.incrementAndGet();
+                        processed.incrementAndGet();
+                        continue;
+                    }
+                    CompletableFuture<Void> send = send(stockClient, sendSlots, sku, quantity, hash,
+                            storageId, resellerId, processed, sent, failed);
+                    if (send == null) {
+                        break;
+                    }
+                    sends.add(send);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                afterCodProd = page.get(page.size() - 1).getCodProd();
+                tracker.add(afterCodProd.toPlainString(),
+                        CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])));
+                String checkpoint = tracker.advance();
+                if (checkpoint != null) {
+                    syncState.checkpoint(SYNC_NAME, checkpoint, processed.get(), sent.get(), failed.get());
+                }
+                if (page.size() < pageSize) {
+                    completed = true;
+                    break;
+                }
+            }
+        } finally {
+            String lastKey = tracker.awaitAll();
+            syncState.finish(SYNC_NAME,
+                    completed ? SyncStateService.STATUS_CONCLUIDO : SyncStateService.STATUS_INTERROMPIDO,
+                    lastKey, processed.get(), sent.get(), failed.get());
+        }
+        log.info("Full sync de estoque " + (completed ? "concluido" : "interrompido")
+                + ". Processados: " + processed.get() + ", Enviados: " + sent.get()
+                + ", Sem alteracao: " + unchanged.get() + ", Falhas: " + failed.get());
+    }
+
+    /**
+     * Dispara o PUT quando houver slot livre na etapa de envio.
+     *
+     * @return null se a thread foi interrompida esperando slot
+     */
+    private static CompletableFuture<Void> send(FastchannelStockClient stockClient, Semaphore sendSlots,
+                                                String sku, BigDecimal quantity, String hash, String storageId,
+                                                String resellerId, AtomicLong processed, AtomicLong sent,
+                                                AtomicLong failed) {
+        try {
+            sendSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        PublishedStateCache publishedState = PublishedStateCache.getInstance();
+        String scope = PublishedStateCache.stockScope(storageId, resellerId);
+        return stockClient.updateStockAsync(sku, quantity, storageId, resellerId)
+                .whenComplete((ignored, error) -> {
+                    sendSlots.release();
+                    processed.incrementAndGet();
+                    if (error == null) {
+                        publishedState.recordPublished(FastchannelConstants.ENTITY_ESTOQUE, sku, scope, hash);
+                        sent.incrementAndGet();
+                    } else {
+                        publishedState.invalidate(FastchannelConstants.ENTITY_ESTOQUE, sku, scope);
+                        failed.incrementAndGet();
+                        log.log(Level.WARNING, "Falha no full sync de estoque para SKU " + sku, error);
+                    }
+                });
+    }
+
+    private static long countProducts() {
         Connection conn = null;
         PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
             conn = DBUtil.getConnection();
-            stmt = conn.prepareStatement(
-                    "SELECT CODPROD, ATIVO FROM TGFPRO WHERE CODPROD IS NOT NULL");
+            stmt = conn.prepareStatement("SELECT COUNT(*) AS CNT FROM TGFPRO WHERE CODPROD IS NOT NULL");
             rs = stmt.executeQuery();
-            while (rs.next()) {
-                BigDecimal codProd = rs.getBigDecimal("CODPROD");
-                String sku = depara.getSkuForStock(codProd);
-                if (sku == null || sku.trim().isEmpty()) {
-                    continue;
-                }
-                BigDecimal qty = "S".equalsIgnoreCase(rs.getString("ATIVO"))
-                        ? resolver.resolve(codProd, config.getCodemp(), config.getCodLocal())
-                        : BigDecimal.ZERO;
-                try {
-                    stockClient.updateStock(sku, qty != null ? qty : BigDecimal.ZERO);
-                } catch (Exception e) {
-                    log.log(Level.WARNING, "Falha no full sync de estoque para SKU " + sku, e);
-                }
+            if (rs.next()) {
+                return rs.getLong("CNT");
             }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao contar produtos para o full sync de estoque", e);
         } finally {
             DBUtil.closeAll(rs, stmt, conn);
         }
+        return 0L;
+    }
+
+    private static BigDecimal parseKey(String key) {
+        try {
+            return key != null ? new BigDecimal(key.trim()) : null;
+        } catch (NumberFormatException e) {
+            log.warning("Checkpoint invalido do full sync de estoque: " + key + ". Reiniciando do zero.");
+            return null;
+        }
+    }
+
+    /**
+     * Ponto de retomada de um pipeline com envios fora de ordem: so avanca
+     * ate a ultima pagina cujos envios, e os de todas as anteriores, ja
+     * terminaram (com sucesso ou falha).
+     */
+    static final class CheckpointTracker {
+        private final Deque<PendingPage> pages = new ArrayDeque<>();
+        private String completedKey;
+
+        CheckpointTracker(String initialKey) {
+            this.completedKey = initialKey;
+        }
+
+        void add(String lastKey, CompletableFuture<?> sends) {
+            pages.addLast(new PendingPage(lastKey, sends));
+        }
+
+        /**
+         * @return nova chave de checkpoint, ou null se nada avancou desde a ultima chamada
+         */
+        String advance() {
+            boolean moved = false;
+            while (!pages.isEmpty() && pages.peekFirst().sends.isDone()) {
+                completedKey = pages.pollFirst().lastKey;
+                moved = true;
+            }
+            return moved ? completedKey : null;
+        }
+
+        /**
+         * Espera os envios pendentes e devolve a chave final.
+         */
+        String awaitAll() {
+            while (!pages.isEmpty()) {
+                PendingPage page = pages.peekFirst();
+                try {
+                    page.sends.join();
+                } catch (Exception ignored) {
+                    // Falhas individuais ja registradas em whenComplete
+                }
+                completedKey = pages.pollFirst().lastKey;
+            }
+            return completedKey;
+        }
+
+        int pendingPages() {
+            return pages.size();
+        }
+
+        String getCompletedKey() {
+            return completedKey;
+        }
+    }
+
+    private static final class PendingPage {
+        private final String lastKey;
+        private final CompletableFuture<?> sends;
+
+        private PendingPage(String lastKey, CompletableFuture<?> sends) {
+            this.lastKey = lastKey;
+            this.sends = sends;
+        }
     }
 
     @Override public void beforeInsert(PersistenceEvent event) {}
@@ -68,4 +300,3 @@ public class StockFullSyncJob implements EventoProgramavelJava {
     @Override public void afterDelete(PersistenceEvent event) {}
     @Override public void beforeCommit(TransactionContext transactionContext) {}
 }
-
@@ -0,0 +1,381 @@
+package br.com.bellube.fastchannel.job;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+import br.com.bellube.fastchannel.service.DeparaService;
+import br.com.bellube.fastchannel.service.QueueService;
+import br.com.bellube.fastchannel.service.StockResolver;
+import br.com.bellube.fastchannel.service.SyncStateService;
+import br.com.bellube.fastchannel.util.DBUtil;
+import br.com.bellube.fastchannel.util.DbColumnSupport;
+import br.com.sankhya.extensions.eventoprogramavel.EventoProgramavelJava;
+import br.com.sankhya.jape.event.PersistenceEvent;
+import br.com.sankhya.jape.event.TransactionContext;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sincronizacao incremental de estoque por marca d'agua em TGFEST.
+ *
+ * Pega alteracoes que nao passam pelo {@link br.com.bellube.fastchannel.listener.EstoqueListener}
+ * (SQL direto, importacao de inventario) e enfileira apenas os produtos
+ * alterados desde a ultima execucao. A marca e, na ordem de preferencia:
+ * - coluna rowversion de TGFEST (limite superior em MIN_ACTIVE_ROWVERSION,
+ *   para nao pular transacoes ainda abertas);
+ * - change tracking do SQL Server habilitado em TGFEST;
+ * - TGFEST.DTALTER, com atraso de {@value #DTALTER_LAG_MS} ms em relacao ao
+ *   relogio do banco.
+ *
+ * A marca fica em AD_FCSYNCSTATE (STOCK_INCREMENTAL). Na primeira execucao
+ * apenas grava a marca inicial; a base fica a cargo do {@link StockFullSyncJob}.
+ */
+public class StockIncrementalSyncJob implements EventoProgramavelJava {
+    private static final Logger log = Logger.getLogger(StockIncrementalSyncJob.class.getName());
+
+    public static final String SYNC_NAME = "STOCK_INCREMENTAL";
+    static final long DTALTER_LAG_MS = 2 * 60_000L;
+
+    enum Mode { ROWVERSION, CHANGE_TRACKING, DTALTER, NONE }
+
+    /**
+     * Decisao de uma execucao a partir da marca gravada e dos limites atuais.
+     */
+    enum Step {
+        /** Sem marca: grava a atual e nao enfileira nada. */
+        INITIAL_MARK,
+        /** Marca de outro modo, invalida ou fora do historico: recomeca na atual. */
+        RESET_MARK,
+        /** Le e enfileira as alteracoes entre a marca gravada e a atual. */
+        READ_CHANGES,
+        /** Nada mudou desde a marca gravada. */
+        UP_TO_DATE
+    }
+
+    private static volatile Mode detectedMode;
+    private static volatile String rowVersionColumn;
+
+    public void executeScheduler() throws Exception {
+        FastchannelConfig config = FastchannelConfig.getInstance();
+        if (!config.isAtivo()) {
+            return;
+        }
+        BigDecimal codEmp = config.getCodemp();
+        BigDecimal codLocal = config.getCodLocal();
+        if (codEmp == null || codLocal == null) {
+            log.fine("Sync incremental de estoque ignorado: CODEMP/CODLOCAL nao configurados.");
+            return;
+        }
+
+        Mode mode = detectMode();
+        if (mode == Mode.NONE) {
+            return;
+        }
+
+        SyncStateService syncState = SyncStateService.getInstance();
+        SyncStateService.SyncState previous = syncState.load(SYNC_NAME);
+        String storedMark = previous != null ? previous.getLastKey() : null;
+        Long last = parseMark(storedMark, mode);
+
+        List<BigDecimal> changed;
+        long upper;
+        Connection conn = null;
+        try {
+            conn = DBUtil.getConnection();
+            long[] bounds = readBounds(conn, mode);
+            upper = bounds[0];
+            switch (plan(mode, storedMark, upper, bounds[1])) {
+                case INITIAL_MARK:
+                    syncState.saveWatermark(SYNC_NAME, formatMark(mode, upper), 0L, 0L);
+                    log.info("Sync incremental de estoque: marca inicial " + formatMark(mode, upper) + " gravada.");
+                    return;
+                case RESET_MARK:
+                    // Alteracoes fora do intervalo conhecido ficam para o full sync
+                    log.warning("Sync incremental de estoque: marca " + storedMark + " nao vale para "
+                            + mode + (last != null ? " (minima valida " + bounds[1] + ")" : "")
+                            + ". Reiniciando em " + formatMark(mode, upper) + "; o full sync cobre o intervalo.");
+                    syncState.saveWatermark(SYNC_NAME, formatMark(mode, upper), 0L, 0L);
+                    return;
+                case READ_CHANGES:
+                    changed = readChanged(conn, mode, codEmp, codLocal, last, upper);
+                    break;
+                default:
+                    changed = new ArrayList<>();
+                    break;
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Falha ao ler alteracoes de estoque (" + mode + "). Marca mantida.", e);
+            return;
+        } finally {
+            DBUtil.closeConnection(conn);
+        }
+
+        int enqueued = enqueue(changed, codEmp, codLocal);
+        if (enqueued < 0) {
+            // Alteracoes nao entraram na fila: relidas na proxima execucao
+            log.warning("Sync incremental de estoque: falha ao enfileirar " + changed.size()
+                    + " produto(s). Marca mantida.");
+            return;
+        }
+        syncState.saveWatermark(SYNC_NAME, formatMark(mode, upper), changed.size(), enqueued);
+        if (!changed.isEmpty()) {
+            log.info("Sync incremental de estoque (" + mode + "): " + changed.size()
+                    + " produto(s) alterado(s), " + enqueued + " enfileirado(s).");
+        }
+    }
+
+    /**
+     * Decide a execucao sem acessar banco ou fila.
+     *
+     * @param storedMark marca gravada em AD_FCSYNCSTATE (null na primeira execucao)
+     * @param upper limite superior atual da marca
+     * @param minValid versao minima valida do change tracking (ignorada nos demais modos)
+     */
+    static Step plan(Mode mode, String storedMark, long upper, long minValid) {
+        if (storedMark == null) {
+            return Step.INITIAL_MARK;
+        }
+        Long last = parseMark(storedMark, mode);
+        if (last == null) {
+            // Marca de outro modo (ex.: rowversion removida) ou corrompida
+            return Step.RESET_MARK;
+        }
+        if (mode == Mode.CHANGE_TRACKING && last < minValid) {
+            // Historico do change tracking ja foi limpo
+            return Step.RESET_MARK;
+        }
+        return upper > last ? Step.READ_CHANGES : Step.UP_TO_DATE;
+    }
+
+    /**
+     * @return quantidade enfileirada, ou -1 se algum lote nao foi gravado
+     */
+    private static int enqueue(List<BigDecimal> codProds, BigDecimal codEmp, BigDecimal codLocal) {
+        if (codProds.isEmpty()) {
+            return 0;
+        }
+        Map<Long, BigDecimal> quantities = new StockResolver().resolveMany(codProds, codEmp, codLocal);
+        DeparaService depara = DeparaService.getInstance();
+        QueueService queue = QueueService.getInstance();
+        try (QueueService.BulkScope scope = queue.openBulkScope()) {
+            for (BigDecimal codProd : codProds) {
+                String sku = depara.getSkuForStock(codProd);
+                if (sku == null || sku.trim().isEmpty()) {
+                    continue;
+                }
+                // Sem quantidade (consulta em lote falhou): o outbox resolve no envio
+                queue.enqueueStock(codProd, sku, quantities.get(codProd.longValue()), codEmp, codLocal);
+            }
+            scope.flush();
+            return scope.hasFailed() ? -1 : scope.getEnqueued();
+        }
+    }
+
+    /**
+     * @return [limite superior da marca, versao minima valida (so change tracking)]
+     */
+    private static long[] readBounds(Connection conn, Mode mode) throws Exception {
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(buildBoundsSql(mode));
+            rs = stmt.executeQuery();
+            if (!rs.next()) {
+                throw new IllegalStateException("Limite da marca de estoque indisponivel (" + mode + ")");
+            }
+            if (mode == Mode.DTALTER) {
+                Timestamp now = rs.getTimestamp("AGORA");
+                return new long[] {now.getTime() - DTALTER_LAG_MS, 0L};
+            }
+            long upper = rs.getLong("MARCA");
+            if (rs.wasNull()) {
+                throw new IllegalStateException("Limite da marca de estoque nulo (" + mode + ")");
+            }
+            return new long[] {upper, mode == Mode.CHANGE_TRACKING ? rs.getLong("MINIMA") : 0L};
+        } finally {
+            DBUtil.closeResultSet(rs);
+            DBUtil.closeStatement(stmt);
+        }
+    }
+
+    private static List<BigDecimal> readChanged(Connection conn, Mode mode, BigDecimal codEmp, BigDecimal codLocal,
+                                                long last, long upper) throws Exception {
+        List<BigDecimal> codProds = new ArrayList<>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(buildChangedSql(mode, rowVersionColumn));
+            int idx = 1;
+            if (mode == Mode.CHANGE_TRACKING) {
+                stmt.setLong(idx++, last);
+            }
+            stmt.setBigDecimal(idx++, codEmp);
+            stmt.setBigDecimal(idx++, codLocal);
+            if (mode == Mode.ROWVERSION) {
+                stmt.setLong(idx++, last);
+                stmt.setLong(idx, upper);
+            } else if (mode == Mode.CHANGE_TRACKING) {
+                stmt.setLong(idx, upper);
+            } else {
+                stmt.setTimestamp(idx++, new Timestamp(last));
+                stmt.setTimestamp(idx, new Timestamp(upper));
+            }
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                BigDecimal codProd = rs.getBigDecimal("CODPROD");
+                if (codProd != null) {
+                    codProds.add(codProd);
+                }
+            }
+        } finally {
+            DBUtil.closeResultSet(rs);
+            DBUtil.closeStatement(stmt);
+        }
+        return codProds;
+    }
+
+    static String buildBoundsSql(Mode mode) {
+        switch (mode) {
+            case ROWVERSION:
+                return "SELECT CAST(MIN_ACTIVE_ROWVERSION() AS BIGINT) AS MARCA";
+            case CHANGE_TRACKING:
+                return "SELECT CHANGE_TRACKING_CURRENT_VERSION() AS MARCA, "
+                        + "CHANGE_TRACKING_MIN_VALID_VERSION(OBJECT_ID('TGFEST')) AS MINIMA";
+            default:
+                return "SELECT CURRENT_TIMESTAMP AS AGORA";
+        }
+    }
+
+    static String buildChangedSql(Mode mode, String rowVersionColumn) {
+        switch (mode) {
+            case ROWVERSION:
+                return "SELECT DISTINCT E.CODPROD FROM TGFEST E "
+                        + "WHERE E.CODEMP = ? AND E.CODLOCAL = ? "
+                        + "AND E." + rowVersionColumn + " >= CONVERT(BINARY(8), ?) "
+                        + "AND E." + rowVersionColumn + " < CONVERT(BINARY(8), ?)";
+            case CHANGE_TRACKING:
+                return "SELECT DISTINCT CT.CODPROD FROM CHANGETABLE(CHANGES TGFEST, ?) AS CT "
+                        + "WHERE CT.CODEMP = ? AND CT.CODLOCAL = ? "
+                        + "AND CT.SYS_CHANGE_VERSION <= ?";
+            default:
+                return "SELECT DISTINCT E.CODPROD FROM TGFEST E "
+                        + "WHERE E.CODEMP = ? AND E.CODLOCAL = ? "
+                        + "AND E.DTALTER > ? AND E.DTALTER <= ?";
+        }
+    }
+
+    static String formatMark(Mode mode, long value) {
+        return mode.name() + ":" + value;
+    }
+
+    /**
+     * @return valor da marca, ou null se nao houver marca do mesmo modo
+     */
+    static Long parseMark(String mark, Mode mode) {
+        if (mark == null) {
+            return null;
+        }
+        String prefix = mode.name() + ":";
+        if (!mark.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(mark.substring(prefix.length()).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static boolean isSafeIdentifier(String name) {
+        return name != null && name.matches("[A-Za-z_][A-Za-z0-9_]*");
+    }
+
+    private static Mode detectMode() {
+        Mode mode = detectedMode;
+        if (mode != null) {
+            return mode;
+        }
+        synchronized (StockIncrementalSyncJob.class) {
+            if (detectedMode != null) {
+                return detectedMode;
+            }
+            Connection conn = null;
+            try {
+                conn = DBUtil.getConnection();
+                String column = findRowVersionColumn(conn);
+                if (isSafeIdentifier(column)) {
+                    rowVersionColumn = column;
+                    mode = Mode.ROWVERSION;
+                } else if (hasChangeTracking(conn)) {
+                    mode = Mode.CHANGE_TRACKING;
+                } else if (DbColumnSupport.hasColumn(conn, "TGFEST", "DTALTER")) {
+                    mode = Mode.DTALTER;
+                } else {
+                    mode = Mode.NONE;
+                    log.warning("Sync incremental de estoque indisponivel: TGFEST sem rowversion, "
+                            + "change tracking ou DTALTER.");
+                }
+            } catch (Exception e) {
+                // Nao memoriza: tenta detectar de novo na proxima execucao
+                log.log(Level.WARNING, "Falha ao detectar marca d'agua de TGFEST", e);
+                return Mode.NONE;
+            } finally {
+                DBUtil.closeConnection(conn);
+            }
+            log.info("Sync incremental de estoque usando marca " + mode
+                    + (mode == Mode.ROWVERSION ? " (" + rowVersionColumn + ")" : ""));
+            detectedMode = mode;
+            return mode;
+        }
+    }
+
+    private static String findRowVersionColumn(Connection conn) {
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(
+                    "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS " +
+                            "WHERE TABLE_NAME = 'TGFEST' AND DATA_TYPE IN ('timestamp', 'rowversion')");
+            rs = stmt.executeQuery();
+            return rs.next() ? rs.getString("COLUMN_NAME") : null;
+        } catch (Exception e) {
+            log.log(Level.FINE, "Nao foi possivel procurar coluna rowversion em TGFEST", e);
+            return null;
+        } finally {
+            DBUtil.closeResultSet(rs);
+            DBUtil.closeStatement(stmt);
+        }
+    }
+
+    private static boolean hasChangeTracking(Connection conn) {
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(
+                    "SELECT COUNT(*) AS CNT FROM sys.change_tracking_tables WHERE object_id = OBJECT_ID('TGFEST')");
+            rs = stmt.executeQuery();
+            return rs.next() && rs.getInt("CNT") > 0;
+        } catch (Exception e) {
+            log.log(Level.FINE, "Nao foi possivel verificar change tracking de TGFEST", e);
+            return false;
+        } finally {
+            DBUtil.closeResultSet(rs);
+            DBUtil.closeStatement(stmt);
+        }
+    }
+
+    @Override public void beforeInsert(PersistenceEvent event) {}
+    @Override public void beforeUpdate(PersistenceEvent event) {}
+    @Override public void beforeDelete(PersistenceEvent event) {}
+    @Override public void afterInsert(PersistenceEvent event) {}
+    @Override public void afterUpdate(PersistenceEvent event) {}
+    @Override public void afterDelete(PersistenceEvent event) {}
+    @Override public void beforeCommit(TransactionContext transactionContext) {}
+}
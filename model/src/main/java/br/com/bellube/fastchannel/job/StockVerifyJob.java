@@ -0,0 +1,184 @@
+package br.com.bellube.fastchannel.job;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+import br.com.bellube.fastchannel.config.FastchannelConstants;
+import br.com.bellube.fastchannel.dto.StockDTO;
+import br.com.bellube.fastchannel.http.CircuitOpenException;
+import br.com.bellube.fastchannel.http.FastchannelStockClient;
+import br.com.bellube.fastchannel.http.ResponseDecodeException;
+import br.com.bellube.fastchannel.service.DeparaService;
+import br.com.bellube.fastchannel.service.PublishedStateCache;
+import br.com.bellube.fastchannel.service.QueueService;
+import br.com.bellube.fastchannel.service.SyncStateService;
+import br.com.sankhya.extensions.eventoprogramavel.EventoProgramavelJava;
+import br.com.sankhya.jape.event.PersistenceEvent;
+import br.com.sankhya.jape.event.TransactionContext;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Verificacao periodica do registro de valores publicados de estoque.
+ *
+ * O full sync so envia o que difere de AD_FCPUBLICADO; se o Fastchannel
+ * divergir desse registro (alteracao manual no painel, PUT perdido) a
+ * diferenca nunca seria corrigida. A cada execucao este job confere poucos
+ * SKUs (fastchannel.stock.verify.batch) com {@link FastchannelStockClient#getStock},
+ * percorrendo o registro em ordem de SKU com cursor em AD_FCSYNCSTATE
+ * (STOCK_VERIFY). Divergencias apagam o valor publicado e reenfileiram o
+ * estoque do produto. Falha transitoria da API encerra a execucao no SKU
+ * atual; erro de um SKU especifico e registrado e a varredura segue.
+ */
+public class StockVerifyJob implements EventoProgramavelJava {
+    private static final Logger log = Logger.getLogger(StockVerifyJob.class.getName());
+
+    public static final String SYNC_NAME = "STOCK_VERIFY";
+    // Status HTTP no texto de erro dos clientes (" status=503")
+    private static final Pattern HTTP_STATUS = Pattern.compile("\\bstatus=(\\d{3})\\b");
+
+    public void executeScheduler() throws Exception {
+        FastchannelConfig config = FastchannelConfig.getInstance();
+        if (!config.isAtivo()) {
+            return;
+        }
+        String storageId = config.getStorageId();
+        BigDecimal codEmp = config.getCodemp();
+        BigDecimal codLocal = config.getCodLocal();
+        if (storageId == null || storageId.isEmpty() || codEmp == null || codLocal == null) {
+            return;
+        }
+
+        PublishedStateCache publishedState = PublishedStateCache.getInstance();
+        String scope = PublishedStateCache.stockScope(storageId, config.getResellerId());
+        SyncStateService syncState = SyncStateService.getInstance();
+        SyncStateService.SyncState previous = syncState.load(SYNC_NAME);
+        String afterSku = previous != null ? previous.getLastKey() : null;
+        int batchSize = config.getStockVerifyBatchSize();
+
+        Map<String, String> published = publishedState.listPublished(
+                FastchannelConstants.ENTITY_ESTOQUE, scope, afterSku, batchSize);
+        if (published.isEmpty() && afterSku != null) {
+            // Fim do registro: recomeca a volta
+            afterSku = null;
+            published = publishedState.listPublished(FastchannelConstants.ENTITY_ESTOQUE, scope, null, batchSize);
+        }
+        if (published.isEmpty()) {
+            return;
+        }
+
+        FastchannelStockClient stockClient = new FastchannelStockClient();
+        DeparaService depara = DeparaService.getInstance();
+        QueueService queue = QueueService.getInstance();
+        int checked = 0;
+        int diverged = 0;
+        int failed = 0;
+        String lastSku = afterSku;
+        int requeued = 0;
+        try (QueueService.BulkScope bulk = queue.openBulkScope()) {
+            for (Map.Entry<String, String> entry : published.entrySet()) {
+                String sku = entry.getKey();
+                StockDTO remote;
+                try {
+                    remote = stockClient.getStock(sku);
+                } catch (Exception e) {
+                    if (isTransientFailure(e)) {
+                        // API indisponivel ou limitando: para e tenta o mesmo SKU na proxima execucao
+                        log.log(Level.WARNING, "Verificacao de estoque interrompida no SKU " + sku
+                                + " por falha transitoria da API: " + e.getMessage());
+                        break;
+                    }
+                    // Erro do proprio SKU: registra e segue, para nao travar a varredura
+                    log.log(Level.WARNING, "Verificacao de estoque: SKU " + sku + " ignorado", e);
+                    failed++;
+                    lastSku = sku;
+                    continue;
+                }
+                checked++;
+                lastSku = sku;
+                if (matchesPublished(remote, entry.getValue())) {
+                    continue;
+                }
+
+                diverged++;
+                publishedState.forget(FastchannelConstants.ENTITY_ESTOQUE, sku, scope);
+                BigDecimal codProd = depara.getCodProdBySkuOrEan(sku);
+                log.info("Verificacao de estoque: SKU " + sku + " divergente no Fastchannel (remoto="
+                        + (remote != null ? remote.getQuantity() : null) + "). Reenfileirando.");
+                if (codProd != null) {
+                    // Quantidade resolvida pelo outbox no envio
+                    queue.enqueueStock(codProd, sku, null, codEmp, codLocal);
+                    requeued++;
+                }
+            }
+            bulk.flush();
+            if (bulk.hasFailed()) {
+                // Valor publicado ja apagado: o proximo full sync reenvia esses SKUs
+                log.warning("Verificacao de estoque: falha ao reenfileirar " + requeued
+                        + " SKU(s) divergente(s); serao reenviados pelo full sync.");
+            }
+        }
+
+        syncState.saveWatermark(SYNC_NAME, lastSku, checked, diverged);
+        if (diverged > 0 || failed > 0) {
+            log.info("Verificacao de estoque: " + diverged + " de " + checked + " SKU(s) divergentes, "
+                    + failed + " com erro.");
+        }
+    }
+
+    /**
+     * Falha que nao depende do SKU consultado: circuito aberto, rede
+     * (timeout, conexao) ou resposta 429/5xx. Demais erros (4xx, corpo
+     * invalido) sao do SKU e nao devem parar a varredura.
+     */
+    static boolean isTransientFailure(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof JsonParseException) {
+                return false;
+            }
+            if (t instanceof CircuitOpenException || t instanceof InterruptedException) {
+                return true;
+            }
+            if (t instanceof IOException && !(t instanceof ResponseDecodeException)) {
+                return true;
+            }
+            Integer status = httpStatusOf(t.getMessage());
+            if (status != null && (status == 429 || status >= 500)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Integer httpStatusOf(String message) {
+        if (message == null) {
+            return null;
+        }
+        Matcher matcher = HTTP_STATUS.matcher(message);
+        return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+    }
+
+    /**
+     * @return true se o estoque do Fastchannel corresponde ao hash publicado
+     */
+    static boolean matchesPublished(StockDTO remote, String publishedHash) {
+        if (remote == null || publishedHash == null) {
+            return false;
+        }
+        BigDecimal quantity = remote.getQuantity();
+        return quantity != null && publishedHash.equals(PublishedStateCache.hash(quantity));
+    }
+
+    @Override public void beforeInsert(PersistenceEvent event) {}
+    @Override public void beforeUpdate(PersistenceEvent event) {}
+    @Override public void beforeDelete(PersistenceEvent event) {}
+    @Override public void afterInsert(PersistenceEvent event) {}
+    @Override public void afterUpdate(PersistenceEvent event) {}
+    @Override public void afterDelete(PersistenceEvent event) {}
+    @Override public void beforeCommit(TransactionContext transactionContext) {}
+}
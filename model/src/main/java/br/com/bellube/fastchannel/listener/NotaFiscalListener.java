@@ -2,8 +2,6 @@ package br.com.bellube.fastchannel.listener;
 
 import br.com.bellube.fastchannel.config.FastchannelConfig;
 import br.com.bellube.fastchannel.config.FastchannelConstants;
-import br.com.bellube.fastchannel.dto.OrderInvoiceDTO;
-import br.com.bellube.fastchannel.http.FastchannelOrdersClient;
 import br.com.bellube.fastchannel.service.LogService;
 import br.com.bellube.fastchannel.service.QueueService;
 import br.com.sankhya.extensions.eventoprogramavel.EventoProgramavelJava;
@@ -103,13 +101,14 @@ public class NotaFiscalListener implements EventoProgramavelJava {
 
             // Verificar se foi faturada (STATUSNOTA = 'F' ou tem CHAVENFE)
             String chaveNfe = vo.asString("CHAVENFE");
-            if (chaveNfe != null && !chaveNfe.isEmpty()) {
+            boolean invoiced = chaveNfe != null && !chaveNfe.isEmpty();
+            if (invoiced) {
                 // Nota fiscal emitida - notificar Fastchannel
-                processInvoiceCreated(nuNota, orderId, vo);
+                processInvoiceCreated(nuNota, orderId);
             }
 
-            // Verificar mudan?a de status
-            if (statusNota != null) {
+            // Verificar mudan?a de status ('F' com NF ja foi enfileirado acima)
+            if (statusNota != null && !(invoiced && "F".equals(statusNota))) {
                 processStatusChange(nuNota, orderId, statusNota);
             }
 
@@ -118,33 +117,19 @@ public class NotaFiscalListener implements EventoProgramavelJava {
         }
     }
 
-    private void processInvoiceCreated(BigDecimal nuNota, String orderId, DynamicVO vo) {
+    private void processInvoiceCreated(BigDecimal nuNota, String orderId) {
         try {
-            OrderInvoiceDTO invoice = new OrderInvoiceDTO();
-            invoice.setNuNota(nuNota);
-            invoice.setInvoiceKey(vo.asString("CHAVENFE"));
-            invoice.setInvoiceNumber(vo.asString("NUMNOTA") != null ?
-                    vo.asBigDecimal("NUMNOTA").toString() : null);
-            invoice.setInvoiceSeries(vo.asString("SERIENOTA"));
-            invoice.setInvoiceDate(vo.asTimestamp("DTFATUR"));
-            invoice.setTotalValue(vo.asBigDecimal("VLRNOTA"));
-
-            // Enviar para Fastchannel
-            FastchannelOrdersClient ordersClient = new FastchannelOrdersClient();
-            ordersClient.sendInvoice(orderId, invoice);
-
-            // Atualizar status para "Faturado"
-            ordersClient.updateOrderStatus(orderId,
-                    FastchannelConstants.STATUS_INVOICE_CREATED,
-                    "Nota fiscal emitida: " + invoice.getInvoiceNumber());
+            // A NF e o rastreio sao lidos e enviados pelo outbox junto com a transicao
+            QueueService.getInstance().enqueueOrderStatus(nuNota, orderId,
+                    FastchannelConstants.STATUS_INVOICE_CREATED);
 
             LogService.getInstance().info(LogService.OP_ORDER_IMPORT,
-                    "NF enviada para pedido " + orderId, invoice.getInvoiceNumber());
+                    "NF enfileirada para pedido " + orderId, String.valueOf(nuNota));
 
         } catch (Exception e) {
-            log.log(Level.WARNING, "Erro ao enviar NF para Fastchannel", e);
+            log.log(Level.WARNING, "Erro ao enfileirar NF para Fastchannel", e);
             LogService.getInstance().error(LogService.OP_ORDER_IMPORT,
-                    "Falha ao enviar NF para pedido " + orderId, e);
+                    "Falha ao enfileirar NF para pedido " + orderId, e);
         }
     }
 
@@ -0,0 +1,364 @@
+package br.com.bellube.fastchannel.service;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+import br.com.bellube.fastchannel.util.DBUtil;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ultimo valor publicado no Fastchannel por SKU e destino (AD_FCPUBLICADO).
+ *
+ * Guarda um hash do valor enviado (estoque por StorageId/ResellerId, preco
+ * por PriceTableId/canal). Antes de um PUT o outbox compara o hash do valor
+ * recem-resolvido; se for igual ao publicado dentro da validade
+ * (fastchannel.published.max.age.hours) o envio e suprimido.
+ *
+ * A tabela e a fonte da verdade; a memoria evita o SELECT por item e expira
+ * em poucos minutos para acompanhar publicacoes feitas por outros nos.
+ */
+public class PublishedStateCache {
+
+    private static final Logger log = Logger.getLogger(PublishedStateCache.class.getName());
+    private static PublishedStateCache instance;
+
+    private static final long MEMORY_TTL_MS = 5 * 60_000L;
+    private static final int MAX_ENTRIES = 50_000;
+    // SQL Server aceita ate 2100 parametros por comando
+    static final int MAX_KEYS_PER_QUERY = 1000;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong suppressed = new AtomicLong(0);
+    private final AtomicLong published = new AtomicLong(0);
+    private final AtomicLong dbLookups = new AtomicLong(0);
+
+    PublishedStateCache() {
+    }
+
+    public static synchronized PublishedStateCache getInstance() {
+        if (instance == null) {
+            instance = new PublishedStateCache();
+        }
+        return instance;
+    }
+
+    /**
+     * @return true se o mesmo valor ja foi publicado para o destino dentro da validade
+     */
+    public boolean isUnchanged(String entityType, String sku, String scope, String hash) {
+        if (sku == null || hash == null) {
+            return false;
+        }
+        String key = key(entityType, sku, scope);
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry == null || now - entry.loadedAt > MEMORY_TTL_MS) {
+            entry = load(entityType, sku, normalizeScope(scope), now);
+            if (entry != null) {
+                putEntry(key, entry);
+            } else {
+                entries.remove(key);
+            }
+        }
+        long maxAgeMs = FastchannelConfig.getInstance().getPublishedMaxAgeHours() * 3_600_000L;
+        boolean unchanged = entry != null && hash.equals(entry.hash) && now - entry.publishedAt < maxAgeMs;
+        if (unchanged) {
+            suppressed.incrementAndGet();
+        }
+        return unchanged;
+    }
+
+    /**
+     * Registra o valor enviado com sucesso.
+     */
+    public void recordPublished(String entityType, String sku, String scope, String hash) {
+        if (sku == null || hash == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        putEntry(key(entityType, sku, scope), new Entry(hash, now, now));
+        published.incrementAndGet();
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "MERGE AD_FCPUBLICADO AS T " +
+                            "USING (SELECT ? AS ENTITY_TYPE, ? AS ENTITY_KEY, ? AS ESCOPO, ? AS HASH_VALOR) AS S " +
+                            "ON T.ENTITY_TYPE = S.ENTITY_TYPE AND T.ENTITY_KEY = S.ENTITY_KEY AND T.ESCOPO = S.ESCOPO " +
+                            "WHEN MATCHED THEN UPDATE SET HASH_VALOR = S.HASH_VALOR, DH_PUBLICACAO = CURRENT_TIMESTAMP " +
+                            "WHEN NOT MATCHED THEN INSERT (ENTITY_TYPE, ENTITY_KEY, ESCOPO, HASH_VALOR, DH_PUBLICACAO) " +
+                            "VALUES (S.ENTITY_TYPE, S.ENTITY_KEY, S.ESCOPO, S.HASH_VALOR, CURRENT_TIMESTAMP);");
+            stmt.setString(1, entityType);
+            stmt.setString(2, sku);
+            stmt.setString(3, normalizeScope(scope));
+            stmt.setString(4, hash);
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao gravar ultimo valor publicado de " + sku, e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+    }
+
+    /**
+     * Descarta o valor conhecido (ex.: envio forcado ou falha apos o PUT).
+     */
+    public void invalidate(String entityType, String sku, String scope) {
+        if (sku != null) {
+            entries.remove(key(entityType, sku, scope));
+        }
+    }
+
+    /**
+     * Descarta o valor conhecido tambem na tabela: o proximo envio do SKU
+     * para o destino nao sera suprimido (ex.: divergencia encontrada na
+     * verificacao contra a API).
+     */
+    public void forget(String entityType, String sku, String scope) {
+        if (sku == null) {
+            return;
+        }
+        entries.remove(key(entityType, sku, scope));
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "DELETE FROM AD_FCPUBLICADO WHERE ENTITY_TYPE = ? AND ENTITY_KEY = ? AND ESCOPO = ?");
+            stmt.setString(1, entityType);
+            stmt.setString(2, sku);
+            stmt.setString(3, normalizeScope(scope));
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao remover ultimo valor publicado de " + sku, e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+    }
+
+    /**
+     * Hash do ultimo valor publicado de varios SKUs no mesmo destino, com uma
+     * consulta por bloco de ate {@value #MAX_KEYS_PER_QUERY} SKUs.
+     *
+     * Nao aplica a validade de fastchannel.published.max.age.hours: serve para a
+     * comparacao do full sync, que e conferida pela verificacao periodica
+     * contra a API. SKUs sem publicacao conhecida ficam fora do mapa.
+     */
+    public Map<String, String> publishedHashes(String entityType, Collection<String> skus, String scope) {
+        Map<String, String> result = new HashMap<>();
+        if (skus == null || skus.isEmpty()) {
+            return result;
+        }
+        String normalizedScope = normalizeScope(scope);
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(skus));
+        keys.remove(null);
+        long now = System.currentTimeMillis();
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_QUERY) {
+                List<String> chunk = keys.subList(from, Math.min(keys.size(), from + MAX_KEYS_PER_QUERY));
+                dbLookups.incrementAndGet();
+                stmt = conn.prepareStatement(buildHashesSql(chunk.size()));
+                int idx = 1;
+                stmt.setString(idx++, entityType);
+                stmt.setString(idx++, normalizedScope);
+                for (String sku : chunk) {
+                    stmt.setString(idx++, sku);
+                }
+                rs = stmt.executeQuery();
+                while (rs.next()) {
+                    String sku = rs.getString("ENTITY_KEY");
+                    String hash = rs.getString("HASH_VALOR");
+                    Timestamp publishedAt = rs.getTimestamp("DH_PUBLICACAO");
+                    result.put(sku, hash);
+                    putEntry(key(entityType, sku, normalizedScope),
+                            new Entry(hash, publishedAt != null ? publishedAt.getTime() : 0L, now));
+                }
+                DBUtil.closeResultSet(rs);
+                DBUtil.closeStatement(stmt);
+                rs = null;
+                stmt = null;
+            }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao consultar ultimos valores publicados em lote", e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+
+        // Publicacoes deste no ainda nao lidas do banco (ou banco indisponivel)
+        for (String sku : keys) {
+            if (!result.containsKey(sku)) {
+                Entry entry = entries.get(key(entityType, sku, normalizedScope));
+                if (entry != null) {
+                    result.put(sku, entry.hash);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Proxima fatia de valores publicados num destino, em ordem de SKU
+     * (cursor da verificacao periodica).
+     *
+     * @return SKU -> hash, na ordem de SKU
+     */
+    public Map<String, String> listPublished(String entityType, String scope, String afterSku, int limit) {
+        Map<String, String> result = new LinkedHashMap<>();
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "SELECT TOP " + Math.max(1, limit) + " ENTITY_KEY, HASH_VALOR FROM AD_FCPUBLICADO " +
+                            "WHERE ENTITY_TYPE = ? AND ESCOPO = ? AND ENTITY_KEY > ? ORDER BY ENTITY_KEY");
+            stmt.setString(1, entityType);
+            stmt.setString(2, normalizeScope(scope));
+            stmt.setString(3, afterSku != null ? afterSku : "");
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                result.put(rs.getString("ENTITY_KEY"), rs.getString("HASH_VALOR"));
+            }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao listar valores publicados de " + entityType, e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+        return result;
+    }
+
+    static String buildHashesSql(int size) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ENTITY_KEY, HASH_VALOR, DH_PUBLICACAO FROM AD_FCPUBLICADO ");
+        sql.append("WHERE ENTITY_TYPE = ? AND ESCOPO = ? AND ENTITY_KEY IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new HashMap<>();
+        long s = suppressed.get();
+        long p = published.get();
+        map.put("suppressed", s);
+        map.put("published", p);
+        map.put("suppressionRate", s + p > 0 ? (double) s / (s + p) : 0d);
+        map.put("dbLookups", dbLookups.get());
+        map.put("entries", entries.size());
+        return map;
+    }
+
+    public static String stockScope(String storageId, String resellerId) {
+        return (storageId != null ? storageId : "") + "|" + (resellerId != null ? resellerId : "");
+    }
+
+    public static String priceScope(BigDecimal priceTableId, String channel) {
+        return (priceTableId != null ? priceTableId.toPlainString() : "") + "|" + (channel != null ? channel : "");
+    }
+
+    /**
+     * Hash estavel dos valores publicados. Numeros sao normalizados
+     * (10.00 e 10 geram o mesmo hash).
+     */
+    public static String hash(Object... values) {
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            if (value instanceof BigDecimal) {
+                BigDecimal number = (BigDecimal) value;
+                sb.append(number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString());
+            } else if (value != null) {
+                sb.append(value);
+            }
+            sb.append(';');
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            return sb.toString();
+        }
+    }
+
+    private Entry load(String entityType, String sku, String scope, long now) {
+        dbLookups.incrementAndGet();
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "SELECT HASH_VALOR, DH_PUBLICACAO FROM AD_FCPUBLICADO " +
+                            "WHERE ENTITY_TYPE = ? AND ENTITY_KEY = ? AND ESCOPO = ?");
+            stmt.setString(1, entityType);
+            stmt.setString(2, sku);
+            stmt.setString(3, scope);
+            rs = stmt.executeQuery();
+            if (rs.next()) {
+                Timestamp publishedAt = rs.getTimestamp("DH_PUBLICACAO");
+                return new Entry(rs.getString("HASH_VALOR"), publishedAt != null ? publishedAt.getTime() : 0L, now);
+            }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao consultar ultimo valor publicado de " + sku, e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+        return null;
+    }
+
+    private void putEntry(String key, Entry entry) {
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(key)) {
+            entries.clear();
+        }
+        entries.put(key, entry);
+    }
+
+    private static String key(String entityType, String sku, String scope) {
+        return entityType + "|" + sku + "|" + normalizeScope(scope);
+    }
+
+    private static String normalizeScope(String scope) {
+        return scope != null ? scope : "";
+    }
+
+    private static final class Entry {
+        private final String hash;
+        private final long publishedAt;
+        private final long loadedAt;
+
+        private Entry(String hash, long publishedAt, long loadedAt) {
+            this.hash = hash;
+            this.publishedAt = publishedAt;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package br.com.bellube.fastchannel.service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Debounce em memoria na frente da consulta de pendencias da fila.
+ *
+ * Guarda, por (tipo, ENTITY_ID) e (tipo, ENTITY_KEY), ate quando um item
+ * enfileirado recentemente ainda e considerado pendente. A validade e a
+ * propria janela de debounce. Em caso de miss a fila continua consultando
+ * o banco; o cache apenas evita o SELECT para duplicatas ja conhecidas.
+ */
+public class QueueDebounceCache {
+
+    private static final int MAX_ENTRIES = 20_000;
+
+    private final long windowMs;
+    private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    QueueDebounceCache(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * @return true se o item ja foi enfileirado dentro da janela (hit)
+     */
+    public boolean isRecentlyQueued(String entityType, BigDecimal entityId, String entityKey) {
+        long now = System.currentTimeMillis();
+        boolean hit = isAlive(idKey(entityType, entityId), now) || isAlive(skuKey(entityType, entityKey), now);
+        if (hit) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return hit;
+    }
+
+    public void recordQueued(String entityType, BigDecimal entityId, String entityKey) {
+        long expiresAt = System.currentTimeMillis() + windowMs;
+        if (expiries.size() >= MAX_ENTRIES) {
+            purgeExpired();
+        }
+        String id = idKey(entityType, entityId);
+        if (id != null) {
+            expiries.put(id, expiresAt);
+        }
+        String sku = skuKey(entityType, entityKey);
+        if (sku != null) {
+            expiries.put(sku, expiresAt);
+        }
+    }
+
+    /**
+     * Remove a entrada; usado quando o item sai de PENDENTE (ex.: reivindicado
+     * pelo outbox) e uma nova alteracao precisa voltar a ser enfileirada.
+     */
+    public void invalidate(String entityType, BigDecimal entityId, String entityKey) {
+        String id = idKey(entityType, entityId);
+        if (id != null) {
+            expiries.remove(id);
+        }
+        String sku = skuKey(entityType, entityKey);
+        if (sku != null) {
+            expiries.remove(sku);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return expiries.size();
+    }
+
+    public Map<String, Object> snapshot() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> map = new HashMap<>();
+        map.put("hits", h);
+        map.put("misses", m);
+        map.put("hitRate", h + m > 0 ? (double) h / (h + m) : 0d);
+        map.put("entries", expiries.size());
+        map.put("windowMs", windowMs);
+        return map;
+    }
+
+    private boolean isAlive(String key, long now) {
+        if (key == null) {
+            return false;
+        }
+        Long expiresAt = expiries.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt <= now) {
+            expiries.remove(key, expiresAt);
+            return false;
+        }
+        return true;
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> it = expiries.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() <= now) {
+                it.remove();
+            }
+        }
+        if (expiries.size() >= MAX_ENTRIES) {
+            expiries.clear();
+        }
+    }
+
+    private static String idKey(String entityType, BigDecimal entityId) {
+        return entityId != null ? entityType + "|ID|" + entityId.toPlainString() : null;
+    }
+
+    private static String skuKey(String entityType, String entityKey) {
+        return entityKey != null && !entityKey.isEmpty() ? entityType + "|KEY|" + entityKey : null;
+    }
+}
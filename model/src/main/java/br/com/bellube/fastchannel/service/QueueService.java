@@ -4,16 +4,30 @@ import br.com.bellube.fastchannel.config.FastchannelConfig;
 import br.com.bellube.fastchannel.config.FastchannelConstants;
 import br.com.bellube.fastchannel.dto.QueueItemDTO;
 import br.com.bellube.fastchannel.service.DeparaService;
+import br.com.bellube.fastchannel.util.DBUtil;
+import br.com.bellube.fastchannel.util.RetryBackoff;
 import br.com.sankhya.jape.dao.JdbcWrapper;
 import br.com.sankhya.jape.sql.NativeSql;
 import br.com.sankhya.modelcore.util.EntityFacadeFactory;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +42,7 @@ import java.util.logging.Logger;
  * - Debouncing autom?tico (evita duplicatas)
  * - Prioriza??o de itens
  * - Controle de retry
+ * - Claim atomico com lease (varias threads/nos drenando a mesma fila)
  */
 public class QueueService {
 
@@ -40,6 +55,24 @@ public class QueueService {
     // Debounce window em milissegundos (evita duplicatas)
     private static final long DEBOUNCE_WINDOW_MS = 5000; // 5 segundos
 
+    // Debounce em memoria: responde duplicatas recentes sem consultar AD_FCQUEUE
+    private final QueueDebounceCache debounceCache = new QueueDebounceCache(DEBOUNCE_WINDOW_MS);
+
+    // Tempo maximo que um desfecho espera no acumulador antes do flush
+    private static final long STATUS_FLUSH_MAX_AGE_MS = 2000;
+
+    // Limites de parametros por UPDATE em lote (SQL Server aceita ate 2100)
+    private static final int STATUS_BATCH_IN_CHUNK = 1000;
+    private static final int STATUS_BATCH_VALUES_CHUNK = 500;
+
+    // Enfileiramento em lote: linhas por INSERT (7 parametros por linha) e limite do escopo por thread
+    private static final int BULK_ROWS_PER_INSERT = 250;
+    private static final int BULK_SCOPE_FLUSH_SIZE = 500;
+    private static final ThreadLocal<BulkScope> BULK_SCOPE = new ThreadLocal<>();
+
+    // Identifica este no como dono dos leases que reivindica
+    private static final String NODE_ID = resolveNodeId();
+
     private QueueService() {
         this.config = FastchannelConfig.getInstance();
     }
@@ -70,15 +103,42 @@ public class QueueService {
      */
     public void enqueue(String entityType, String operation, BigDecimal entityId,
                         String entityKey, String payload, BigDecimal priority) {
+        enqueue(entityType, operation, entityId, entityKey, payload, priority, null);
+    }
+
+    /**
+     * Enfileira item com prioridade e escopo de destino (ex.: StorageId|ResellerId),
+     * usado pela compactacao para distinguir pendencias do mesmo produto.
+     */
+    public void enqueue(String entityType, String operation, BigDecimal entityId,
+                        String entityKey, String payload, BigDecimal priority, String entityScope) {
+
+        // Transicoes de status levam o valor no payload: toda transicao nova entra na fila
+        // (repeticoes sao filtradas em enqueueOrderStatus) e o coalescimento por pedido
+        // acontece na compactacao/despacho.
+        boolean debounce = !FastchannelConstants.ENTITY_PEDIDO_STATUS.equals(entityType);
+
+        BulkScope bulkScope = BULK_SCOPE.get();
+        if (bulkScope != null && debounce) {
+            bulkScope.add(buildItem(entityType, operation, entityId, entityKey, payload, priority, entityScope));
+            return;
+        }
 
         JdbcWrapper jdbc = null;
         String normalizedEntityKey = normalizeEntityKey(entityKey);
 
+        // Debounce em memoria: evita o SELECT quando o item acabou de ser enfileirado
+        if (debounce && debounceCache.isRecentlyQueued(entityType, entityId, normalizedEntityKey)) {
+            log.fine("Item j? na fila (debounce em memoria): " + entityType + "/" + entityId);
+            return;
+        }
+
         try {
             jdbc = openJdbc();
 
             // Debounce: verificar se j? existe item similar recente
-            if (hasPendingItem(jdbc, entityType, entityId, normalizedEntityKey)) {
+            if (debounce && hasPendingItem(jdbc, entityType, entityId, normalizedEntityKey)) {
+                debounceCache.recordQueued(entityType, entityId, normalizedEntityKey);
                 log.fine("Item j? na fila (debounce): " + entityType + "/" + entityId);
                 return;
             }
@@ -86,20 +146,24 @@ public class QueueService {
             // Inserir novo item na fila
             NativeSql sql = new NativeSql(jdbc);
             sql.appendSql("INSERT INTO AD_FCQUEUE ");
-            sql.appendSql("(ENTITY_TYPE, OPERATION, ENTITY_ID, ENTITY_KEY, PAYLOAD, STATUS, ");
+            sql.appendSql("(ENTITY_TYPE, OPERATION, ENTITY_ID, ENTITY_KEY, ENTITY_SCOPE, PAYLOAD, STATUS, ");
             sql.appendSql("RETRY_COUNT, PRIORITY, DH_CRIACAO) ");
-            sql.appendSql("VALUES (:entityType, :operation, :entityId, :entityKey, :payload, ");
+            sql.appendSql("VALUES (:entityType, :operation, :entityId, :entityKey, :entityScope, :payload, ");
             sql.appendSql(":status, 0, :priority, CURRENT_TIMESTAMP)");
 
             sql.setNamedParameter("entityType", entityType);
             sql.setNamedParameter("operation", operation);
             sql.setNamedParameter("entityId", entityId);
             sql.setNamedParameter("entityKey", normalizedEntityKey);
+            sql.setNamedParameter("entityScope", truncate(entityScope, 100));
             sql.setNamedParameter("payload", payload);
             sql.setNamedParameter("status", FastchannelConstants.QUEUE_STATUS_PENDENTE);
             sql.setNamedParameter("priority", priority);
 
             sql.executeUpdate();
+            if (debounce) {
+                debounceCache.recordQueued(entityType, entityId, normalizedEntityKey);
+            }
 
             log.info("Enfileirado: " + entityType + "/" + operation + " - " + normalizedEntityKey);
 
@@ -110,6 +174,207 @@ public class QueueService {
         }
     }
 
+    /**
+     * Enfileira varios itens com um INSERT ... SELECT por lote de linhas.
+     *
+     * O debounce e feito no proprio INSERT (WHERE NOT EXISTS contra itens
+     * PENDENTE/PROCESSANDO recentes) e itens repetidos na lista sao reduzidos
+     * ao ultimo informado.
+     *
+     * @return quantidade de itens efetivamente enfileirados (0 se a gravacao falhar)
+     */
+    public int enqueueAll(List<QueueItemDTO> items) {
+        try {
+            return insertAll(items);
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Erro ao enfileirar itens em lote", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Como {@link #enqueueAll(List)}, mas propaga a falha de gravacao para
+     * quem precisa saber se tudo entrou na fila (ex.: marca d'agua).
+     */
+    private int insertAll(List<QueueItemDTO> items) throws Exception {
+        if (items == null || items.isEmpty()) {
+            return 0;
+        }
+        List<QueueItemDTO> rows = dedupe(items);
+        int inserted = 0;
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            Timestamp debounceTime = new Timestamp(System.currentTimeMillis() - DEBOUNCE_WINDOW_MS);
+            for (int start = 0; start < rows.size(); start += BULK_ROWS_PER_INSERT) {
+                List<QueueItemDTO> chunk = rows.subList(start, Math.min(rows.size(), start + BULK_ROWS_PER_INSERT));
+                stmt = conn.prepareStatement(buildBulkInsertSql(chunk.size()));
+                int idx = 1;
+                for (QueueItemDTO item : chunk) {
+                    stmt.setString(idx++, item.getEntityType());
+                    stmt.setString(idx++, item.getOperation() != null
+                            ? item.getOperation() : FastchannelConstants.OPERATION_UPDATE);
+                    stmt.setBigDecimal(idx++, item.getEntityId());
+                    stmt.setString(idx++, item.getEntityKey());
+                    stmt.setString(idx++, truncate(item.getEntityScope(), 100));
+                    stmt.setString(idx++, item.getPayload());
+                    stmt.setBigDecimal(idx++, item.getPriority() != null ? item.getPriority() : BigDecimal.ZERO);
+                }
+                stmt.setTimestamp(idx, debounceTime);
+                inserted += stmt.executeUpdate();
+                DBUtil.closeStatement(stmt);
+                stmt = null;
+                // Inseridos ou ja pendentes: em ambos os casos ha item recente na fila
+                for (QueueItemDTO item : chunk) {
+                    debounceCache.recordQueued(item.getEntityType(), item.getEntityId(), item.getEntityKey());
+                }
+            }
+            log.info("Enfileirados em lote: " + inserted + " de " + rows.size() + " item(ns)");
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+        return inserted;
+    }
+
+    /**
+     * Normaliza as chaves, descarta itens com debounce em memoria e reduz
+     * repeticoes de (tipo, id, chave) ao ultimo item informado, na posicao dele.
+     */
+    List<QueueItemDTO> dedupe(List<QueueItemDTO> items) {
+        Map<String, QueueItemDTO> unique = new LinkedHashMap<>();
+        for (QueueItemDTO item : items) {
+            if (item == null || item.getEntityType() == null) {
+                continue;
+            }
+            item.setEntityKey(normalizeEntityKey(item.getEntityKey()));
+            if (debounceCache.isRecentlyQueued(item.getEntityType(), item.getEntityId(), item.getEntityKey())) {
+                continue;
+            }
+            String key = item.getEntityType() + "|" + item.getEntityId() + "|" + item.getEntityKey();
+            unique.remove(key);
+            unique.put(key, item);
+        }
+        return new ArrayList<>(unique.values());
+    }
+
+    String buildBulkInsertSql(int rows) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO AD_FCQUEUE ");
+        sql.append("(ENTITY_TYPE, OPERATION, ENTITY_ID, ENTITY_KEY, ENTITY_SCOPE, PAYLOAD, STATUS, RETRY_COUNT, PRIORITY, DH_CRIACAO) ");
+        sql.append("SELECT V.ENTITY_TYPE, V.OPERATION, V.ENTITY_ID, V.ENTITY_KEY, V.ENTITY_SCOPE, V.PAYLOAD, ");
+        sql.append("'PENDENTE', 0, V.PRIORITY, CURRENT_TIMESTAMP ");
+        sql.append("FROM (VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?)");
+        }
+        sql.append(") V(ENTITY_TYPE, OPERATION, ENTITY_ID, ENTITY_KEY, ENTITY_SCOPE, PAYLOAD, PRIORITY) ");
+        sql.append("WHERE NOT EXISTS (SELECT 1 FROM AD_FCQUEUE Q ");
+        sql.append("WHERE Q.ENTITY_TYPE = V.ENTITY_TYPE AND Q.STATUS IN ('PENDENTE', 'PROCESSANDO') ");
+        sql.append("AND (Q.LEASE_EXPIRES IS NULL OR Q.LEASE_EXPIRES > CURRENT_TIMESTAMP) ");
+        sql.append("AND (Q.ENTITY_ID = V.ENTITY_ID OR Q.ENTITY_KEY = V.ENTITY_KEY) ");
+        sql.append("AND Q.DH_CRIACAO > ?)");
+        return sql.toString();
+    }
+
+    /**
+     * Abre um escopo de enfileiramento em lote para a thread atual.
+     *
+     * Enquanto aberto, os metodos de item unico (enqueue, enqueueStock,
+     * enqueuePrice...) acumulam os itens e o fechamento grava tudo via
+     * {@link #enqueueAll(List)}. Uso: try (QueueService.BulkScope scope = queue.openBulkScope()) {...}
+     */
+    public BulkScope openBulkScope() {
+        BulkScope current = BULK_SCOPE.get();
+        if (current != null) {
+            current.depth++;
+            return current;
+        }
+        BulkScope scope = new BulkScope(this);
+        BULK_SCOPE.set(scope);
+        return scope;
+    }
+
+    private QueueItemDTO buildItem(String entityType, String operation, BigDecimal entityId, String entityKey,
+                                   String payload, BigDecimal priority, String entityScope) {
+        QueueItemDTO item = new QueueItemDTO(entityType, operation, entityId);
+        item.setEntityKey(entityKey);
+        item.setPayload(payload);
+        item.setPriority(priority);
+        item.setEntityScope(entityScope);
+        return item;
+    }
+
+    /**
+     * Escopo de enfileiramento em lote (por thread).
+     */
+    public static final class BulkScope implements AutoCloseable {
+        private final QueueService queueService;
+        private final List<QueueItemDTO> buffer = new ArrayList<>();
+        private int depth = 1;
+        private int enqueued;
+        private boolean failed;
+
+        private BulkScope(QueueService queueService) {
+            this.queueService = queueService;
+        }
+
+        private void add(QueueItemDTO item) {
+            buffer.add(item);
+            if (buffer.size() >= BULK_SCOPE_FLUSH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Grava os itens acumulados ate o momento.
+         * Uma falha de gravacao e registrada em {@link #hasFailed()}.
+         */
+        public int flush() {
+            if (buffer.isEmpty()) {
+                return 0;
+            }
+            List<QueueItemDTO> pending = new ArrayList<>(buffer);
+            buffer.clear();
+            try {
+                int inserted = queueService.insertAll(pending);
+                enqueued += inserted;
+                return inserted;
+            } catch (Exception e) {
+                failed = true;
+                log.log(Level.SEVERE, "Erro ao enfileirar " + pending.size() + " item(ns) em lote", e);
+                return 0;
+            }
+        }
+
+        /**
+         * Total efetivamente enfileirado por este escopo.
+         */
+        public int getEnqueued() {
+            return enqueued;
+        }
+
+        /**
+         * Indica se algum lote deste escopo deixou de ser gravado.
+         */
+        public boolean hasFailed() {
+            return failed;
+        }
+
+        @Override
+        public void close() {
+            if (--depth > 0) {
+                return;
+            }
+            try {
+                flush();
+            } finally {
+                BULK_SCOPE.remove();
+            }
+        }
+    }
+
     /**
      * Verifica se h? item pendente similar (debounce).
      */
@@ -118,6 +383,7 @@ public class QueueService {
         NativeSql sql = new NativeSql(jdbc);
         sql.appendSql("SELECT 1 FROM AD_FCQUEUE WHERE ");
         sql.appendSql("ENTITY_TYPE = :entityType AND STATUS IN ('PENDENTE', 'PROCESSANDO') ");
+        sql.appendSql("AND (LEASE_EXPIRES IS NULL OR LEASE_EXPIRES > CURRENT_TIMESTAMP) ");
         sql.appendSql("AND (ENTITY_ID = :entityId OR ENTITY_KEY = :entityKey) ");
         sql.appendSql("AND DH_CRIACAO > :debounceTime");
 
@@ -161,6 +427,7 @@ public class QueueService {
             sql.appendSql("PAYLOAD, STATUS, RETRY_COUNT, LAST_ERROR, DH_CRIACAO, PRIORITY ");
             sql.appendSql("FROM AD_FCQUEUE ");
             sql.appendSql("WHERE STATUS = :status ");
+            sql.appendSql("AND (NEXT_ATTEMPT_AT IS NULL OR NEXT_ATTEMPT_AT <= CURRENT_TIMESTAMP) ");
             sql.appendSql("ORDER BY PRIORITY DESC, DH_CRIACAO ASC ");
             sql.appendSql("OFFSET 0 ROWS FETCH NEXT :limit ROWS ONLY");
 
@@ -211,6 +478,7 @@ public class QueueService {
             sql.appendSql("PAYLOAD, STATUS, RETRY_COUNT, LAST_ERROR, DH_CRIACAO, PRIORITY ");
             sql.appendSql("FROM AD_FCQUEUE ");
             sql.appendSql("WHERE STATUS = :status AND ENTITY_TYPE = :entityType ");
+            sql.appendSql("AND (NEXT_ATTEMPT_AT IS NULL OR NEXT_ATTEMPT_AT <= CURRENT_TIMESTAMP) ");
             sql.appendSql("ORDER BY PRIORITY DESC, DH_CRIACAO ASC ");
             sql.appendSql("OFFSET 0 ROWS FETCH NEXT :limit ROWS ONLY");
 
@@ -246,6 +514,322 @@ public class QueueService {
         return items;
     }
 
+    /**
+     * Reivindica atomicamente os proximos itens pendentes para este no.
+     *
+     * Um unico UPDATE ... OUTPUT com UPDLOCK/READPAST marca os itens como
+     * PROCESSANDO com dono e expiracao de lease; linhas travadas por outro
+     * worker sao puladas. Itens PROCESSANDO com lease expirado sao
+     * reivindicados novamente, assim como itens em ERRO cuja proxima
+     * tentativa (NEXT_ATTEMPT_AT) ja venceu.
+     *
+     * @param batchSize quantidade m?xima de itens
+     * @return itens reivindicados ordenados por prioridade
+     */
+    public List<QueueItemDTO> claimPendingItems(int batchSize) {
+        return claim(null, batchSize);
+    }
+
+    /**
+     * Reivindica itens pendentes de um tipo de entidade.
+     */
+    public List<QueueItemDTO> claimPendingByType(String entityType, int batchSize) {
+        return claim(entityType, batchSize);
+    }
+
+    private List<QueueItemDTO> claim(String entityType, int batchSize) {
+        List<QueueItemDTO> items = new ArrayList<>();
+        if (batchSize <= 0) {
+            return items;
+        }
+        JdbcWrapper jdbc = null;
+        ResultSet rs = null;
+
+        try {
+            jdbc = openJdbc();
+            int leaseSeconds = config.getQueueLeaseSeconds();
+
+            NativeSql sql = new NativeSql(jdbc);
+            sql.appendSql("WITH LOTE AS ( ");
+            sql.appendSql("SELECT TOP (:limit) * FROM AD_FCQUEUE WITH (UPDLOCK, READPAST, ROWLOCK) ");
+            sql.appendSql("WHERE ((STATUS = :pendente AND (NEXT_ATTEMPT_AT IS NULL OR NEXT_ATTEMPT_AT <= CURRENT_TIMESTAMP)) ");
+            sql.appendSql("OR (STATUS = :erro AND RETRY_COUNT < :maxRetries ");
+            sql.appendSql("AND (NEXT_ATTEMPT_AT IS NULL OR NEXT_ATTEMPT_AT <= CURRENT_TIMESTAMP)) ");
+            sql.appendSql("OR (STATUS = :processando AND LEASE_EXPIRES < CURRENT_TIMESTAMP) ");
+            sql.appendSql("OR (STATUS = :processando AND LEASE_EXPIRES IS NULL ");
+            sql.appendSql("AND ISNULL(DH_ALTERACAO, DH_CRIACAO) < DATEADD(SECOND, -:lease, CURRENT_TIMESTAMP))) ");
+            if (entityType != null) {
+                sql.appendSql("AND ENTITY_TYPE = :entityType ");
+            }
+            sql.appendSql("ORDER BY PRIORITY DESC, DH_CRIACAO ASC) ");
+            sql.appendSql("UPDATE LOTE SET STATUS = :processando, LEASE_OWNER = :owner, ");
+            sql.appendSql("LEASE_EXPIRES = DATEADD(SECOND, :lease, CURRENT_TIMESTAMP), DH_ALTERACAO = CURRENT_TIMESTAMP ");
+            sql.appendSql("OUTPUT inserted.IDQUEUE, inserted.ENTITY_TYPE, inserted.OPERATION, inserted.ENTITY_ID, ");
+            sql.appendSql("inserted.ENTITY_KEY, inserted.PAYLOAD, inserted.STATUS, inserted.RETRY_COUNT, ");
+            sql.appendSql("inserted.LAST_ERROR, inserted.DH_CRIACAO, inserted.PRIORITY, deleted.STATUS AS PREV_STATUS");
+
+            sql.setNamedParameter("limit", batchSize);
+            sql.setNamedParameter("pendente", FastchannelConstants.QUEUE_STATUS_PENDENTE);
+            sql.setNamedParameter("processando", FastchannelConstants.QUEUE_STATUS_PROCESSANDO);
+            sql.setNamedParameter("erro", FastchannelConstants.QUEUE_STATUS_ERRO);
+            sql.setNamedParameter("maxRetries", FastchannelConstants.DEFAULT_MAX_RETRIES);
+            sql.setNamedParameter("lease", leaseSeconds);
+            sql.setNamedParameter("owner", NODE_ID);
+            if (entityType != null) {
+                sql.setNamedParameter("entityType", entityType);
+            }
+
+            rs = sql.executeQuery();
+
+            int reclaimed = 0;
+            while (rs.next()) {
+                QueueItemDTO item = mapItem(rs);
+                items.add(item);
+                // Saiu de PENDENTE: nova alteracao do mesmo item deve voltar a enfileirar
+                debounceCache.invalidate(item.getEntityType(), item.getEntityId(), item.getEntityKey());
+                if (FastchannelConstants.QUEUE_STATUS_PROCESSANDO.equals(rs.getString("PREV_STATUS"))) {
+                    reclaimed++;
+                }
+            }
+            if (reclaimed > 0) {
+                log.warning("Recuperados " + reclaimed + " item(ns) com lease expirado em PROCESSANDO");
+            }
+
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Erro ao reivindicar itens da fila", e);
+        } finally {
+            closeQuietly(rs);
+            closeJdbc(jdbc);
+        }
+
+        // OUTPUT nao garante ordem
+        items.sort(Comparator
+                .comparing((QueueItemDTO i) -> i.getPriority() != null ? i.getPriority() : BigDecimal.ZERO)
+                .reversed()
+                .thenComparing(i -> i.getCreatedAt() != null ? i.getCreatedAt().getTime() : 0L));
+        return items;
+    }
+
+    /**
+     * Prorroga o lease de itens ainda em PROCESSANDO por este no.
+     * Chamado durante o despacho de lotes longos, para que itens aguardando
+     * worker nao expirem e sejam reivindicados (e enviados) por outro no.
+     *
+     * @return quantidade de itens prorrogados
+     */
+    public int renewLease(Collection<BigDecimal> idQueues) {
+        if (idQueues == null || idQueues.isEmpty()) {
+            return 0;
+        }
+        List<BigDecimal> ids = new ArrayList<>(idQueues);
+        int renewed = 0;
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            for (int start = 0; start < ids.size(); start += STATUS_BATCH_IN_CHUNK) {
+                List<BigDecimal> chunk = ids.subList(start, Math.min(ids.size(), start + STATUS_BATCH_IN_CHUNK));
+                stmt = conn.prepareStatement(buildRenewLeaseSql(chunk.size()));
+                int idx = 1;
+                stmt.setInt(idx++, config.getQueueLeaseSeconds());
+                stmt.setString(idx++, FastchannelConstants.QUEUE_STATUS_PROCESSANDO);
+                stmt.setString(idx++, NODE_ID);
+                for (BigDecimal id : chunk) {
+                    stmt.setBigDecimal(idx++, id);
+                }
+                renewed += stmt.executeUpdate();
+                DBUtil.closeStatement(stmt);
+                stmt = null;
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao prorrogar lease de itens da fila", e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+        return renewed;
+    }
+
+    static String buildRenewLeaseSql(int size) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE AD_FCQUEUE SET LEASE_EXPIRES = DATEADD(SECOND, ?, CURRENT_TIMESTAMP) ");
+        sql.append("WHERE STATUS = ? AND LEASE_OWNER = ? AND IDQUEUE IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    /**
+     * Compacta pendencias redundantes antes do despacho.
+     *
+     * Para cada (ENTITY_TYPE, ENTITY_ID, ENTITY_KEY, ENTITY_SCOPE) mantem apenas
+     * o item acionavel mais recente (PENDENTE tem precedencia sobre ERRO) e marca
+     * os demais como SUBSTITUIDO num unico UPDATE. Vale para os tipos cujo valor
+     * e relido do Sankhya no momento do envio (estoque, preco e produto).
+     *
+     * Status de pedido levam o valor no payload: uma transicao PENDENTE/ERRO e
+     * substituida sempre que existe outra mais nova (DH_CRIACAO, depois IDQUEUE)
+     * do mesmo pedido, em qualquer status - inclusive ja ENVIADO.
+     *
+     * @return quantidade de itens marcados como substituidos
+     */
+    public int compactPending() {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "UPDATE Q SET STATUS = ?, DH_PROCESSAMENTO = CURRENT_TIMESTAMP, DH_ALTERACAO = CURRENT_TIMESTAMP, " +
+                    "LEASE_OWNER = NULL, LEASE_EXPIRES = NULL " +
+                    "FROM AD_FCQUEUE Q " +
+                    "INNER JOIN ( " +
+                    "  SELECT IDQUEUE, ROW_NUMBER() OVER ( " +
+                    "    PARTITION BY ENTITY_TYPE, ENTITY_ID, ENTITY_KEY, ENTITY_SCOPE " +
+                    "    ORDER BY CASE WHEN STATUS = 'PENDENTE' THEN 0 ELSE 1 END, DH_CRIACAO DESC, IDQUEUE DESC) AS RN " +
+                    "  FROM AD_FCQUEUE " +
+                    "  WHERE STATUS IN ('PENDENTE', 'ERRO') AND ENTITY_TYPE IN (?, ?, ?) " +
+                    ") R ON R.IDQUEUE = Q.IDQUEUE " +
+                    "WHERE R.RN > 1 AND Q.STATUS IN ('PENDENTE', 'ERRO')");
+            stmt.setString(1, FastchannelConstants.QUEUE_STATUS_SUBSTITUIDO);
+            stmt.setString(2, FastchannelConstants.ENTITY_ESTOQUE);
+            stmt.setString(3, FastchannelConstants.ENTITY_PRECO);
+            stmt.setString(4, FastchannelConstants.ENTITY_PRODUTO);
+            int superseded = stmt.executeUpdate();
+            DBUtil.closeStatement(stmt);
+            stmt = null;
+
+            // Status de pedido: uma transicao por ORDER_ID, independente da nota que a gerou
+            stmt = conn.prepareStatement(buildOrderStatusSupersededSql(null));
+            stmt.setString(1, FastchannelConstants.QUEUE_STATUS_SUBSTITUIDO);
+            stmt.setString(2, FastchannelConstants.ENTITY_PEDIDO_STATUS);
+            superseded += stmt.executeUpdate();
+            if (superseded > 0) {
+                log.info("Compactacao da fila: " + superseded + " item(ns) substituido(s) por pendencia mais recente");
+            }
+            return superseded;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao compactar fila", e);
+            return 0;
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+    }
+
+    /**
+     * Dentre as transicoes de status de pedido informadas, devolve as que ja
+     * tem transicao mais nova do mesmo pedido na fila (qualquer status).
+     * Usado no despacho para nao reenviar uma transicao antiga reivindicada
+     * depois que a mais nova ja foi enviada.
+     */
+    public Set<BigDecimal> findSupersededOrderStatus(Collection<BigDecimal> idQueues) {
+        Set<BigDecimal> superseded = new HashSet<>();
+        if (idQueues == null || idQueues.isEmpty()) {
+            return superseded;
+        }
+        List<BigDecimal> ids = new ArrayList<>(idQueues);
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            for (int start = 0; start < ids.size(); start += STATUS_BATCH_IN_CHUNK) {
+                List<BigDecimal> chunk = ids.subList(start, Math.min(ids.size(), start + STATUS_BATCH_IN_CHUNK));
+                stmt = conn.prepareStatement(buildOrderStatusSupersededSql(chunk.size()));
+                int idx = 1;
+                stmt.setString(idx++, FastchannelConstants.ENTITY_PEDIDO_STATUS);
+                for (BigDecimal id : chunk) {
+                    stmt.setBigDecimal(idx++, id);
+                }
+                rs = stmt.executeQuery();
+                while (rs.next()) {
+                    superseded.add(rs.getBigDecimal("IDQUEUE"));
+                }
+                DBUtil.closeResultSet(rs);
+                rs = null;
+                DBUtil.closeStatement(stmt);
+                stmt = null;
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao verificar transicoes de pedido substituidas", e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+        return superseded;
+    }
+
+    /**
+     * Transicoes de pedido com outra mais nova (DH_CRIACAO, depois IDQUEUE) do
+     * mesmo ENTITY_KEY em qualquer status.
+     *
+     * @param idCount null gera o UPDATE da compactacao (PENDENTE/ERRO viram SUBSTITUIDO);
+     *                caso contrario, um SELECT restrito a idCount IDQUEUEs
+     */
+    static String buildOrderStatusSupersededSql(Integer idCount) {
+        StringBuilder sql = new StringBuilder();
+        if (idCount == null) {
+            sql.append("UPDATE Q SET STATUS = ?, DH_PROCESSAMENTO = CURRENT_TIMESTAMP, DH_ALTERACAO = CURRENT_TIMESTAMP, ");
+            sql.append("LEASE_OWNER = NULL, LEASE_EXPIRES = NULL FROM AD_FCQUEUE Q ");
+        } else {
+            sql.append("SELECT Q.IDQUEUE FROM AD_FCQUEUE Q ");
+        }
+        sql.append("WHERE Q.ENTITY_TYPE = ? AND Q.ENTITY_KEY IS NOT NULL ");
+        if (idCount == null) {
+            sql.append("AND Q.STATUS IN ('PENDENTE', 'ERRO') ");
+        } else {
+            sql.append("AND Q.IDQUEUE IN (");
+            for (int i = 0; i < idCount; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(") ");
+        }
+        sql.append("AND EXISTS (SELECT 1 FROM AD_FCQUEUE N ");
+        sql.append("WHERE N.ENTITY_TYPE = Q.ENTITY_TYPE AND N.ENTITY_KEY = Q.ENTITY_KEY ");
+        sql.append("AND (N.DH_CRIACAO > Q.DH_CRIACAO OR (N.DH_CRIACAO = Q.DH_CRIACAO AND N.IDQUEUE > Q.IDQUEUE)))");
+        return sql.toString();
+    }
+
+    /**
+     * Contadores do debounce em memoria (hits evitam o SELECT em AD_FCQUEUE).
+     */
+    public QueueDebounceCache getDebounceCache() {
+        return debounceCache;
+    }
+
+    /**
+     * Identificador do dono dos leases reivindicados por este no.
+     */
+    public String getLeaseOwner() {
+        return NODE_ID;
+    }
+
+    private QueueItemDTO mapItem(ResultSet rs) throws Exception {
+        QueueItemDTO item = new QueueItemDTO();
+        item.setIdQueue(rs.getBigDecimal("IDQUEUE"));
+        item.setEntityType(rs.getString("ENTITY_TYPE"));
+        item.setOperation(rs.getString("OPERATION"));
+        item.setEntityId(rs.getBigDecimal("ENTITY_ID"));
+        item.setEntityKey(rs.getString("ENTITY_KEY"));
+        item.setPayload(rs.getString("PAYLOAD"));
+        item.setStatus(rs.getString("STATUS"));
+        item.setRetryCount(rs.getInt("RETRY_COUNT"));
+        item.setLastError(rs.getString("LAST_ERROR"));
+        item.setCreatedAt(rs.getTimestamp("DH_CRIACAO"));
+        item.setPriority(rs.getBigDecimal("PRIORITY"));
+        return item;
+    }
+
+    private static String resolveNodeId() {
+        String runtime;
+        try {
+            runtime = ManagementFactory.getRuntimeMXBean().getName();
+        } catch (Exception e) {
+            runtime = "node";
+        }
+        String id = runtime + "#" + UUID.randomUUID().toString().substring(0, 8);
+        return id.length() > 100 ? id.substring(id.length() - 100) : id;
+    }
+
     /**
      * Marca item como "em processamento".
      */
@@ -263,7 +847,8 @@ public class QueueService {
 
             NativeSql sql = new NativeSql(jdbc);
             sql.appendSql("UPDATE AD_FCQUEUE SET ");
-            sql.appendSql("STATUS = :status, DH_PROCESSAMENTO = CURRENT_TIMESTAMP, LAST_ERROR = NULL ");
+            sql.appendSql("STATUS = :status, DH_PROCESSAMENTO = CURRENT_TIMESTAMP, LAST_ERROR = NULL, ");
+            sql.appendSql("LEASE_OWNER = NULL, LEASE_EXPIRES = NULL ");
             sql.appendSql("WHERE IDQUEUE = :idQueue");
 
             sql.setNamedParameter("status", FastchannelConstants.QUEUE_STATUS_ENVIADO);
@@ -284,6 +869,14 @@ public class QueueService {
      * Marca item como erro (para retry).
      */
     public void markAsError(BigDecimal idQueue, String errorMessage) {
+        markAsError(idQueue, errorMessage, 0);
+    }
+
+    /**
+     * Marca item como erro, agendando a proxima tentativa por backoff
+     * a partir do numero de tentativas ja feitas.
+     */
+    public void markAsError(BigDecimal idQueue, String errorMessage, int retryCount) {
         JdbcWrapper jdbc = null;
         try {
             jdbc = openJdbc();
@@ -291,11 +884,14 @@ public class QueueService {
             NativeSql sql = new NativeSql(jdbc);
             sql.appendSql("UPDATE AD_FCQUEUE SET ");
             sql.appendSql("STATUS = :status, RETRY_COUNT = RETRY_COUNT + 1, ");
-            sql.appendSql("LAST_ERROR = :error, DH_ALTERACAO = CURRENT_TIMESTAMP ");
+            sql.appendSql("LAST_ERROR = :error, DH_ALTERACAO = CURRENT_TIMESTAMP, ");
+            sql.appendSql("NEXT_ATTEMPT_AT = DATEADD(SECOND, :delay, CURRENT_TIMESTAMP), ");
+            sql.appendSql("LEASE_OWNER = NULL, LEASE_EXPIRES = NULL ");
             sql.appendSql("WHERE IDQUEUE = :idQueue");
 
             sql.setNamedParameter("status", FastchannelConstants.QUEUE_STATUS_ERRO);
             sql.setNamedParameter("error", truncate(errorMessage, 4000));
+            sql.setNamedParameter("delay", retryDelaySeconds(retryCount + 1));
             sql.setNamedParameter("idQueue", idQueue);
 
             sql.executeUpdate();
@@ -318,7 +914,119 @@ public class QueueService {
     }
 
     /**
-     * Reativa itens com erro para reprocessamento.
+     * Cria um acumulador de status para um ciclo de processamento.
+     */
+    public QueueStatusBatch newStatusBatch() {
+        return new QueueStatusBatch(this, config.getQueueStatusFlushSize(), STATUS_FLUSH_MAX_AGE_MS);
+    }
+
+    /**
+     * Grava um grupo de desfechos do mesmo status.
+     * ENVIADO usa IDQUEUE IN (...); status com mensagem usam um VALUES (id, msg)
+     * unido a fila, e ERRO leva tambem o atraso da proxima tentativa.
+     * Itens cujo lease passou a outro dono, ou que ja sairam de PROCESSANDO, sao ignorados.
+     */
+    int applyStatusBatch(String status, List<QueueStatusBatch.Outcome> outcomes) {
+        if (outcomes == null || outcomes.isEmpty()) {
+            return 0;
+        }
+        boolean withMessage = !FastchannelConstants.QUEUE_STATUS_ENVIADO.equals(status);
+        boolean retryable = FastchannelConstants.QUEUE_STATUS_ERRO.equals(status);
+        boolean deferred = FastchannelConstants.QUEUE_STATUS_PENDENTE.equals(status);
+        int chunkSize = withMessage ? STATUS_BATCH_VALUES_CHUNK : STATUS_BATCH_IN_CHUNK;
+        int written = 0;
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            for (int start = 0; start < outcomes.size(); start += chunkSize) {
+                List<QueueStatusBatch.Outcome> chunk = outcomes.subList(start, Math.min(outcomes.size(), start + chunkSize));
+                stmt = conn.prepareStatement(withMessage
+                        ? buildStatusWithMessageSql(status, chunk.size())
+                        : buildSuccessSql(chunk.size()));
+                int idx = 1;
+                stmt.setString(idx++, status);
+                for (QueueStatusBatch.Outcome outcome : chunk) {
+                    stmt.setBigDecimal(idx++, outcome.idQueue);
+                    if (withMessage) {
+                        stmt.setString(idx++, truncate(outcome.message, 4000));
+                    }
+                    if (retryable) {
+                        stmt.setInt(idx++, retryDelaySeconds(outcome.attempt));
+                    } else if (deferred) {
+                        stmt.setInt(idx++, outcome.delaySeconds);
+                    }
+                }
+                stmt.setString(idx, NODE_ID);
+                written += stmt.executeUpdate();
+                DBUtil.closeStatement(stmt);
+                stmt = null;
+            }
+            log.fine("Status " + status + " gravado em lote para " + written + " item(ns)");
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Erro ao gravar status " + status + " em lote", e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+        return written;
+    }
+
+    /**
+     * Cerca do lease: so grava sobre linha ainda em PROCESSANDO e do proprio
+     * no (ou sem dono, legado). Linha ja finalizada por outro no apos o lease
+     * expirar nao volta atras com a escrita atrasada.
+     */
+    static String buildSuccessSql(int size) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE AD_FCQUEUE SET STATUS = ?, DH_PROCESSAMENTO = CURRENT_TIMESTAMP, LAST_ERROR = NULL, ");
+        sql.append("NEXT_ATTEMPT_AT = NULL, LEASE_OWNER = NULL, LEASE_EXPIRES = NULL ");
+        sql.append("WHERE IDQUEUE IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") AND STATUS = 'PROCESSANDO' AND (LEASE_OWNER = ? OR LEASE_OWNER IS NULL)");
+        return sql.toString();
+    }
+
+    static String buildStatusWithMessageSql(String status, int size) {
+        StringBuilder sql = new StringBuilder();
+        boolean retryable = FastchannelConstants.QUEUE_STATUS_ERRO.equals(status);
+        // PENDENTE aqui e um adiamento (ex.: circuito aberto): agenda sem contar tentativa
+        boolean scheduled = retryable || FastchannelConstants.QUEUE_STATUS_PENDENTE.equals(status);
+        String row = scheduled ? "(?, ?, ?)" : "(?, ?)";
+        sql.append("UPDATE Q SET STATUS = ?, LAST_ERROR = V.MSG, DH_ALTERACAO = CURRENT_TIMESTAMP, ");
+        if (retryable) {
+            sql.append("RETRY_COUNT = Q.RETRY_COUNT + 1, ");
+        }
+        if (scheduled) {
+            sql.append("NEXT_ATTEMPT_AT = DATEADD(SECOND, V.DELAY, CURRENT_TIMESTAMP), ");
+        } else {
+            sql.append("NEXT_ATTEMPT_AT = NULL, ");
+        }
+        if (FastchannelConstants.QUEUE_STATUS_SUBSTITUIDO.equals(status)) {
+            sql.append("DH_PROCESSAMENTO = CURRENT_TIMESTAMP, ");
+        }
+        sql.append("LEASE_OWNER = NULL, LEASE_EXPIRES = NULL ");
+        sql.append("FROM AD_FCQUEUE Q INNER JOIN (VALUES ");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? row : ", " + row);
+        }
+        sql.append(scheduled ? ") V(IDQUEUE, MSG, DELAY)" : ") V(IDQUEUE, MSG)");
+        sql.append(" ON V.IDQUEUE = Q.IDQUEUE ");
+        sql.append("WHERE Q.STATUS = 'PROCESSANDO' AND (Q.LEASE_OWNER = ? OR Q.LEASE_OWNER IS NULL)");
+        return sql.toString();
+    }
+
+    private int retryDelaySeconds(int attempt) {
+        return RetryBackoff.delaySeconds(attempt, config.getRetryBackoffBaseSeconds(),
+                config.getRetryBackoffMaxSeconds());
+    }
+
+    /**
+     * Reativa itens com erro cuja proxima tentativa ja venceu.
+     * O outbox reivindica esses itens diretamente; este metodo fica para
+     * quem precisa devolve-los a PENDENTE (ex.: contagens e telas).
      */
     public int reactivateErrorItems(int maxRetries) {
         JdbcWrapper jdbc = null;
@@ -328,7 +1036,8 @@ public class QueueService {
             NativeSql sql = new NativeSql(jdbc);
             sql.appendSql("UPDATE AD_FCQUEUE SET ");
             sql.appendSql("STATUS = :newStatus, DH_ALTERACAO = CURRENT_TIMESTAMP ");
-            sql.appendSql("WHERE STATUS = :errorStatus AND RETRY_COUNT < :maxRetries");
+            sql.appendSql("WHERE STATUS = :errorStatus AND RETRY_COUNT < :maxRetries ");
+            sql.appendSql("AND (NEXT_ATTEMPT_AT IS NULL OR NEXT_ATTEMPT_AT <= CURRENT_TIMESTAMP)");
 
             sql.setNamedParameter("newStatus", FastchannelConstants.QUEUE_STATUS_PENDENTE);
             sql.setNamedParameter("errorStatus", FastchannelConstants.QUEUE_STATUS_ERRO);
@@ -421,8 +1130,8 @@ public class QueueService {
 
             NativeSql sql = new NativeSql(jdbc);
             sql.appendSql("UPDATE AD_FCQUEUE SET ");
-            sql.appendSql("STATUS = :status, RETRY_COUNT = 0, LAST_ERROR = NULL, ");
-            sql.appendSql("DH_ALTERACAO = CURRENT_TIMESTAMP ");
+            sql.appendSql("STATUS = :status, RETRY_COUNT = 0, LAST_ERROR = NULL, NEXT_ATTEMPT_AT = NULL, ");
+            sql.appendSql("LEASE_OWNER = NULL, LEASE_EXPIRES = NULL, DH_ALTERACAO = CURRENT_TIMESTAMP ");
             sql.appendSql("WHERE IDQUEUE = :idQueue");
 
             sql.setNamedParameter("status", FastchannelConstants.QUEUE_STATUS_PENDENTE);
@@ -473,33 +1182,111 @@ public class QueueService {
     }
 
     /**
-     * Limpa itens antigos j? processados.
+     * Remove da fila itens finalizados antigos, em blocos.
+     * Conforme fastchannel.queue.archive.mode os itens vao para AD_FCQUEUE_HIST ou sao descartados.
+     *
+     * @return quantidade de itens removidos da fila
      */
     public int cleanupOldItems(int daysToKeep) {
-        JdbcWrapper jdbc = null;
-        try {
-            jdbc = openJdbc();
+        return archiveFinishedItems(daysToKeep, config.isQueueArchiveKeepHistory(),
+                config.getQueueArchiveChunkSize(), config.getQueueArchivePauseMs(),
+                config.getQueueArchiveSeconds() * 1000L);
+    }
 
-            NativeSql sql = new NativeSql(jdbc);
-            sql.appendSql("DELETE FROM AD_FCQUEUE ");
-            sql.appendSql("WHERE STATUS IN ('ENVIADO', 'ERRO_FATAL', 'CANCELADO') ");
-            sql.appendSql("AND DH_CRIACAO < DATEADD(DAY, -:days, CURRENT_TIMESTAMP)");
+    /**
+     * Move (ou descarta) itens finalizados em blocos pela chave, com pausa
+     * entre blocos. Cada bloco e um DELETE TOP curto, entao os locks duram
+     * pouco e os listeners continuam inserindo na fila durante a limpeza.
+     *
+     * @param keepHistory true copia as linhas para AD_FCQUEUE_HIST
+     * @param budgetMs tempo maximo da execucao; o restante fica para a proxima
+     * @return quantidade de itens removidos da fila
+     */
+    public int archiveFinishedItems(int daysToKeep, boolean keepHistory, int chunkSize, long pauseMs, long budgetMs) {
+        int chunk = Math.max(1, chunkSize);
+        long deadline = System.currentTimeMillis() + Math.max(0L, budgetMs);
+        String sqlText = buildArchiveChunkSql(keepHistory);
+        int total = 0;
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(sqlText);
+            PreparedStatement chunkStmt = stmt;
+            total = drainInChunks(size -> {
+                chunkStmt.setInt(1, size);
+                chunkStmt.setInt(2, daysToKeep);
+                return chunkStmt.executeUpdate();
+            }, chunk, pauseMs, deadline);
+            if (total > 0) {
+                log.info((keepHistory ? "Arquivados " : "Descartados ") + total + " item(ns) finalizados da fila");
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao arquivar itens antigos da fila", e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+        return total;
+    }
 
-            sql.setNamedParameter("days", daysToKeep);
+    /**
+     * Um bloco da limpeza: remove ate {@code size} linhas e devolve quantas saiu.
+     */
+    interface ChunkStep {
+        int run(int size) throws Exception;
+    }
 
-            boolean deleted = sql.executeUpdate();
-            if (deleted) {
-                log.info("Remo??o de itens antigos da fila executada");
-                return 1;
+    /**
+     * Repete o bloco ate vir um bloco incompleto (nada mais elegivel) ou
+     * acabar o prazo. Interrupcao encerra a limpeza com o que ja foi removido.
+     *
+     * @return total de linhas removidas
+     */
+    static int drainInChunks(ChunkStep step, int chunk, long pauseMs, long deadline) throws Exception {
+        int total = 0;
+        while (true) {
+            int moved = step.run(chunk);
+            total += moved;
+            if (moved < chunk || System.currentTimeMillis() >= deadline) {
+                return total;
             }
-            return 0;
+            if (pauseMs > 0) {
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return total;
+                }
+            }
+        }
+    }
 
-        } catch (Exception e) {
-            log.log(Level.WARNING, "Erro ao limpar itens antigos", e);
-            return 0;
-        } finally {
-            closeJdbc(jdbc);
+    // Colunas copiadas de AD_FCQUEUE para AD_FCQUEUE_HIST no arquivamento
+    private static final String[] HIST_COLUMNS = {
+            "IDQUEUE", "ENTITY_TYPE", "OPERATION", "ENTITY_ID", "ENTITY_KEY", "ENTITY_SCOPE", "PAYLOAD",
+            "STATUS", "RETRY_COUNT", "LAST_ERROR", "PRIORITY", "DH_CRIACAO", "DH_PROCESSAMENTO", "DH_ALTERACAO"
+    };
+
+    String buildArchiveChunkSql(boolean keepHistory) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH LOTE AS (SELECT TOP (?) * FROM AD_FCQUEUE WITH (ROWLOCK, READPAST) ");
+        sql.append("WHERE STATUS IN ('ENVIADO', 'ERRO_FATAL', 'CANCELADO', 'SUBSTITUIDO') ");
+        sql.append("AND DH_CRIACAO < DATEADD(DAY, -?, CURRENT_TIMESTAMP) ");
+        sql.append("ORDER BY IDQUEUE) ");
+        sql.append("DELETE FROM LOTE");
+        if (keepHistory) {
+            sql.append(" OUTPUT ");
+            for (String column : HIST_COLUMNS) {
+                sql.append("deleted.").append(column).append(", ");
+            }
+            sql.append("CURRENT_TIMESTAMP INTO ").append(FastchannelConstants.TABLE_QUEUE_HIST).append(" (");
+            for (String column : HIST_COLUMNS) {
+                sql.append(column).append(", ");
+            }
+            sql.append("DH_ARQUIVAMENTO)");
         }
+        return sql.toString();
     }
 
     private void updateStatus(BigDecimal idQueue, String status, String errorMessage) {
@@ -509,7 +1296,8 @@ public class QueueService {
 
             NativeSql sql = new NativeSql(jdbc);
             sql.appendSql("UPDATE AD_FCQUEUE SET ");
-            sql.appendSql("STATUS = :status, LAST_ERROR = :error, DH_ALTERACAO = CURRENT_TIMESTAMP ");
+            sql.appendSql("STATUS = :status, LAST_ERROR = :error, DH_ALTERACAO = CURRENT_TIMESTAMP, ");
+            sql.appendSql("NEXT_ATTEMPT_AT = NULL, LEASE_OWNER = NULL, LEASE_EXPIRES = NULL ");
             sql.appendSql("WHERE IDQUEUE = :idQueue");
 
             sql.setNamedParameter("status", status);
@@ -595,7 +1383,8 @@ public class QueueService {
 
         String payload = buildStockPayload(sku, quantity, codEmp, codLocal, storageId, resellerId);
         enqueue(FastchannelConstants.ENTITY_ESTOQUE, FastchannelConstants.OPERATION_UPDATE,
-                codProd, sku, payload, new BigDecimal(10)); // Prioridade alta
+                codProd, sku, payload, new BigDecimal(10), // Prioridade alta
+                buildStockScope(storageId, resellerId));
     }
 
     private String resolveStorageId(DeparaService deparaService, BigDecimal codLocal) {
@@ -648,11 +1437,70 @@ public class QueueService {
      * Enfileira atualiza??o de status de pedido (prioridade m?xima).
      */
     public void enqueueOrderStatus(BigDecimal nuNota, String orderId, int status) {
+        // Cada UPDATE da TGFCAB de uma nota faturada repetiria a mesma transicao
+        Integer latest = latestOrderStatus(orderId);
+        if (latest != null && latest == status) {
+            log.fine("Status " + status + " do pedido " + orderId + " ja enfileirado/enviado. Ignorado.");
+            return;
+        }
         String payload = gson.toJson(new Object[]{ orderId, status });
         enqueue(FastchannelConstants.ENTITY_PEDIDO_STATUS, FastchannelConstants.OPERATION_UPDATE,
                 nuNota, orderId, payload, new BigDecimal(100)); // Prioridade m?xima
     }
 
+    /**
+     * Status da transicao mais recente do pedido ainda na fila ou ja enviada
+     * (SUBSTITUIDO e ERRO_FATAL nao contam).
+     *
+     * @return status ou null se nao houver transicao (ou em caso de falha)
+     */
+    Integer latestOrderStatus(String orderId) {
+        if (orderId == null || orderId.isEmpty()) {
+            return null;
+        }
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "SELECT TOP 1 PAYLOAD FROM AD_FCQUEUE WHERE ENTITY_TYPE = ? AND ENTITY_KEY = ? " +
+                    "AND STATUS IN (?, ?, ?, ?) ORDER BY DH_CRIACAO DESC, IDQUEUE DESC");
+            stmt.setString(1, FastchannelConstants.ENTITY_PEDIDO_STATUS);
+            stmt.setString(2, normalizeEntityKey(orderId));
+            stmt.setString(3, FastchannelConstants.QUEUE_STATUS_PENDENTE);
+            stmt.setString(4, FastchannelConstants.QUEUE_STATUS_PROCESSANDO);
+            stmt.setString(5, FastchannelConstants.QUEUE_STATUS_ERRO);
+            stmt.setString(6, FastchannelConstants.QUEUE_STATUS_ENVIADO);
+            rs = stmt.executeQuery();
+            return rs.next() ? payloadStatus(rs.getString("PAYLOAD")) : null;
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao consultar ultima transicao do pedido " + orderId, e);
+            return null;
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+    }
+
+    /**
+     * Status gravado no payload [orderId, status] de uma transicao de pedido.
+     */
+    static Integer payloadStatus(String payload) {
+        if (payload == null || payload.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonArray array = JsonParser.parseString(payload).getAsJsonArray();
+            return array.size() > 1 && !array.get(1).isJsonNull() ? array.get(1).getAsInt() : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    String buildStockScope(String storageId, String resellerId) {
+        return storageId + "|" + resellerId;
+    }
+
     String buildStockPayload(String sku, BigDecimal quantity, BigDecimal codEmp, BigDecimal codLocal,
                              String storageId, String resellerId) {
         StockPayload payload = new StockPayload();
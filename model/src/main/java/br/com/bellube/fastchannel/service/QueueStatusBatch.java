@@ -0,0 +1,142 @@
+package br.com.bellube.fastchannel.service;
+
+import br.com.bellube.fastchannel.config.FastchannelConstants;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Acumulador de resultados de processamento da fila.
+ *
+ * Agrupa os desfechos (ENVIADO, ERRO, ERRO_FATAL, SUBSTITUIDO, PENDENTE adiado) de um ciclo e grava
+ * com um UPDATE por status, em vez de uma sessao JDBC por item. O flush
+ * ocorre ao atingir o limite de itens, quando o item mais antigo passa do
+ * tempo maximo de espera, ou explicitamente ao fim do ciclo.
+ *
+ * Itens ainda nao gravados continuam em PROCESSANDO com lease; se o no
+ * cair antes do flush, sao reivindicados apos a expiracao do lease e
+ * reenviados (mesma garantia "pelo menos uma vez" do fluxo por item).
+ */
+public class QueueStatusBatch {
+
+    private final StatusWriter writer;
+    private final int maxPending;
+    private final long maxAgeMs;
+    private final Map<String, List<Outcome>> pendingByStatus = new LinkedHashMap<>();
+    private int pendingCount;
+    private long oldestPendingAt;
+
+    /**
+     * Grava os desfechos de um status; devolve quantos itens foram atualizados.
+     */
+    interface StatusWriter {
+        int write(String status, List<Outcome> outcomes);
+    }
+
+    QueueStatusBatch(QueueService queueService, int maxPending, long maxAgeMs) {
+        this(queueService::applyStatusBatch, maxPending, maxAgeMs);
+    }
+
+    QueueStatusBatch(StatusWriter writer, int maxPending, long maxAgeMs) {
+        this.writer = writer;
+        this.maxPending = Math.max(1, maxPending);
+        this.maxAgeMs = Math.max(0L, maxAgeMs);
+    }
+
+    public void success(BigDecimal idQueue) {
+        add(FastchannelConstants.QUEUE_STATUS_ENVIADO, idQueue, null, 0, 0);
+    }
+
+    /**
+     * Falha com retentativa; a proxima tentativa e agendada por backoff
+     * a partir do numero de tentativas ja feitas.
+     */
+    public void error(BigDecimal idQueue, int retryCount, String errorMessage) {
+        add(FastchannelConstants.QUEUE_STATUS_ERRO, idQueue, errorMessage, retryCount + 1, 0);
+    }
+
+    public void fatal(BigDecimal idQueue, String errorMessage) {
+        add(FastchannelConstants.QUEUE_STATUS_ERRO_FATAL, idQueue, errorMessage, 0, 0);
+    }
+
+    /**
+     * Item descartado porque outro mais recente do mesmo alvo sera enviado.
+     */
+    public void superseded(BigDecimal idQueue, String reason) {
+        add(FastchannelConstants.QUEUE_STATUS_SUBSTITUIDO, idQueue, reason, 0, 0);
+    }
+
+    /**
+     * Devolve o item a PENDENTE sem contar tentativa, com nova tentativa
+     * apos {@code delaySeconds} (ex.: circuito da API aberto).
+     */
+    public void deferred(BigDecimal idQueue, int delaySeconds, String reason) {
+        add(FastchannelConstants.QUEUE_STATUS_PENDENTE, idQueue, reason, 0, Math.max(1, delaySeconds));
+    }
+
+    /**
+     * @param attempt tentativa que falhou (ERRO), base do backoff
+     * @param delaySeconds atraso da nova tentativa (PENDENTE adiado)
+     */
+    private void add(String status, BigDecimal idQueue, String message, int attempt, int delaySeconds) {
+        if (idQueue == null) {
+            return;
+        }
+        boolean flushNow;
+        synchronized (this) {
+            if (pendingCount == 0) {
+                oldestPendingAt = System.currentTimeMillis();
+            }
+            pendingByStatus.computeIfAbsent(status, key -> new ArrayList<>()).add(new Outcome(idQueue, message, attempt, delaySeconds));
+            pendingCount++;
+            flushNow = pendingCount >= maxPending
+                    || System.currentTimeMillis() - oldestPendingAt >= maxAgeMs;
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Grava os desfechos acumulados.
+     *
+     * @return quantidade de itens gravados
+     */
+    public int flush() {
+        Map<String, List<Outcome>> snapshot;
+        synchronized (this) {
+            if (pendingCount == 0) {
+                return 0;
+            }
+            snapshot = new LinkedHashMap<>(pendingByStatus);
+            pendingByStatus.clear();
+            pendingCount = 0;
+        }
+        int written = 0;
+        for (Map.Entry<String, List<Outcome>> entry : snapshot.entrySet()) {
+            written += writer.write(entry.getKey(), entry.getValue());
+        }
+        return written;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    static final class Outcome {
+        final BigDecimal idQueue;
+        final String message;
+        final int attempt;
+        final int delaySeconds;
+
+        Outcome(BigDecimal idQueue, String message, int attempt, int delaySeconds) {
+            this.idQueue = idQueue;
+            this.message = message;
+            this.attempt = attempt;
+            this.delaySeconds = delaySeconds;
+        }
+    }
+}
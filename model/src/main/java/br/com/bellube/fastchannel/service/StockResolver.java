@@ -6,6 +6,12 @@ import br.com.sankhya.modelcore.util.EntityFacadeFactory;
 
 import java.math.BigDecimal;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +40,24 @@ public class StockResolver {
             + "AND E.CODLOCAL = :codLocal "
             + "AND P.ATIVO = 'S'";
 
+    private static final String SQL_MANY_SELECT = ""
+            + "SELECT E.CODPROD, SUM(E.ESTOQUE - E.RESERVADO) AS QTD "
+            + "FROM TGFEST E "
+            + "INNER JOIN TGFPRO P ON P.CODPROD = E.CODPROD ";
+
+    private static final String SQL_MANY_BRAND_JOIN = "INNER JOIN TGFMAR M ON M.CODIGO = P.CODMARCA ";
+
+    private static final String SQL_MANY_BRAND_FILTER = ""
+            + "AND M.AD_FAST = 'S' "
+            + "AND M.AD_FASTREF IN ('C','R') ";
+
+    private static final String SQL_PAGE_QTD = ""
+            + "(SELECT SUM(E.ESTOQUE - E.RESERVADO) FROM TGFEST E "
+            + "WHERE E.CODPROD = P.CODPROD AND E.CODEMP = :codEmp AND E.CODLOCAL = :codLocal) AS QTD ";
+
+    // SQL Server aceita ate 2100 parametros por comando
+    public static final int MAX_IDS_PER_QUERY = 1000;
+
     private static volatile Boolean supportsBrandFilter;
     private static volatile boolean loggedFallback;
 
@@ -65,6 +89,173 @@ public class StockResolver {
         return BigDecimal.ZERO;
     }
 
+    /**
+     * Estoque disponivel (ESTOQUE - RESERVADO) de varios produtos na mesma
+     * empresa/local, com uma consulta agrupada por bloco de ate
+     * {@value #MAX_IDS_PER_QUERY} produtos.
+     *
+     * Todo CODPROD consultado com sucesso aparece no mapa (zero quando nao ha
+     * saldo ou o produto nao passa no filtro). Produtos de um bloco cuja
+     * consulta falhou ficam fora do mapa: o chamador decide se usa
+     * {@link #resolve} ou adia.
+     */
+    public Map<Long, BigDecimal> resolveMany(Collection<? extends Number> codProds, BigDecimal codEmp, BigDecimal codLocal) {
+        Map<Long, BigDecimal> result = new HashMap<>();
+        if (codProds == null || codProds.isEmpty() || codEmp == null || codLocal == null) {
+            return result;
+        }
+
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(toLongs(codProds)));
+        JdbcWrapper jdbc;
+        try {
+            jdbc = EntityFacadeFactory.getCoreFacade().getJdbcWrapper();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao resolver estoque em lote", e);
+            return result;
+        }
+        boolean brandFilter = usesBrandFilter(jdbc);
+
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+            ResultSet rs = null;
+            try {
+                NativeSql sql = new NativeSql(jdbc);
+                sql.appendSql(buildManySql(brandFilter, chunk.size()));
+                sql.setNamedParameter("codEmp", codEmp);
+                sql.setNamedParameter("codLocal", codLocal);
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.setNamedParameter("p" + i, BigDecimal.valueOf(chunk.get(i)));
+                }
+
+                rs = sql.executeQuery();
+                Map<Long, BigDecimal> found = new HashMap<>();
+                while (rs.next()) {
+                    BigDecimal qtd = rs.getBigDecimal("QTD");
+                    found.put(rs.getLong("CODPROD"), qtd != null ? qtd : BigDecimal.ZERO);
+                }
+                for (Long id : chunk) {
+                    BigDecimal qtd = found.get(id);
+                    result.put(id, qtd != null ? qtd : BigDecimal.ZERO);
+                }
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Erro ao resolver estoque em lote (" + chunk.size() + " produtos)", e);
+            } finally {
+                closeQuietly(rs);
+            }
+        }
+        return result;
+    }
+
+    static String buildManySql(boolean brandFilter, int size) {
+        StringBuilder sql = new StringBuilder(SQL_MANY_SELECT);
+        if (brandFilter) {
+            sql.append(SQL_MANY_BRAND_JOIN);
+        }
+        sql.append("WHERE E.CODEMP = :codEmp ");
+        sql.append("AND E.CODLOCAL = :codLocal ");
+        sql.append("AND P.ATIVO = 'S' ");
+        if (brandFilter) {
+            sql.append(SQL_MANY_BRAND_FILTER);
+        }
+        sql.append("AND E.CODPROD IN (");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(":p").append(i);
+        }
+        sql.append(") ");
+        sql.append("GROUP BY E.CODPROD");
+        return sql.toString();
+    }
+
+    /**
+     * Le uma pagina do catalogo (CODPROD > afterCodProd, em ordem de CODPROD)
+     * ja com SKU e estoque disponivel, numa unica consulta. Paginacao por
+     * chave: cada pagina usa e libera a conexao, e a ultima chave lida serve
+     * de ponto de retomada.
+     *
+     * Produtos inativos ou fora do filtro de marca vem com quantidade zero.
+     * Sem as colunas de marca no schema o SKU vem nulo e o chamador resolve
+     * pelo de-para.
+     *
+     * @return pagina vazia quando nao ha mais produtos; null se a consulta falhou
+     */
+    public List<StockRow> readPage(BigDecimal codEmp, BigDecimal codLocal, BigDecimal afterCodProd, int limit) {
+        if (codEmp == null || codLocal == null) {
+            return null;
+        }
+        ResultSet rs = null;
+        try {
+            JdbcWrapper jdbc = EntityFacadeFactory.getCoreFacade().getJdbcWrapper();
+            boolean brandFilter = usesBrandFilter(jdbc);
+            NativeSql sql = new NativeSql(jdbc);
+            sql.appendSql(buildPageSql(brandFilter, limit));
+            sql.setNamedParameter("codEmp", codEmp);
+            sql.setNamedParameter("codLocal", codLocal);
+            sql.setNamedParameter("afterCodProd", afterCodProd != null ? afterCodProd : BigDecimal.valueOf(-1));
+
+            rs = sql.executeQuery();
+            List<StockRow> rows = new ArrayList<>(limit);
+            while (rs.next()) {
+                BigDecimal codProd = rs.getBigDecimal("CODPROD");
+                String adFast = brandFilter ? rs.getString("AD_FAST") : null;
+                String adFastRef = brandFilter ? rs.getString("AD_FASTREF") : null;
+                String sku = brandFilter
+                        ? DeparaService.computeSkuFromBrandRule(adFastRef, codProd, rs.getString("REFFORN"))
+                        : null;
+                rows.add(new StockRow(codProd, sku,
+                        availableQuantity(brandFilter, rs.getString("ATIVO"), adFast, adFastRef, rs.getBigDecimal("QTD"))));
+            }
+            return rows;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Erro ao ler pagina de estoque apos CODPROD " + afterCodProd, e);
+            return null;
+        } finally {
+            closeQuietly(rs);
+        }
+    }
+
+    static String buildPageSql(boolean brandFilter, int limit) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT TOP ").append(Math.max(1, limit)).append(" P.CODPROD, P.ATIVO, ");
+        if (brandFilter) {
+            sql.append("P.REFFORN, M.AD_FAST, M.AD_FASTREF, ");
+        }
+        sql.append(SQL_PAGE_QTD);
+        sql.append("FROM TGFPRO P ");
+        if (brandFilter) {
+            sql.append("LEFT JOIN TGFMAR M ON M.CODIGO = P.CODMARCA ");
+        }
+        sql.append("WHERE P.CODPROD > :afterCodProd ");
+        sql.append("ORDER BY P.CODPROD");
+        return sql.toString();
+    }
+
+    /**
+     * Mesmo criterio de {@link #resolve}: so produto ativo (e, com filtro de
+     * marca, marca integrada com AD_FASTREF C/R) tem saldo publicado.
+     */
+    static BigDecimal availableQuantity(boolean brandFilter, String ativo, String adFast, String adFastRef,
+                                        BigDecimal qtd) {
+        if (!"S".equalsIgnoreCase(ativo)) {
+            return BigDecimal.ZERO;
+        }
+        if (brandFilter && !("S".equalsIgnoreCase(adFast)
+                && ("C".equalsIgnoreCase(adFastRef) || "R".equalsIgnoreCase(adFastRef)))) {
+            return BigDecimal.ZERO;
+        }
+        return qtd != null ? qtd : BigDecimal.ZERO;
+    }
+
+    private static List<Long> toLongs(Collection<? extends Number> values) {
+        List<Long> ids = new ArrayList<>(values.size());
+        for (Number value : values) {
+            if (value != null) {
+                ids.add(value.longValue());
+            }
+        }
+        return ids;
+    }
+
     String getSql() {
         return SQL_WITH_BRAND_FILTER;
     }
@@ -76,6 +267,10 @@ public class StockResolver {
     }
 
     private String resolveSql(JdbcWrapper jdbc) {
+        return usesBrandFilter(jdbc) ? SQL_WITH_BRAND_FILTER : SQL_FALLBACK;
+    }
+
+    private boolean usesBrandFilter(JdbcWrapper jdbc) {
         if (supportsBrandFilter == null) {
             supportsBrandFilter = hasColumn(jdbc, "TGFMAR", "AD_FAST")
                     && hasColumn(jdbc, "TGFMAR", "AD_FASTREF")
@@ -85,7 +280,7 @@ public class StockResolver {
                 loggedFallback = true;
             }
         }
-        return supportsBrandFilter ? SQL_WITH_BRAND_FILTER : SQL_FALLBACK;
+        return supportsBrandFilter;
     }
 
     private boolean hasColumn(JdbcWrapper jdbc, String tableName, String columnName) {
@@ -108,4 +303,20 @@ public class StockResolver {
         }
         return false;
     }
+
+    public static final class StockRow {
+        private final BigDecimal codProd;
+        private final String sku;
+        private final BigDecimal quantity;
+
+        public StockRow(BigDecimal codProd, String sku, BigDecimal quantity) {
+            this.codProd = codProd;
+            this.sku = sku;
+            this.quantity = quantity;
+        }
+
+        public BigDecimal getCodProd() { return codProd; }
+        public String getSku() { return sku; }
+        public BigDecimal getQuantity() { return quantity; }
+    }
 }
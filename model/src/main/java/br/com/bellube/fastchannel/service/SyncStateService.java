@@ -0,0 +1,286 @@
+package br.com.bellube.fastchannel.service;
+
+import br.com.bellube.fastchannel.util.DBUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Estado persistido das sincronizacoes longas (AD_FCSYNCSTATE).
+ *
+ * Cada sincronizacao grava periodicamente a ultima chave concluida e os
+ * contadores. Uma execucao interrompida (queda do servidor, deploy) deixa
+ * STATUS = EXECUTANDO; a proxima execucao retoma a partir de ULTIMA_CHAVE
+ * em vez de recomecar do zero.
+ */
+public class SyncStateService {
+
+    private static final Logger log = Logger.getLogger(SyncStateService.class.getName());
+    private static SyncStateService instance;
+
+    public static final String STATUS_EXECUTANDO = "EXECUTANDO";
+    public static final String STATUS_CONCLUIDO = "CONCLUIDO";
+    public static final String STATUS_INTERROMPIDO = "INTERROMPIDO";
+
+    // Checkpoint mais recente que isso indica outra execucao em andamento
+    static final long ACTIVE_RUN_WINDOW_MS = 30 * 60_000L;
+
+    SyncStateService() {
+    }
+
+    public static synchronized SyncStateService getInstance() {
+        if (instance == null) {
+            instance = new SyncStateService();
+        }
+        return instance;
+    }
+
+    /**
+     * @return estado gravado ou null se a sincronizacao nunca rodou (ou a tabela nao existe)
+     */
+    public SyncState load(String name) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "SELECT NOME_SYNC, STATUS, ULTIMA_CHAVE, TOTAL, PROCESSADOS, ENVIADOS, FALHAS, " +
+                            "DH_INICIO, DH_ATUALIZACAO, DH_FIM FROM AD_FCSYNCSTATE WHERE NOME_SYNC = ?");
+            stmt.setString(1, name);
+            rs = stmt.executeQuery();
+            if (rs.next()) {
+                return readState(rs);
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Falha ao ler estado da sincronizacao " + name, e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+        return null;
+    }
+
+    /**
+     * Marca o inicio (ou a retomada) de uma execucao.
+     *
+     * @param resumed estado anterior que esta sendo retomado; null para comecar do zero
+     */
+    public void begin(String name, SyncState resumed, long total) {
+        long processed = resumed != null ? resumed.getProcessed() : 0L;
+        long sent = resumed != null ? resumed.getSent() : 0L;
+        long failed = resumed != null ? resumed.getFailed() : 0L;
+        Timestamp startedAt = resumed != null && resumed.getStartedAt() != null
+                ? resumed.getStartedAt() : new Timestamp(System.currentTimeMillis());
+        save(name, STATUS_EXECUTANDO, resumed != null ? resumed.getLastKey() : null,
+                total, processed, sent, failed, startedAt, null);
+    }
+
+    /**
+     * Grava o ponto de retomada: todos os registros ate lastKey foram concluidos.
+     */
+    public void checkpoint(String name, String lastKey, long processed, long sent, long failed) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "UPDATE AD_FCSYNCSTATE SET ULTIMA_CHAVE = ?, PROCESSADOS = ?, ENVIADOS = ?, FALHAS = ?, " +
+                            "DH_ATUALIZACAO = CURRENT_TIMESTAMP WHERE NOME_SYNC = ?");
+            stmt.setString(1, lastKey);
+            stmt.setLong(2, processed);
+            stmt.setLong(3, sent);
+            stmt.setLong(4, failed);
+            stmt.setString(5, name);
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Falha ao gravar checkpoint da sincronizacao " + name, e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+    }
+
+    /**
+     * Encerra a execucao com STATUS_CONCLUIDO ou STATUS_INTERROMPIDO.
+     */
+    public void finish(String name, String status, String lastKey, long processed, long sent, long failed) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "UPDATE AD_FCSYNCSTATE SET STATUS = ?, ULTIMA_CHAVE = ?, PROCESSADOS = ?, ENVIADOS = ?, " +
+                            "FALHAS = ?, DH_ATUALIZACAO = CURRENT_TIMESTAMP, DH_FIM = CURRENT_TIMESTAMP " +
+                            "WHERE NOME_SYNC = ?");
+            stmt.setString(1, status);
+            stmt.setString(2, lastKey);
+            stmt.setLong(3, processed);
+            stmt.setLong(4, sent);
+            stmt.setLong(5, failed);
+            stmt.setString(6, name);
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Falha ao finalizar estado da sincronizacao " + name, e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+    }
+
+    /**
+     * Grava a marca d'agua de uma sincronizacao incremental (execucao curta,
+     * sem retomada): a proxima execucao le apenas o que mudou depois dela.
+     */
+    public void saveWatermark(String name, String mark, long changed, long enqueued) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        save(name, STATUS_CONCLUIDO, mark, changed, changed, enqueued, 0L, now, now);
+    }
+
+    /**
+     * Estado de todas as sincronizacoes, para o dashboard.
+     */
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "SELECT NOME_SYNC, STATUS, ULTIMA_CHAVE, TOTAL, PROCESSADOS, ENVIADOS, FALHAS, " +
+                            "DH_INICIO, DH_ATUALIZACAO, DH_FIM FROM AD_FCSYNCSTATE ORDER BY NOME_SYNC");
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                list.add(readState(rs).toMap());
+            }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Falha ao listar estado das sincronizacoes", e);
+        } finally {
+            DBUtil.closeAll(rs, stmt, conn);
+        }
+        return list;
+    }
+
+    private void save(String name, String status, String lastKey, long total, long processed, long sent,
+                      long failed, Timestamp startedAt, Timestamp finishedAt) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = DBUtil.getConnection();
+            stmt = conn.prepareStatement(
+                    "MERGE AD_FCSYNCSTATE AS T " +
+                            "USING (SELECT ? AS NOME_SYNC) AS S ON T.NOME_SYNC = S.NOME_SYNC " +
+                            "WHEN MATCHED THEN UPDATE SET STATUS = ?, ULTIMA_CHAVE = ?, TOTAL = ?, PROCESSADOS = ?, " +
+                            "ENVIADOS = ?, FALHAS = ?, DH_INICIO = ?, DH_ATUALIZACAO = CURRENT_TIMESTAMP, DH_FIM = ? " +
+                            "WHEN NOT MATCHED THEN INSERT (NOME_SYNC, STATUS, ULTIMA_CHAVE, TOTAL, PROCESSADOS, " +
+                            "ENVIADOS, FALHAS, DH_INICIO, DH_ATUALIZACAO, DH_FIM) " +
+                            "VALUES (S.NOME_SYNC, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, ?);");
+            int i = 1;
+            stmt.setString(i++, name);
+            for (int pass = 0; pass < 2; pass++) {
+                stmt.setString(i++, status);
+                stmt.setString(i++, lastKey);
+                stmt.setLong(i++, total);
+                stmt.setLong(i++, processed);
+                stmt.setLong(i++, sent);
+                stmt.setLong(i++, failed);
+                stmt.setTimestamp(i++, startedAt);
+                stmt.setTimestamp(i++, finishedAt);
+            }
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Falha ao gravar estado da sincronizacao " + name, e);
+        } finally {
+            DBUtil.closeAll(null, stmt, conn);
+        }
+    }
+
+    private static SyncState readState(ResultSet rs) throws Exception {
+        return new SyncState(
+                rs.getString("NOME_SYNC"),
+                rs.getString("STATUS"),
+                rs.getString("ULTIMA_CHAVE"),
+                rs.getLong("TOTAL"),
+                rs.getLong("PROCESSADOS"),
+                rs.getLong("ENVIADOS"),
+                rs.getLong("FALHAS"),
+                rs.getTimestamp("DH_INICIO"),
+                rs.getTimestamp("DH_ATUALIZACAO"),
+                rs.getTimestamp("DH_FIM"));
+    }
+
+    public static final class SyncState {
+        private final String name;
+        private final String status;
+        private final String lastKey;
+        private final long total;
+        private final long processed;
+        private final long sent;
+        private final long failed;
+        private final Timestamp startedAt;
+        private final Timestamp updatedAt;
+        private final Timestamp finishedAt;
+
+        public SyncState(String name, String status, String lastKey, long total, long processed, long sent,
+                         long failed, Timestamp startedAt, Timestamp updatedAt, Timestamp finishedAt) {
+            this.name = name;
+            this.status = status;
+            this.lastKey = lastKey;
+            this.total = total;
+            this.processed = processed;
+            this.sent = sent;
+            this.failed = failed;
+            this.startedAt = startedAt;
+            this.updatedAt = updatedAt;
+            this.finishedAt = finishedAt;
+        }
+
+        public String getName() { return name; }
+        public String getStatus() { return status; }
+        public String getLastKey() { return lastKey; }
+        public long getTotal() { return total; }
+        public long getProcessed() { return processed; }
+        public long getSent() { return sent; }
+        public long getFailed() { return failed; }
+        public Timestamp getStartedAt() { return startedAt; }
+        public Timestamp getUpdatedAt() { return updatedAt; }
+        public Timestamp getFinishedAt() { return finishedAt; }
+
+        /**
+         * Execucao anterior nao terminou e deixou ponto de retomada.
+         */
+        public boolean isResumable() {
+            return !STATUS_CONCLUIDO.equals(status) && lastKey != null && !lastKey.trim().isEmpty();
+        }
+
+        /**
+         * Ha outra execucao gravando checkpoints neste momento (outro no ou thread).
+         */
+        public boolean isRunningElsewhere(long now) {
+            return STATUS_EXECUTANDO.equals(status) && updatedAt != null
+                    && now - updatedAt.getTime() < ACTIVE_RUN_WINDOW_MS;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("status", status);
+            map.put("lastKey", lastKey);
+            map.put("total", total);
+            map.put("processed", processed);
+            map.put("sent", sent);
+            map.put("failed", failed);
+            map.put("percent", total > 0 ? Math.min(100d, Math.round(processed * 1000d / total) / 10d) : 0d);
+            map.put("startedAt", startedAt);
+            map.put("updatedAt", updatedAt);
+            map.put("finishedAt", finishedAt);
+            return map;
+        }
+    }
+}
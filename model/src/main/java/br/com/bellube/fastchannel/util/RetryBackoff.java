@@ -0,0 +1,58 @@
+package br.com.bellube.fastchannel.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Calculo do atraso entre retentativas (backoff exponencial com jitter).
+ *
+ * O atraso dobra a cada tentativa a partir do valor base, limitado ao teto.
+ * Metade do valor e fixa e a outra metade e sorteada, espalhando no tempo
+ * itens que falharam juntos (ex.: indisponibilidade ou 429 da API).
+ *
+ * Para as esperas curtas dentro de uma chamada HTTP ha tambem o jitter
+ * "decorrelacionado": cada espera e sorteada entre o valor base e o triplo
+ * da anterior, limitada ao teto.
+ */
+public final class RetryBackoff {
+
+    private static final int MAX_SHIFT = 20;
+
+    private RetryBackoff() {
+    }
+
+    /**
+     * @param attempt numero da tentativa que falhou (1 = primeira falha)
+     * @param baseSeconds atraso da primeira retentativa
+     * @param maxSeconds teto do atraso
+     * @return atraso em segundos ate a proxima tentativa
+     */
+    public static int delaySeconds(int attempt, int baseSeconds, int maxSeconds) {
+        return delaySeconds(attempt, baseSeconds, maxSeconds, ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @param previousMs espera anterior (use o valor base na primeira)
+     * @return proxima espera em milissegundos, entre base e min(teto, 3x anterior)
+     */
+    public static long decorrelatedJitterMs(long previousMs, long baseMs, long capMs) {
+        return decorrelatedJitterMs(previousMs, baseMs, capMs, ThreadLocalRandom.current().nextDouble());
+    }
+
+    static long decorrelatedJitterMs(long previousMs, long baseMs, long capMs, double random) {
+        long base = Math.max(1L, baseMs);
+        long cap = Math.max(base, capMs);
+        long upper = Math.min(cap, Math.max(base, previousMs) * 3L);
+        double r = Math.min(1d, Math.max(0d, random));
+        return Math.min(cap, base + (long) ((upper - base) * r));
+    }
+
+    static int delaySeconds(int attempt, int baseSeconds, int maxSeconds, double random) {
+        long base = Math.max(1, baseSeconds);
+        long cap = Math.max(base, maxSeconds);
+        int shift = Math.min(MAX_SHIFT, Math.max(0, attempt - 1));
+        long exponential = Math.min(cap, base << shift);
+        long half = exponential / 2;
+        long jitter = (long) ((exponential - half) * Math.min(1d, Math.max(0d, random)));
+        return (int) Math.max(1L, half + jitter);
+    }
+}
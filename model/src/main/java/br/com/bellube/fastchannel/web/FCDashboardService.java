@@ -2,7 +2,13 @@ package br.com.bellube.fastchannel.web;
 
 import br.com.bellube.fastchannel.config.FastchannelConfig;
 import br.com.bellube.fastchannel.dto.OrderDTO;
+import br.com.bellube.fastchannel.http.AdaptiveThroughputController;
+import br.com.bellube.fastchannel.http.CircuitBreaker;
+import br.com.bellube.fastchannel.http.FastchannelAsyncExecutor;
+import br.com.bellube.fastchannel.http.FastchannelHttpTransport;
 import br.com.bellube.fastchannel.http.FastchannelOrdersClient;
+import br.com.bellube.fastchannel.http.FastchannelRateLimiter;
+import br.com.bellube.fastchannel.service.SyncStateService;
 import br.com.bellube.fastchannel.util.DBUtil;
 
 import java.sql.Connection;
@@ -52,6 +58,13 @@ public class FCDashboardService {
                     + countByStatus(conn, "AD_FCQUEUE", "STATUS", "ERRO_FATAL"));
             result.put("queue", queue);
 
+            // Lote/workers efetivos do outbox (ajuste adaptativo)
+            result.put("throughput", AdaptiveThroughputController.getInstance().snapshot());
+            result.put("httpTransport", FastchannelHttpTransport.getInstance().snapshot());
+            result.put("rateLimit", FastchannelRateLimiter.getInstance().snapshot());
+            result.put("asyncHttp", FastchannelAsyncExecutor.getInstance().snapshot());
+            result.put("circuits", CircuitBreaker.snapshotAll());
+
             // Orders stats
             Map<String, Object> orders = new HashMap<>();
             orders.put("today", countOrdersToday(conn));
@@ -88,6 +101,9 @@ public class FCDashboardService {
             sync.put("product", countSync24h(conn, "PRODUCT_SYNC"));
             result.put("sync", sync);
 
+            // Progresso/checkpoint das sincronizacoes longas (full sync)
+            result.put("syncJobs", SyncStateService.getInstance().snapshot());
+
             // Recent logs
             result.put("logs", getRecentLogs(conn, 10));
 
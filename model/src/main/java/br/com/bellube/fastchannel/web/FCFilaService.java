@@ -1,5 +1,8 @@
 package br.com.bellube.fastchannel.web;
 
+import br.com.bellube.fastchannel.job.OutboxProcessorJob;
+import br.com.bellube.fastchannel.service.PublishedStateCache;
+import br.com.bellube.fastchannel.service.QueueService;
 import br.com.bellube.fastchannel.util.DBUtil;
 
 import java.math.BigDecimal;
@@ -29,6 +32,10 @@ public class FCFilaService {
             result.put("processing", countByStatus(conn, "PROCESSANDO"));
             result.put("completed", countByStatus24h(conn, "ENVIADO"));
             result.put("error", countByStatus(conn, "ERRO") + countByStatus(conn, "ERRO_FATAL"));
+            result.put("superseded", countByStatus24h(conn, "SUBSTITUIDO"));
+            result.put("debounce", QueueService.getInstance().getDebounceCache().snapshot());
+            result.put("lanes", OutboxProcessorJob.getLastLaneReport());
+            result.put("published", PublishedStateCache.getInstance().snapshot());
 
         } catch (Exception e) {
             log.log(Level.SEVERE, "Erro ao carregar stats", e);
@@ -41,6 +48,23 @@ public class FCFilaService {
     }
 
     public Map<String, Object> list(Map<String, Object> params) {
+        return pagedQuery(params, "AD_FCQUEUE", false, "Erro ao listar fila");
+    }
+
+    /**
+     * Consulta paginada do historico (AD_FCQUEUE_HIST), separada da fila ativa.
+     */
+    public Map<String, Object> historico(Map<String, Object> params) {
+        return pagedQuery(params, "AD_FCQUEUE_HIST", true, "Erro ao consultar historico da fila");
+    }
+
+    /**
+     * Filtros, contagem e pagina comuns a fila ativa e ao historico.
+     *
+     * @param history true inclui as datas de processamento e arquivamento
+     */
+    private Map<String, Object> pagedQuery(Map<String, Object> params, String table, boolean history,
+                                           String errorMessage) {
         Map<String, Object> result = new HashMap<>();
         Connection conn = null;
         PreparedStatement countStmt = null;
@@ -66,6 +90,12 @@ public class FCFilaService {
                 queryParams.add(tipo);
             }
 
+            String sku = getString(params, "sku");
+            if (sku != null && !sku.isEmpty()) {
+                where.append(" AND ENTITY_KEY = ?");
+                queryParams.add(sku);
+            }
+
             String ref = getString(params, "ref");
             if (ref != null && !ref.isEmpty()) {
                 where.append(" AND (CAST(ENTITY_ID AS VARCHAR(100)) LIKE ? OR ENTITY_KEY LIKE ?)");
@@ -78,7 +108,7 @@ public class FCFilaService {
             int offset = (page - 1) * pageSize;
 
             // Count total
-            String countSql = "SELECT COUNT(*) AS CNT FROM AD_FCQUEUE WHERE " + where;
+            String countSql = "SELECT COUNT(*) AS CNT FROM " + table + " WHERE " + where;
             countStmt = conn.prepareStatement(countSql);
             setParameters(countStmt, queryParams);
             rsCount = countStmt.executeQuery();
@@ -88,8 +118,9 @@ public class FCFilaService {
             countStmt.close();
 
             // Get page - SQL Server syntax
-            String sql = "SELECT IDQUEUE, ENTITY_TYPE, ENTITY_ID, ENTITY_KEY, STATUS, RETRY_COUNT, DH_CRIACAO, LAST_ERROR " +
-                    "FROM AD_FCQUEUE WHERE " + where +
+            String sql = "SELECT IDQUEUE, ENTITY_TYPE, ENTITY_ID, ENTITY_KEY, STATUS, RETRY_COUNT, DH_CRIACAO, " +
+                    (history ? "DH_PROCESSAMENTO, DH_ARQUIVAMENTO, " : "") + "LAST_ERROR " +
+                    "FROM " + table + " WHERE " + where +
                     " ORDER BY DH_CRIACAO DESC " +
                     " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
 
@@ -100,7 +131,7 @@ public class FCFilaService {
 
             rs = stmt.executeQuery();
 
-            List<Map<String, Object>> fila = new ArrayList<>();
+            List<Map<String, Object>> items = new ArrayList<>();
             while (rs.next()) {
                 Map<String, Object> item = new HashMap<>();
                 item.put("id", rs.getBigDecimal("IDQUEUE"));
@@ -110,17 +141,21 @@ public class FCFilaService {
                 item.put("status", rs.getString("STATUS"));
                 item.put("tentativas", rs.getBigDecimal("RETRY_COUNT"));
                 item.put("dhCriacao", rs.getTimestamp("DH_CRIACAO"));
+                if (history) {
+                    item.put("dhProcessamento", rs.getTimestamp("DH_PROCESSAMENTO"));
+                    item.put("dhArquivamento", rs.getTimestamp("DH_ARQUIVAMENTO"));
+                }
                 item.put("ultimoErro", rs.getString("LAST_ERROR"));
-                fila.add(item);
+                items.add(item);
             }
 
-            result.put("items", fila);
+            result.put("items", items);
             result.put("total", total);
             result.put("page", page);
             result.put("pageSize", pageSize);
 
         } catch (Exception e) {
-            log.log(Level.SEVERE, "Erro ao listar fila", e);
+            log.log(Level.SEVERE, errorMessage, e);
             result.put("error", e.getMessage());
         } finally {
             DBUtil.closeAll(rs, stmt, conn);
@@ -150,7 +185,8 @@ public class FCFilaService {
 
             conn = DBUtil.getConnection();
 
-            String sql = "UPDATE AD_FCQUEUE SET STATUS = 'PENDENTE', RETRY_COUNT = 0, LAST_ERROR = NULL WHERE IDQUEUE = ?";
+            String sql = "UPDATE AD_FCQUEUE SET STATUS = 'PENDENTE', RETRY_COUNT = 0, LAST_ERROR = NULL, "
+                    + "NEXT_ATTEMPT_AT = NULL, LEASE_OWNER = NULL, LEASE_EXPIRES = NULL WHERE IDQUEUE = ?";
             stmt = conn.prepareStatement(sql);
 
             int count = 0;
@@ -0,0 +1,43 @@
+package br.com.bellube.fastchannel.web;
+
+import br.com.bellube.fastchannel.http.FastchannelHttpMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Service das metricas HTTP por endpoint Fastchannel.
+ */
+public class FCMetricsService {
+
+    private static final Logger log = Logger.getLogger(FCMetricsService.class.getName());
+
+    public Map<String, Object> snapshot(Map<String, Object> params) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.putAll(FastchannelHttpMetrics.getInstance().snapshot());
+            result.put("success", true);
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Erro ao obter metricas HTTP", e);
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+
+    public Map<String, Object> reset(Map<String, Object> params) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            FastchannelHttpMetrics.getInstance().reset();
+            result.put("success", true);
+            result.put("message", "Metricas HTTP zeradas");
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Erro ao zerar metricas HTTP", e);
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+}
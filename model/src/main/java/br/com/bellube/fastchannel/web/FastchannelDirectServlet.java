@@ -66,11 +66,16 @@ public class FastchannelDirectServlet extends HttpServlet {
         services.put("FCFilaSP.list", new ServiceInfo(FCFilaService.class, "list"));
         services.put("FCFilaSP.reprocessar", new ServiceInfo(FCFilaService.class, "reprocessar"));
         services.put("FCFilaSP.limparErros", new ServiceInfo(FCFilaService.class, "limparErros"));
+        services.put("FCFilaSP.historico", new ServiceInfo(FCFilaService.class, "historico"));
 
         // Logs
         services.put("FCLogsSP.list", new ServiceInfo(FCLogsService.class, "list"));
         services.put("FCLogsSP.limpar", new ServiceInfo(FCLogsService.class, "limpar"));
 
+        // Metricas HTTP
+        services.put("FCMetricsSP.snapshot", new ServiceInfo(FCMetricsService.class, "snapshot"));
+        services.put("FCMetricsSP.reset", new ServiceInfo(FCMetricsService.class, "reset"));
+
         // De-Para
         services.put("FCDeparaSP.listEmpresas", new ServiceInfo(FCDeparaService.class, "listEmpresas"));
         services.put("FCDeparaSP.listLocais", new ServiceInfo(FCDeparaService.class, "listLocais"));
@@ -0,0 +1,91 @@
+package br.com.bellube.fastchannel.auth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FastchannelTokenManagerRenewTest {
+
+    private static final long ONE_HOUR_MS = 3_600_000L;
+
+    @Test
+    public void cachedTokenIsServedWithoutFetching() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        FastchannelTokenManager manager = new FastchannelTokenManager(() ->
+                new FastchannelTokenManager.TokenSnapshot("t" + fetches.incrementAndGet(),
+                        System.currentTimeMillis() + ONE_HOUR_MS));
+
+        assertEquals("t1", manager.getValidToken());
+        assertEquals("t1", manager.getValidToken());
+        assertTrue(manager.hasValidToken());
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void tokenInsideRefreshWindowIsStillServed() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        // Dentro da janela de renovacao (5 min), mas longe de expirar
+        FastchannelTokenManager manager = new FastchannelTokenManager(() ->
+                new FastchannelTokenManager.TokenSnapshot("t" + fetches.incrementAndGet(),
+                        System.currentTimeMillis() + 120_000L));
+
+        assertEquals("t1", manager.getValidToken());
+        assertFalse(manager.hasValidToken());
+        assertEquals("t1", manager.getValidToken());
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void concurrent401sRenewOnce() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        FastchannelTokenManager manager = new FastchannelTokenManager(() -> {
+            int n = fetches.incrementAndGet();
+            if (n > 1) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return new FastchannelTokenManager.TokenSnapshot("t" + n, System.currentTimeMillis() + ONE_HOUR_MS);
+        });
+        String rejected = manager.getValidToken();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> renewed = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                renewed.add(pool.submit(() -> manager.forceRenew(rejected)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> future : renewed) {
+                assertEquals("t2", future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void invalidateForcesSynchronousRenewal() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        FastchannelTokenManager manager = new FastchannelTokenManager(() ->
+                new FastchannelTokenManager.TokenSnapshot("t" + fetches.incrementAndGet(),
+                        System.currentTimeMillis() + ONE_HOUR_MS));
+
+        manager.getValidToken();
+        manager.invalidate();
+        assertEquals(0, manager.getRemainingSeconds());
+        assertEquals("t2", manager.getValidToken());
+    }
+}
@@ -0,0 +1,78 @@
+package br.com.bellube.fastchannel.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveThroughputControllerTest {
+
+    @Test
+    public void healthyWindowGrowsAdditively() {
+        AdaptiveThroughputController controller = new AdaptiveThroughputController(10, 500, 50, 16, 4, 1000, 5);
+        feed(controller, 5, 200, 200);
+        assertEquals(60, controller.getBatchSize());
+        assertEquals(5, controller.getConcurrency());
+    }
+
+    @Test
+    public void throttlingHalvesBatchAndWorkers() {
+        AdaptiveThroughputController controller = new AdaptiveThroughputController(10, 500, 100, 16, 8, 1000, 5);
+        feed(controller, 4, 200, 200);
+        controller.recordResponse(200, 429);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @Test
+    public void highP95ReducesButRespectsMinimums() {
+        AdaptiveThroughputController controller = new AdaptiveThroughputController(10, 500, 12, 16, 1, 1000, 5);
+        feed(controller, 5, 5000, 200);
+        assertEquals(10, controller.getBatchSize());
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    @Test
+    public void growthIsCappedAtMaximums() {
+        AdaptiveThroughputController controller = new AdaptiveThroughputController(10, 55, 50, 2, 2, 1000, 1);
+        feed(controller, 3, 100, 200);
+        assertEquals(55, controller.getBatchSize());
+        assertEquals(2, controller.getConcurrency());
+    }
+
+    @Test
+    public void configuredOutboxLimitsAreTheCeiling() {
+        AdaptiveThroughputController controller =
+                AdaptiveThroughputController.withConfiguredCeiling(10, 500, 50, 16, 4, 1000, 2);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(4, controller.getConcurrency());
+
+        feed(controller, 6, 100, 200);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(4, controller.getConcurrency());
+
+        controller.recordResponse(100, 429);
+        controller.recordResponse(100, 200);
+        assertEquals(25, controller.getBatchSize());
+        assertEquals(2, controller.getConcurrency());
+    }
+
+    @Test
+    public void onlyOutboxWorkerThreadsAreSampled() {
+        assertFalse(AdaptiveThroughputController.isDispatchSampling());
+        AdaptiveThroughputController.beginDispatchSampling();
+        try {
+            assertTrue(AdaptiveThroughputController.isDispatchSampling());
+        } finally {
+            AdaptiveThroughputController.endDispatchSampling();
+        }
+        assertFalse(AdaptiveThroughputController.isDispatchSampling());
+    }
+
+    private void feed(AdaptiveThroughputController controller, int count, long latencyMs, int status) {
+        for (int i = 0; i < count; i++) {
+            controller.recordResponse(latencyMs, status);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package br.com.bellube.fastchannel.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("STOCK", 3, 30_000L);
+        breaker.recordFailure(0L);
+        breaker.recordFailure(0L);
+        breaker.recordSuccess();
+        breaker.recordFailure(0L);
+        breaker.recordFailure(0L);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure(1_000L);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(2_000L));
+        assertEquals(29_000L, breaker.remainingOpenMs(2_000L));
+    }
+
+    @Test
+    public void halfOpenAllowsSingleProbe() {
+        CircuitBreaker breaker = new CircuitBreaker("PRICE", 1, 10_000L);
+        breaker.recordFailure(0L);
+
+        assertTrue(breaker.allowRequest(10_000L));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(10_500L));
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(10_600L));
+    }
+
+    @Test
+    public void failedProbeReopens() {
+        CircuitBreaker breaker = new CircuitBreaker("ORDERS", 1, 10_000L);
+        breaker.recordFailure(0L);
+        assertTrue(breaker.allowRequest(10_000L));
+
+        breaker.recordFailure(10_100L);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(15_000L));
+        assertTrue(breaker.allowRequest(20_100L));
+    }
+
+    @Test
+    public void retryAfterAcceptsSecondsAndHttpDate() {
+        assertEquals(120_000L, FastchannelHttpClient.parseRetryAfterMs("120", 0L));
+        long now = java.time.ZonedDateTime.parse("Wed, 21 Oct 2026 07:28:00 GMT",
+                java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        assertEquals(30_000L, FastchannelHttpClient.parseRetryAfterMs("Wed, 21 Oct 2026 07:28:30 GMT", now));
+        assertEquals(-1L, FastchannelHttpClient.parseRetryAfterMs(null, now));
+        assertEquals(-1L, FastchannelHttpClient.parseRetryAfterMs("amanha", now));
+    }
+}
@@ -0,0 +1,429 @@
+package br.com.bellube.fastchannel.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulador em processo das APIs Fastchannel para testes de carga e vazao.
+ *
+ * Atende nos mesmos caminhos do gateway: token OAuth2, estoque, preco
+ * (incluindo batches) e pedidos (listagem, detalhe, status, notas,
+ * rastreio e sync). Latencia por distribuicao configuravel e injecao de
+ * 429/5xx com semente fixa, para numeros repetiveis.
+ *
+ * Para apontar o add-on para o simulador: -Dfc.api.root=http://127.0.0.1:PORTA
+ * (ou env FASTCHANNEL_API_ROOT). Standalone: java ... FastchannelApiSimulator [porta] [pedidos].
+ */
+public final class FastchannelApiSimulator implements AutoCloseable {
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * Distribuicao da latencia artificial das respostas.
+     */
+    public interface LatencyModel {
+        long nextMillis(Random random);
+
+        static LatencyModel none() {
+            return random -> 0L;
+        }
+
+        static LatencyModel fixed(long millis) {
+            return random -> millis;
+        }
+
+        static LatencyModel uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        /**
+         * Cauda longa tipica de gateway: mediana em medianMillis, sigma do log.
+         */
+        static LatencyModel logNormal(long medianMillis, double sigma) {
+            return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random;
+
+    private volatile LatencyModel latency = LatencyModel.none();
+    private volatile double throttleRate;
+    private volatile double serverErrorRate;
+    private volatile int retryAfterSeconds = 1;
+    private volatile int tokenExpiresInSeconds = 3599;
+    private volatile boolean requireToken = true;
+
+    private final AtomicInteger tokenSequence = new AtomicInteger(0);
+    private final Map<String, Boolean> issuedTokens = new ConcurrentHashMap<>();
+    private final Map<String, String> stock = new ConcurrentHashMap<>();
+    private final Map<String, String> prices = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> orders = new ConcurrentHashMap<>();
+    private final Map<String, String> orderUpdates = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    public FastchannelApiSimulator(int port, int threads, long seed) throws IOException {
+        this.random = new Random(seed);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "fc-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public static FastchannelApiSimulator start(int threads, long seed) throws IOException {
+        FastchannelApiSimulator simulator = new FastchannelApiSimulator(0, threads, seed);
+        simulator.server.start();
+        return simulator;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        int orderCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        FastchannelApiSimulator simulator = new FastchannelApiSimulator(port, 64, 42L);
+        simulator.latency(LatencyModel.logNormal(80, 0.5)).seedOrders(orderCount);
+        simulator.server.start();
+        System.out.println("Simulador Fastchannel em " + simulator.getRootUrl()
+                + " (use -Dfc.api.root=" + simulator.getRootUrl() + ")");
+        Thread.currentThread().join();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getRootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getAuthUrl() {
+        return getRootUrl() + "/oauth2/v2.0/token";
+    }
+
+    public String getStockApiBase() {
+        return getRootUrl() + "/stock-management/v1";
+    }
+
+    public String getPriceApiBase() {
+        return getRootUrl() + "/price-management/v1";
+    }
+
+    public String getOrderApiBase() {
+        return getRootUrl() + "/order-management/v1";
+    }
+
+    public FastchannelApiSimulator latency(LatencyModel model) {
+        this.latency = model != null ? model : LatencyModel.none();
+        return this;
+    }
+
+    /**
+     * Fracao das requisicoes (exceto token) respondidas com 429 + Retry-After.
+     */
+    public FastchannelApiSimulator throttleRate(double rate, int retryAfterSeconds) {
+        this.throttleRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Fracao das requisicoes (exceto token) respondidas com 503.
+     */
+    public FastchannelApiSimulator serverErrorRate(double rate) {
+        this.serverErrorRate = rate;
+        return this;
+    }
+
+    public FastchannelApiSimulator tokenExpiresIn(int seconds) {
+        this.tokenExpiresInSeconds = seconds;
+        return this;
+    }
+
+    public FastchannelApiSimulator requireToken(boolean require) {
+        this.requireToken = require;
+        return this;
+    }
+
+    /**
+     * Revoga os tokens emitidos: a proxima chamada de cada cliente recebe 401.
+     */
+    public void revokeTokens() {
+        issuedTokens.clear();
+    }
+
+    public FastchannelApiSimulator seedOrders(int count) {
+        for (int i = 1; i <= count; i++) {
+            String id = String.valueOf(100000 + i);
+            JsonObject order = new JsonObject();
+            order.addProperty("OrderId", id);
+            order.addProperty("OrderCode", "SIM-" + id);
+            order.addProperty("ResellerId", "1");
+            order.addProperty("StorageId", "1");
+            order.addProperty("CurrentStatusId", 201);
+            order.addProperty("CurrentStatusDescription", "Aprovado");
+            order.addProperty("CreatedAt", "2026-01-01T10:00:00");
+            order.addProperty("TotalOrderValue", 100 + i);
+            JsonObject customer = new JsonObject();
+            customer.addProperty("CustomerId", "C" + i);
+            customer.addProperty("FullName", "Cliente " + i);
+            customer.addProperty("CustomerFederalRegistry", String.format("%011d", i));
+            order.add("Customer", customer);
+            JsonArray items = new JsonArray();
+            JsonObject item = new JsonObject();
+            item.addProperty("ProductId", "SKU-" + (i % 50));
+            item.addProperty("Quantity", 1);
+            item.addProperty("SalePrice", 100 + i);
+            items.add(item);
+            order.add("Items", items);
+            orders.put(id, order);
+        }
+        return this;
+    }
+
+    public long getCount(String route) {
+        AtomicLong counter = counters.get(route);
+        return counter != null ? counter.get() : 0L;
+    }
+
+    public String getStoredStock(String sku) {
+        return stock.get(sku);
+    }
+
+    public String getStoredPrice(String sku) {
+        return prices.get(sku);
+    }
+
+    public String getOrderUpdate(String orderId, String kind) {
+        return orderUpdates.get(orderId + ":" + kind);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            URI uri = exchange.getRequestURI();
+            String path = uri.getPath();
+            String body = readBody(exchange.getRequestBody());
+
+            if (path.endsWith("/token")) {
+                count("POST token");
+                issueToken(exchange);
+                return;
+            }
+
+            sleep(latency.nextMillis(random));
+
+            if (requireToken && !isAuthorized(exchange)) {
+                count("401");
+                send(exchange, 401, "{\"Message\":\"Unauthorized\"}", null);
+                return;
+            }
+            double roll = random.nextDouble();
+            if (roll < throttleRate) {
+                count("429");
+                send(exchange, 429, "{\"Message\":\"Too Many Requests\"}", String.valueOf(retryAfterSeconds));
+                return;
+            }
+            if (roll < throttleRate + serverErrorRate) {
+                count("503");
+                send(exchange, 503, "{\"Message\":\"Service Unavailable\"}", null);
+                return;
+            }
+
+            route(exchange, method, path, uri.getRawQuery(), body);
+        } catch (Exception e) {
+            send(exchange, 500, "{\"Message\":\"" + e.getClass().getSimpleName() + "\"}", null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String path, String query, String body) throws IOException {
+        String[] segments = trimSegments(path);
+        // segments: [api, v1, recurso, id?, sub?]
+        if (segments.length < 3) {
+            send(exchange, 404, "{\"Message\":\"Not Found\"}", null);
+            return;
+        }
+        String resource = segments[2];
+        String id = segments.length > 3 ? segments[3] : null;
+        String sub = segments.length > 4 ? segments[4] : null;
+
+        if ("stock".equals(resource) && id != null) {
+            count(method + " /stock/{sku}");
+            if ("GET".equals(method)) {
+                String stored = stock.get(id);
+                send(exchange, stored != null ? 200 : 404, stored != null ? stored : "{}", null);
+            } else {
+                stock.put(id, body);
+                send(exchange, 200, "{\"Message\":\"OK\"}", null);
+            }
+            return;
+        }
+
+        if ("prices".equals(resource) && id != null) {
+            count(method + " /prices/{sku}" + (sub != null ? "/" + sub : ""));
+            if ("GET".equals(method)) {
+                String stored = prices.get(id);
+                send(exchange, stored != null ? 200 : 404, stored != null ? stored : "{}", null);
+            } else {
+                prices.put(sub != null ? id + ":" + sub : id, body);
+                send(exchange, 200, "{\"Message\":\"OK\"}", null);
+            }
+            return;
+        }
+
+        if ("orders".equals(resource)) {
+            if (id == null) {
+                count(method + " /orders");
+                sendOrderPage(exchange, query);
+                return;
+            }
+            if (sub == null) {
+                count(method + " /orders/{orderId}");
+                JsonObject order = orders.get(id);
+                if (order == null) {
+                    send(exchange, 404, "{\"Message\":\"Order not found\"}", null);
+                    return;
+                }
+                JsonObject wrapper = new JsonObject();
+                wrapper.add("Payload", order);
+                send(exchange, 200, gson.toJson(wrapper), null);
+                return;
+            }
+            count(method + " /orders/{orderId}/" + sub);
+            orderUpdates.put(id + ":" + sub, body);
+            JsonObject order = orders.get(id);
+            if (order != null && "sync".equals(sub)) {
+                order.addProperty("IsSynched", true);
+            }
+            send(exchange, 200, "{\"Message\":\"OK\"}", null);
+            return;
+        }
+
+        send(exchange, 404, "{\"Message\":\"Not Found\"}", null);
+    }
+
+    private void sendOrderPage(HttpExchange exchange, String query) throws IOException {
+        Map<String, String> params = parseQuery(query);
+        int page = Math.max(1, parseInt(params.get("PageNumber"), 1));
+        int pageSize = Math.max(1, parseInt(params.get("PageSize"), 50));
+        boolean onlyUnsynched = "false".equalsIgnoreCase(params.get("IsSynched"));
+
+        JsonArray all = new JsonArray();
+        orders.keySet().stream().sorted().forEach(key -> {
+            JsonObject order = orders.get(key);
+            boolean synched = order.has("IsSynched") && order.get("IsSynched").getAsBoolean();
+            if (!onlyUnsynched || !synched) {
+                all.add(order);
+            }
+        });
+
+        JsonArray payload = new JsonArray();
+        int from = (page - 1) * pageSize;
+        for (int i = from; i < Math.min(all.size(), from + pageSize); i++) {
+            payload.add(all.get(i));
+        }
+        JsonObject response = new JsonObject();
+        response.add("Payload", payload);
+        response.addProperty("TotalRecords", all.size());
+        response.addProperty("TotalPages", (all.size() + pageSize - 1) / pageSize);
+        send(exchange, 200, gson.toJson(response), null);
+    }
+
+    private void issueToken(HttpExchange exchange) throws IOException {
+        String token = "sim-" + tokenSequence.incrementAndGet();
+        issuedTokens.put(token, Boolean.TRUE);
+        JsonObject json = new JsonObject();
+        json.addProperty("token_type", "Bearer");
+        json.addProperty("expires_in", tokenExpiresInSeconds);
+        json.addProperty("access_token", token);
+        send(exchange, 200, gson.toJson(json), null);
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ")
+                && issuedTokens.containsKey(header.substring("Bearer ".length()).trim());
+    }
+
+    private void count(String route) {
+        counters.computeIfAbsent(route, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body, String retryAfter) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (retryAfter != null) {
+            exchange.getResponseHeaders().set("Retry-After", retryAfter);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static String readBody(InputStream stream) throws IOException {
+        return stream != null ? FastchannelHttpTransport.readFully(stream) : "";
+    }
+
+    private static String[] trimSegments(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new ConcurrentHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        try {
+            return value != null ? Integer.parseInt(value) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
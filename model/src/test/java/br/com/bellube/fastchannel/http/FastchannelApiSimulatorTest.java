@@ -0,0 +1,131 @@
+package br.com.bellube.fastchannel.http;
+
+import br.com.bellube.fastchannel.config.FastchannelConfig;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FastchannelApiSimulatorTest {
+
+    private final FastchannelHttpTransport transport = FastchannelHttpTransport.getInstance();
+
+    @Test
+    public void issuesTokensAndRejectsUnknownBearer() throws Exception {
+        try (FastchannelApiSimulator simulator = FastchannelApiSimulator.start(4, 1L)) {
+            String token = issueToken(simulator);
+
+            FastchannelHttpClient.HttpResult ok = transport.execute("PUT", simulator.getStockApiBase() + "/stock/SKU-1",
+                    bearer(token), "{\"Quantity\":5}", 2000, 2000);
+            assertEquals(200, ok.getStatusCode());
+            assertEquals("{\"Quantity\":5}", simulator.getStoredStock("SKU-1"));
+
+            FastchannelHttpClient.HttpResult denied = transport.execute("PUT", simulator.getStockApiBase() + "/stock/SKU-1",
+                    bearer("forjado"), "{}", 2000, 2000);
+            assertEquals(401, denied.getStatusCode());
+
+            simulator.revokeTokens();
+            assertEquals(401, transport.execute("GET", simulator.getStockApiBase() + "/stock/SKU-1",
+                    bearer(token), null, 2000, 2000).getStatusCode());
+        }
+    }
+
+    @Test
+    public void servesPagedOrdersToTheStreamingDecoder() throws Exception {
+        try (FastchannelApiSimulator simulator = FastchannelApiSimulator.start(4, 1L).seedOrders(120)) {
+            String token = issueToken(simulator);
+
+            FastchannelHttpClient.HttpResult result = transport.execute("GET",
+                    simulator.getOrderApiBase() + "/orders?PageNumber=3&PageSize=50", bearer(token), null, 2000, 2000,
+                    stream -> FastchannelOrdersClient.decodeOrderList(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+
+            FastchannelOrdersClient.OrderListResult page = result.getDecoded();
+            assertEquals(20, page.getOrders().size());
+            assertEquals(Integer.valueOf(120), page.getTotalRecords());
+            assertEquals(Integer.valueOf(3), page.getTotalPages());
+
+            FastchannelHttpClient.HttpResult detail = transport.execute("GET",
+                    simulator.getOrderApiBase() + "/orders/100007", bearer(token), null, 2000, 2000,
+                    stream -> FastchannelOrdersClient.decodeOrder(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+            assertEquals("Cliente 7", detail.<br.com.bellube.fastchannel.dto.OrderDTO>getDecoded().getCustomer().getName());
+
+            transport.execute("PUT", simulator.getOrderApiBase() + "/orders/100007/status", bearer(token),
+                    "{\"StatusId\":300}", 2000, 2000);
+            assertEquals("{\"StatusId\":300}", simulator.getOrderUpdate("100007", "status"));
+        }
+    }
+
+    @Test
+    public void invalidSuccessBodyIsADecodeFailureNotAnIoFailure() throws Exception {
+        try (FastchannelApiSimulator simulator = FastchannelApiSimulator.start(4, 1L)) {
+            String token = issueToken(simulator);
+            transport.execute("PUT", simulator.getStockApiBase() + "/stock/SKU-9", bearer(token),
+                    "{\"Quantity\":1}", 2000, 2000);
+            long ioFailures = (Long) transport.snapshot().get("ioFailures");
+
+            try {
+                transport.execute("GET", simulator.getStockApiBase() + "/stock/SKU-9", bearer(token), null, 2000, 2000,
+                        stream -> new Gson().fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), String[].class));
+                fail("corpo invalido deveria falhar");
+            } catch (ResponseDecodeException e) {
+                assertEquals(200, e.getStatusCode());
+            }
+            assertEquals(ioFailures, ((Long) transport.snapshot().get("ioFailures")).longValue());
+        }
+    }
+
+    @Test
+    public void injectsThrottlingWithRetryAfter() throws Exception {
+        try (FastchannelApiSimulator simulator = FastchannelApiSimulator.start(4, 1L).throttleRate(1.0, 2)) {
+            String token = issueToken(simulator);
+
+            FastchannelHttpClient.HttpResult result = transport.execute("GET",
+                    simulator.getPriceApiBase() + "/prices/SKU-1", bearer(token), null, 2000, 2000);
+
+            assertEquals(429, result.getStatusCode());
+            assertEquals("2", result.getRetryAfter());
+            assertEquals(1L, simulator.getCount("429"));
+        }
+    }
+
+    @Test
+    public void apiRootOverridePointsClientsAtTheSimulator() throws Exception {
+        try (FastchannelApiSimulator simulator = FastchannelApiSimulator.start(1, 1L)) {
+            System.setProperty("fastchannel.api.root", simulator.getRootUrl() + "/");
+            try {
+                FastchannelConfig config = FastchannelConfig.getInstance();
+                assertEquals(simulator.getStockApiBase(), config.getStockApiBase());
+                assertEquals(simulator.getPriceApiBase(), config.getPriceApiBase());
+                assertEquals(simulator.getOrderApiBase(), config.getOrderApiBase());
+                assertEquals(simulator.getAuthUrl(), config.getAuthUrl());
+            } finally {
+                System.clearProperty("fastchannel.api.root");
+            }
+        }
+    }
+
+    private String issueToken(FastchannelApiSimulator simulator) throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/x-www-form-urlencoded");
+        FastchannelHttpClient.HttpResult result = transport.execute("POST", simulator.getAuthUrl(), headers,
+                "grant_type=client_credentials&client_id=sim&client_secret=sim&scope=sim", 2000, 2000);
+        assertEquals(200, result.getStatusCode());
+        assertTrue(result.getBody().contains("\"access_token\":\"sim-"));
+        String body = result.getBody();
+        int start = body.indexOf("sim-");
+        return body.substring(start, body.indexOf('"', start));
+    }
+
+    private static Map<String, String> bearer(String token) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer " + token);
+        return headers;
+    }
+}
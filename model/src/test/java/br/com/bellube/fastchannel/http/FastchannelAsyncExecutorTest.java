@@ -0,0 +1,54 @@
+package br.com.bellube.fastchannel.http;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FastchannelAsyncExecutorTest {
+
+    @Test
+    public void neverRunsMoreThanTheInFlightLimit() throws Exception {
+        FastchannelAsyncExecutor executor = new FastchannelAsyncExecutor(2, false);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger peak = new AtomicInteger(0);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            futures.add(executor.submit(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return value;
+            }));
+        }
+        int sum = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            sum += future.get();
+        }
+        assertEquals(45, sum);
+        assertTrue(peak.get() <= 2);
+    }
+
+    @Test
+    public void failureCompletesFutureExceptionally() throws Exception {
+        FastchannelAsyncExecutor executor = new FastchannelAsyncExecutor(1, false);
+        CompletableFuture<Object> future = executor.submit(() -> {
+            throw new Exception("HTTP 500");
+        });
+        try {
+            future.get();
+            fail("esperava falha");
+        } catch (ExecutionException e) {
+            assertEquals("HTTP 500", e.getCause().getMessage());
+        }
+        assertEquals(0, executor.snapshot().get("inFlight"));
+    }
+}
@@ -0,0 +1,88 @@
+package br.com.bellube.fastchannel.http;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastchannelHttpMetricsTest {
+
+    @Test
+    public void reducesUrlsToEndpointTemplates() {
+        assertEquals("/stock/{sku}", FastchannelHttpMetrics.endpointTemplate(
+                "https://api.commerce.fastchannel.com/stock-management/v1/stock/ABC-123"));
+        assertEquals("/prices/{sku}/batches", FastchannelHttpMetrics.endpointTemplate(
+                "https://api.commerce.fastchannel.com/price-management/v1/prices/987/batches"));
+        assertEquals("/orders", FastchannelHttpMetrics.endpointTemplate(
+                "https://api.commerce.fastchannel.com/order-management/v1/orders?PageNumber=1&PageSize=50"));
+        assertEquals("/orders/{orderId}/status", FastchannelHttpMetrics.endpointTemplate(
+                "https://host/order-management/v1/orders/55012/status"));
+        assertEquals("/{id}/oauth2/v2.0/token", FastchannelHttpMetrics.endpointTemplate(
+                "https://login.microsoftonline.com/3f1c2a9e-5b7d-4e21-9c0a-7d8e6f5a4b3c/oauth2/v2.0/token"));
+    }
+
+    @Test
+    public void aggregatesStatusRetriesAndBytesPerEndpoint() {
+        FastchannelHttpMetrics metrics = new FastchannelHttpMetrics();
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        metrics.recordResponse("PUT", "https://h/stock-management/v1/stock/A", 200, 10 * ms, 100, 20);
+        metrics.recordResponse("PUT", "https://h/stock-management/v1/stock/B", 429, 5 * ms, 100, 0);
+        metrics.recordRetry("PUT", "https://h/stock-management/v1/stock/B");
+        metrics.recordResponse("PUT", "https://h/stock-management/v1/stock/B", 503, 7 * ms, 100, 0);
+        metrics.recordIoError("GET", "https://h/stock-management/v1/stock/C", 30 * ms, 0);
+
+        List<Map<String, Object>> endpoints = endpoints(metrics.snapshot());
+        assertEquals(2, endpoints.size());
+        Map<String, Object> get = endpoints.get(0);
+        Map<String, Object> put = endpoints.get(1);
+        assertEquals("GET /stock/{sku}", get.get("endpoint"));
+        assertEquals(1L, get.get("ioErrors"));
+        assertEquals("PUT /stock/{sku}", put.get("endpoint"));
+        assertEquals(3L, put.get("requests"));
+        assertEquals(1L, put.get("retries"));
+        assertEquals(1L, put.get("status2xx"));
+        assertEquals(1L, put.get("status429"));
+        assertEquals(1L, put.get("status5xx"));
+        assertEquals(300L, put.get("requestBytes"));
+        assertEquals(20L, put.get("responseBytes"));
+
+        metrics.reset();
+        assertTrue(endpoints(metrics.snapshot()).isEmpty());
+    }
+
+    @Test
+    public void histogramPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        long p50 = histogram.percentileMicros(50);
+        long p99 = histogram.percentileMicros(99);
+        assertTrue("p50=" + p50, p50 >= 5_000 && p50 <= 5_000 * 107 / 100);
+        assertTrue("p99=" + p99, p99 >= 9_900 && p99 <= 10_000);
+        assertEquals(10_000L, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void bucketBoundsCoverEveryValue() {
+        long[] samples = {0, 1, 15, 16, 17, 31, 32, 1_000, 123_456, 1L << 31, (1L << 33) - 1};
+        for (long value : samples) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue("value=" + value, LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue("value=" + value, LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> endpoints(Map<String, Object> snapshot) {
+        return (List<Map<String, Object>>) snapshot.get("endpoints");
+    }
+}
@@ -0,0 +1,79 @@
+package br.com.bellube.fastchannel.http;
+
+import br.com.bellube.fastchannel.dto.OrderDTO;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FastchannelOrdersClientDecodeTest {
+
+    @Test
+    public void decodesPagedListIncrementally() throws Exception {
+        String body = "\uFEFF {\"Message\":null,\"Payload\":["
+                + "{\"OrderId\":\"A1\",\"CurrentStatusId\":201,\"Extra\":{\"x\":[1,2]}},"
+                + "null,"
+                + "{\"OrderId\":\"A2\",\"CurrentStatusId\":300}"
+                + "],\"TotalRecords\":42,\"TotalPages\":\"3\"}";
+
+        FastchannelOrdersClient.OrderListResult result =
+                FastchannelOrdersClient.decodeOrderList(new StringReader(body));
+
+        assertEquals(2, result.getOrders().size());
+        assertEquals("A1", result.getOrders().get(0).getOrderId());
+        assertEquals(300, result.getOrders().get(1).getStatus());
+        assertEquals(Integer.valueOf(42), result.getTotalRecords());
+        assertEquals(Integer.valueOf(3), result.getTotalPages());
+    }
+
+    @Test
+    public void decodesBareArrayAndEmptyBody() throws Exception {
+        FastchannelOrdersClient.OrderListResult array =
+                FastchannelOrdersClient.decodeOrderList(new StringReader("[{\"OrderId\":\"B1\"}]"));
+        assertEquals(1, array.getOrders().size());
+        assertNull(array.getTotalPages());
+
+        FastchannelOrdersClient.OrderListResult empty =
+                FastchannelOrdersClient.decodeOrderList(new StringReader("  \n"));
+        assertTrue(empty.getOrders().isEmpty());
+    }
+
+    @Test
+    public void fallsBackToXmlList() throws Exception {
+        String xml = "<Response><Payload><OrderSummary><OrderId>X9</OrderId>"
+                + "<CurrentStatusId>201</CurrentStatusId></OrderSummary></Payload>"
+                + "<TotalRecords>1</TotalRecords><TotalPages>1</TotalPages></Response>";
+
+        FastchannelOrdersClient.OrderListResult result =
+                FastchannelOrdersClient.decodeOrderList(new StringReader(xml));
+
+        assertEquals(1, result.getOrders().size());
+        assertEquals("X9", result.getOrders().get(0).getOrderId());
+        assertEquals(Integer.valueOf(1), result.getTotalPages());
+    }
+
+    @Test
+    public void decodesSingleOrderFromPayloadWrapper() throws Exception {
+        String body = "{\"Payload\":{\"OrderId\":\"C7\",\"Customer\":{\"FullName\":\"Maria\","
+                + "\"CustomerFederalRegistry\":\"12345678900\"}}}";
+
+        OrderDTO order = FastchannelOrdersClient.decodeOrder(new StringReader(body));
+
+        assertEquals("C7", order.getOrderId());
+        assertEquals("Maria", order.getCustomer().getName());
+        assertEquals("12345678900", order.getCustomer().getCpfCnpj());
+    }
+
+    @Test
+    public void readFullyKeepsLineBreaks() throws Exception {
+        String body = "linha 1\nlinha 2\r\nlinha 3";
+        String read = FastchannelHttpTransport.readFully(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(body, read);
+    }
+}
@@ -0,0 +1,57 @@
+package br.com.bellube.fastchannel.http;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastchannelRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void burstIsLimitedToTenSecondsOfQuota() {
+        FastchannelRateLimiter.TokenBucket bucket = new FastchannelRateLimiter.TokenBucket(60, 0L);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryAcquire(0L));
+        }
+        assertFalse(bucket.tryAcquire(0L));
+        assertTrue(bucket.tryAcquire(SECOND));
+    }
+
+    @Test
+    public void reservationsAreServedInArrivalOrder() {
+        FastchannelRateLimiter.TokenBucket bucket = new FastchannelRateLimiter.TokenBucket(60, 0L);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0L, bucket.reserve(0L));
+        }
+        assertEquals(SECOND, bucket.reserve(0L));
+        assertEquals(2 * SECOND, bucket.reserve(0L));
+        assertEquals(3 * SECOND, bucket.waitNanos(0L));
+    }
+
+    @Test
+    public void refillNeverExceedsCapacity() {
+        FastchannelRateLimiter.TokenBucket bucket = new FastchannelRateLimiter.TokenBucket(120, 0L);
+        bucket.tryAcquire(0L);
+        int granted = 0;
+        while (bucket.tryAcquire(TimeUnit.MINUTES.toNanos(5))) {
+            granted++;
+        }
+        assertEquals(20, granted);
+    }
+
+    @Test
+    public void bucketsAreSeparatedByFamilyAndKey() {
+        String stock = FastchannelRateLimiter.bucketKey(FastchannelRateLimiter.ApiFamily.STOCK, "abc-123456");
+        String price = FastchannelRateLimiter.bucketKey(FastchannelRateLimiter.ApiFamily.PRICE, "abc-123456");
+        String otherKey = FastchannelRateLimiter.bucketKey(FastchannelRateLimiter.ApiFamily.STOCK, "xyz-999999");
+        assertNotEquals(stock, price);
+        assertNotEquals(stock, otherKey);
+        assertFalse(stock.contains("abc-123456"));
+    }
+}
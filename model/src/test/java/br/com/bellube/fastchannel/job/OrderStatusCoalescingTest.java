@@ -0,0 +1,62 @@
+package br.com.bellube.fastchannel.job;
+
+import br.com.bellube.fastchannel.dto.QueueItemDTO;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OrderStatusCoalescingTest {
+
+    @Test
+    public void keepsOnlyLatestTransitionPerOrder() {
+        QueueItemDTO approved = item(1, "PEDIDO_STATUS", "FC-1", 1000L);
+        QueueItemDTO invoiced = item(2, "PEDIDO_STATUS", "FC-1", 2000L);
+        QueueItemDTO otherOrder = item(3, "PEDIDO_STATUS", "FC-2", 1500L);
+        QueueItemDTO stock = item(4, "ESTOQUE", "SKU-1", 500L);
+
+        List<QueueItemDTO> superseded = new ArrayList<>();
+        List<QueueItemDTO> kept = OutboxProcessorJob.coalesceOrderStatus(
+                Arrays.asList(approved, stock, invoiced, otherOrder), superseded);
+
+        assertEquals(Arrays.asList(stock, invoiced, otherOrder), kept);
+        assertEquals(1, superseded.size());
+        assertSame(approved, superseded.get(0));
+    }
+
+    @Test
+    public void usesQueueIdWhenCreatedAtTies() {
+        QueueItemDTO first = item(10, "PEDIDO_STATUS", "FC-1", 1000L);
+        QueueItemDTO second = item(11, "PEDIDO_STATUS", "FC-1", 1000L);
+
+        List<QueueItemDTO> superseded = new ArrayList<>();
+        List<QueueItemDTO> kept = OutboxProcessorJob.coalesceOrderStatus(Arrays.asList(second, first), superseded);
+
+        assertEquals(Arrays.asList(second), kept);
+        assertSame(first, superseded.get(0));
+    }
+
+    @Test
+    public void parsesQueuedPayload() {
+        OutboxProcessorJob.OrderStatusPayload payload = OutboxProcessorJob.parseOrderStatusPayload("[\"FC-1\",300]");
+        assertEquals("FC-1", payload.orderId);
+        assertEquals(300, payload.status);
+        assertNull(OutboxProcessorJob.parseOrderStatusPayload("[\"FC-1\"]"));
+        assertNull(OutboxProcessorJob.parseOrderStatusPayload(null));
+    }
+
+    private static QueueItemDTO item(long id, String type, String key, long createdAt) {
+        QueueItemDTO item = new QueueItemDTO(type, "UPDATE", BigDecimal.ONE);
+        item.setIdQueue(BigDecimal.valueOf(id));
+        item.setEntityKey(key);
+        item.setCreatedAt(new Timestamp(createdAt));
+        return item;
+    }
+}
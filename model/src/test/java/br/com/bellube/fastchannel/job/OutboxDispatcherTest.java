@@ -0,0 +1,101 @@
+package br.com.bellube.fastchannel.job;
+
+import br.com.bellube.fastchannel.config.FastchannelConstants;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxDispatcherTest {
+
+    @Test
+    public void respectsConcurrencyCapPerEntityType() throws Exception {
+        OutboxDispatcher dispatcher = new OutboxDispatcher(4, 2);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxObserved = new AtomicInteger(0);
+        AtomicInteger done = new AtomicInteger(0);
+        try {
+            for (int i = 0; i < 10; i++) {
+                dispatcher.submit("ESTOQUE", () -> {
+                    int now = running.incrementAndGet();
+                    maxObserved.accumulateAndGet(now, Math::max);
+                    sleepQuietly(20);
+                    running.decrementAndGet();
+                    done.incrementAndGet();
+                });
+            }
+            assertTrue(dispatcher.awaitCompletion(5000));
+        } finally {
+            dispatcher.shutdown();
+        }
+        assertEquals(10, done.get());
+        assertTrue(maxObserved.get() <= 2);
+    }
+
+    @Test
+    public void saturatedTypeDoesNotBlockOtherTypes() throws Exception {
+        OutboxDispatcher dispatcher = new OutboxDispatcher(3, 1);
+        AtomicInteger priceDone = new AtomicInteger(0);
+        try {
+            for (int i = 0; i < 5; i++) {
+                dispatcher.submit("ESTOQUE", () -> sleepQuietly(100));
+            }
+            dispatcher.submit("PRECO", priceDone::incrementAndGet);
+            Thread.sleep(50);
+            assertEquals(1, priceDone.get());
+            assertTrue(dispatcher.awaitCompletion(5000));
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownNowDropsWaitingTasksAndInterruptsWorkers() throws Exception {
+        OutboxDispatcher dispatcher = new OutboxDispatcher(2, 1);
+        AtomicInteger started = new AtomicInteger(0);
+        AtomicInteger interrupted = new AtomicInteger(0);
+        CountDownLatch running = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            dispatcher.submit("ESTOQUE", () -> {
+                started.incrementAndGet();
+                running.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+            });
+        }
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+        assertFalse(dispatcher.awaitCompletion(50));
+
+        assertEquals(3, dispatcher.shutdownNow());
+        assertTrue(dispatcher.awaitTermination(2000));
+        assertEquals(1, started.get());
+        assertEquals(1, interrupted.get());
+        assertTrue(dispatcher.awaitCompletion(0));
+    }
+
+    @Test
+    public void leaseIsRenewedWellBeforeItExpires() {
+        int[] leases = {1, 30, FastchannelConstants.DEFAULT_QUEUE_LEASE_SECONDS, 3600};
+        for (int lease : leases) {
+            long interval = OutboxProcessorJob.leaseRenewalIntervalMs(lease);
+            assertTrue(interval > 0);
+            assertTrue("lease " + lease, interval * 2 < lease * 1000L);
+        }
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
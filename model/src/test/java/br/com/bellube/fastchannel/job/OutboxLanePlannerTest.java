@@ -0,0 +1,92 @@
+package br.com.bellube.fastchannel.job;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxLanePlannerTest {
+
+    @Test
+    public void splitsBatchProportionallyToWeights() {
+        Map<String, Integer> weights = weights();
+        List<String> order = Arrays.asList("PRECO", "ESTOQUE", "PRODUTO");
+        Map<String, Integer> quotas = OutboxLanePlanner.computeQuotas(weights, order, 60);
+        assertEquals(Integer.valueOf(30), quotas.get("PRECO"));
+        assertEquals(Integer.valueOf(20), quotas.get("ESTOQUE"));
+        assertEquals(Integer.valueOf(10), quotas.get("PRODUTO"));
+    }
+
+    @Test
+    public void everyLaneGetsAtLeastOneAndTotalMatchesBatch() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("ESTOQUE", 100);
+        weights.put("PRECO", 1);
+        weights.put("PRODUTO", 1);
+        Map<String, Integer> quotas = OutboxLanePlanner.computeQuotas(weights,
+                Arrays.asList("ESTOQUE", "PRECO", "PRODUTO"), 5);
+        int total = 0;
+        for (int quota : quotas.values()) {
+            assertTrue(quota >= 1);
+            total += quota;
+        }
+        assertEquals(5, total);
+    }
+
+    @Test
+    public void smallBatchFollowsRotationOrder() {
+        Map<String, Integer> quotas = OutboxLanePlanner.computeQuotas(weights(),
+                Arrays.asList("PRODUTO", "PRECO", "ESTOQUE"), 2);
+        assertEquals(Integer.valueOf(1), quotas.get("PRODUTO"));
+        assertEquals(Integer.valueOf(1), quotas.get("PRECO"));
+        assertEquals(Integer.valueOf(0), quotas.get("ESTOQUE"));
+    }
+
+    @Test
+    public void unlistedQueueTypesGetDefaultWeight() {
+        Map<String, Integer> configured = new LinkedHashMap<>();
+        configured.put("PRECO", 5);
+        Map<String, Integer> complete = OutboxLanePlanner.withDefaultLanes(configured,
+                OutboxLanePlanner.QUEUE_ENTITY_TYPES);
+
+        assertEquals(Integer.valueOf(5), complete.get("PRECO"));
+        assertEquals(Integer.valueOf(1), complete.get("PEDIDO_STATUS"));
+        assertEquals(Integer.valueOf(1), complete.get("ESTOQUE"));
+        assertEquals(Integer.valueOf(1), complete.get("PRODUTO"));
+        assertEquals(1, configured.size());
+
+        Map<String, Integer> quotas = OutboxLanePlanner.computeQuotas(complete,
+                OutboxLanePlanner.rotatedLanes(complete), 16);
+        for (String type : OutboxLanePlanner.QUEUE_ENTITY_TYPES) {
+            assertTrue(type, quotas.get(type) >= 1);
+        }
+    }
+
+    @Test
+    public void deferredItemsAreNotCountedAsFailures() {
+        OutboxLanePlanner.LaneStats stats = new OutboxLanePlanner.LaneStats(2);
+        stats.addClaimed(3);
+        stats.record(true, 100L, 0L);
+        stats.recordDeferred();
+        stats.recordDeferred();
+
+        Map<String, Object> map = stats.toMap();
+        assertEquals(1, map.get("succeeded"));
+        assertEquals(0, map.get("failed"));
+        assertEquals(2, map.get("deferred"));
+        assertEquals(100L, map.get("avgProcessingMs"));
+    }
+
+    private Map<String, Integer> weights() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("PRECO", 3);
+        weights.put("ESTOQUE", 2);
+        weights.put("PRODUTO", 1);
+        return weights;
+    }
+}
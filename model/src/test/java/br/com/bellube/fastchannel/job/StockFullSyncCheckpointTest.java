@@ -0,0 +1,45 @@
+package br.com.bellube.fastchannel.job;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StockFullSyncCheckpointTest {
+
+    @Test
+    public void checkpointWaitsForEarlierPages() {
+        StockFullSyncJob.CheckpointTracker tracker = new StockFullSyncJob.CheckpointTracker("10");
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        tracker.add("200", first);
+        tracker.add("400", second);
+
+        // Segunda pagina terminou antes da primeira: checkpoint nao pode pular
+        second.complete(null);
+        assertNull(tracker.advance());
+        assertEquals("10", tracker.getCompletedKey());
+
+        first.complete(null);
+        assertEquals("400", tracker.advance());
+        assertEquals(0, tracker.pendingPages());
+        assertNull(tracker.advance());
+    }
+
+    @Test
+    public void failedSendsStillAdvanceAndAwaitDrains() {
+        StockFullSyncJob.CheckpointTracker tracker = new StockFullSyncJob.CheckpointTracker(null);
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("500"));
+        tracker.add("50", failed);
+        tracker.add("90", CompletableFuture.completedFuture(null));
+
+        assertEquals("90", tracker.advance());
+
+        tracker.add("120", CompletableFuture.runAsync(() -> { }));
+        assertEquals("120", tracker.awaitAll());
+        assertEquals(0, tracker.pendingPages());
+    }
+}
@@ -0,0 +1,86 @@
+package br.com.bellube.fastchannel.job;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StockIncrementalSyncJobTest {
+
+    @Test
+    public void rowVersionQueryIsBoundedByMinActiveRowVersion() {
+        assertTrue(StockIncrementalSyncJob.buildBoundsSql(StockIncrementalSyncJob.Mode.ROWVERSION)
+                .contains("MIN_ACTIVE_ROWVERSION()"));
+
+        String sql = StockIncrementalSyncJob.buildChangedSql(StockIncrementalSyncJob.Mode.ROWVERSION, "VERSAO");
+        assertTrue(sql.contains("E.VERSAO >= CONVERT(BINARY(8), ?)"));
+        assertTrue(sql.contains("E.VERSAO < CONVERT(BINARY(8), ?)"));
+        assertTrue(sql.contains("E.CODEMP = ? AND E.CODLOCAL = ?"));
+    }
+
+    @Test
+    public void changeTrackingAndDtAlterQueries() {
+        String ct = StockIncrementalSyncJob.buildChangedSql(StockIncrementalSyncJob.Mode.CHANGE_TRACKING, null);
+        assertTrue(ct.contains("CHANGETABLE(CHANGES TGFEST, ?)"));
+        assertTrue(ct.endsWith("CT.SYS_CHANGE_VERSION <= ?"));
+        assertTrue(StockIncrementalSyncJob.buildBoundsSql(StockIncrementalSyncJob.Mode.CHANGE_TRACKING)
+                .contains("CHANGE_TRACKING_MIN_VALID_VERSION"));
+
+        String dt = StockIncrementalSyncJob.buildChangedSql(StockIncrementalSyncJob.Mode.DTALTER, null);
+        assertTrue(dt.contains("E.DTALTER > ? AND E.DTALTER <= ?"));
+    }
+
+    @Test
+    public void markIsTiedToItsMode() {
+        String mark = StockIncrementalSyncJob.formatMark(StockIncrementalSyncJob.Mode.ROWVERSION, 123456L);
+        assertEquals("ROWVERSION:123456", mark);
+        assertEquals(Long.valueOf(123456L),
+                StockIncrementalSyncJob.parseMark(mark, StockIncrementalSyncJob.Mode.ROWVERSION));
+        // Troca de modo (ex.: rowversion removida) recomeca a marca
+        assertNull(StockIncrementalSyncJob.parseMark(mark, StockIncrementalSyncJob.Mode.DTALTER));
+        assertNull(StockIncrementalSyncJob.parseMark("DTALTER:abc", StockIncrementalSyncJob.Mode.DTALTER));
+        assertNull(StockIncrementalSyncJob.parseMark(null, StockIncrementalSyncJob.Mode.DTALTER));
+    }
+
+    @Test
+    public void rowVersionColumnMustBePlainIdentifier() {
+        assertTrue(StockIncrementalSyncJob.isSafeIdentifier("ROW_VER1"));
+        assertFalse(StockIncrementalSyncJob.isSafeIdentifier("X; DROP TABLE Y"));
+        assertFalse(StockIncrementalSyncJob.isSafeIdentifier(null));
+    }
+
+    @Test
+    public void firstRunOnlySavesTheMark() {
+        assertEquals(StockIncrementalSyncJob.Step.INITIAL_MARK,
+                StockIncrementalSyncJob.plan(StockIncrementalSyncJob.Mode.ROWVERSION, null, 5000L, 0L));
+    }
+
+    @Test
+    public void modeChangeResetsTheMark() {
+        String rowVersionMark = StockIncrementalSyncJob.formatMark(StockIncrementalSyncJob.Mode.ROWVERSION, 5000L);
+        assertEquals(StockIncrementalSyncJob.Step.RESET_MARK,
+                StockIncrementalSyncJob.plan(StockIncrementalSyncJob.Mode.DTALTER, rowVersionMark, 9000L, 0L));
+        assertEquals(StockIncrementalSyncJob.Step.RESET_MARK,
+                StockIncrementalSyncJob.plan(StockIncrementalSyncJob.Mode.DTALTER, "DTALTER:abc", 9000L, 0L));
+    }
+
+    @Test
+    public void expiredChangeTrackingVersionResetsTheMark() {
+        assertEquals(StockIncrementalSyncJob.Step.RESET_MARK,
+                StockIncrementalSyncJob.plan(StockIncrementalSyncJob.Mode.CHANGE_TRACKING,
+                        "CHANGE_TRACKING:10", 50L, 20L));
+        assertEquals(StockIncrementalSyncJob.Step.READ_CHANGES,
+                StockIncrementalSyncJob.plan(StockIncrementalSyncJob.Mode.CHANGE_TRACKING,
+                        "CHANGE_TRACKING:20", 50L, 20L));
+    }
+
+    @Test
+    public void readsOnlyWhenTheMarkMoved() {
+        assertEquals(StockIncrementalSyncJob.Step.READ_CHANGES,
+                StockIncrementalSyncJob.plan(StockIncrementalSyncJob.Mode.ROWVERSION, "ROWVERSION:100", 150L, 0L));
+        assertEquals(StockIncrementalSyncJob.Step.UP_TO_DATE,
+                StockIncrementalSyncJob.plan(StockIncrementalSyncJob.Mode.ROWVERSION, "ROWVERSION:150", 150L, 0L));
+    }
+}
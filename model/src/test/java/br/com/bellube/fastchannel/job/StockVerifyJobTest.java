@@ -0,0 +1,55 @@
+package br.com.bellube.fastchannel.job;
+
+import br.com.bellube.fastchannel.dto.StockDTO;
+import br.com.bellube.fastchannel.http.CircuitOpenException;
+import br.com.bellube.fastchannel.http.FastchannelRateLimiter;
+import br.com.bellube.fastchannel.http.ResponseDecodeException;
+import br.com.bellube.fastchannel.service.PublishedStateCache;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.MalformedJsonException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StockVerifyJobTest {
+
+    @Test
+    public void remoteQuantityMatchesPublishedHash() {
+        String published = PublishedStateCache.hash(new BigDecimal("12"));
+        assertTrue(StockVerifyJob.matchesPublished(new StockDTO("SKU-1", "ST1", new BigDecimal("12.000")), published));
+        assertFalse(StockVerifyJob.matchesPublished(new StockDTO("SKU-1", "ST1", new BigDecimal("11")), published));
+    }
+
+    @Test
+    public void missingRemoteStockIsDivergent() {
+        String published = PublishedStateCache.hash(BigDecimal.ZERO);
+        assertFalse(StockVerifyJob.matchesPublished(null, published));
+        assertFalse(StockVerifyJob.matchesPublished(new StockDTO("SKU-1", "ST1", null), published));
+        assertFalse(StockVerifyJob.matchesPublished(new StockDTO("SKU-1", "ST1", BigDecimal.ZERO), null));
+    }
+
+    @Test
+    public void apiOutagesStopTheSweep() {
+        assertTrue(StockVerifyJob.isTransientFailure(
+                new CircuitOpenException(FastchannelRateLimiter.ApiFamily.STOCK, 1000L)));
+        assertTrue(StockVerifyJob.isTransientFailure(
+                new Exception("Falha apos 3 tentativas: timeout", new SocketTimeoutException("Read timed out"))));
+        assertTrue(StockVerifyJob.isTransientFailure(
+                new Exception("Erro GET estoque Fastchannel [SKU=A] endpoint=/stock/A status=429")));
+        assertTrue(StockVerifyJob.isTransientFailure(
+                new Exception("Erro GET estoque Fastchannel [SKU=A] endpoint=/stock/A status=503 body=x")));
+    }
+
+    @Test
+    public void skuSpecificErrorsDoNotStopTheSweep() {
+        assertFalse(StockVerifyJob.isTransientFailure(
+                new Exception("Erro GET estoque Fastchannel [SKU=A] endpoint=/stock/A status=400 body=SKU invalido")));
+        assertFalse(StockVerifyJob.isTransientFailure(
+                new JsonSyntaxException(new MalformedJsonException("Unterminated object"))));
+        assertFalse(StockVerifyJob.isTransientFailure(new ResponseDecodeException(200, new IllegalStateException("x"))));
+    }
+}
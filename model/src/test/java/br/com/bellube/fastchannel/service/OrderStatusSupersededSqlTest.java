@@ -0,0 +1,113 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Executa a consulta de transicoes de pedido substituidas contra um banco em memoria.
+ */
+public class OrderStatusSupersededSqlTest {
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:superseded;MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE AD_FCQUEUE (IDQUEUE INT PRIMARY KEY, ENTITY_TYPE VARCHAR(30), " +
+                    "ENTITY_KEY VARCHAR(100), STATUS VARCHAR(20), DH_CRIACAO TIMESTAMP)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+        }
+        conn.close();
+    }
+
+    @Test
+    public void olderRetryIsSupersededByNewerSentTransition() throws Exception {
+        insert(1, "PEDIDO_STATUS", "FC-1", "ERRO", 1000L);
+        insert(2, "PEDIDO_STATUS", "FC-1", "ENVIADO", 2000L);
+        insert(3, "PEDIDO_STATUS", "FC-2", "ERRO", 1000L);
+
+        assertEquals(ids(1), select(1, 2, 3));
+    }
+
+    @Test
+    public void newerErrorBeatsOlderPending() throws Exception {
+        insert(1, "PEDIDO_STATUS", "FC-1", "PENDENTE", 1000L);
+        insert(2, "PEDIDO_STATUS", "FC-1", "ERRO", 2000L);
+
+        assertEquals(ids(1), select(1, 2));
+    }
+
+    @Test
+    public void usesQueueIdWhenCreatedAtTies() throws Exception {
+        insert(5, "PEDIDO_STATUS", "FC-1", "PENDENTE", 1000L);
+        insert(6, "PEDIDO_STATUS", "FC-1", "PENDENTE", 1000L);
+        insert(7, "ESTOQUE", "FC-1", "PENDENTE", 3000L);
+
+        assertEquals(ids(5), select(5, 6));
+    }
+
+    @Test
+    public void readsStatusOfQueuedTransition() {
+        assertEquals(Integer.valueOf(300), QueueService.payloadStatus("[\"FC-1\",300]"));
+        assertNull(QueueService.payloadStatus("[\"FC-1\"]"));
+        assertNull(QueueService.payloadStatus("invalido"));
+        assertNull(QueueService.payloadStatus(null));
+    }
+
+    private Set<BigDecimal> select(int... idQueues) throws Exception {
+        Set<BigDecimal> result = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(QueueService.buildOrderStatusSupersededSql(idQueues.length))) {
+            int idx = 1;
+            stmt.setString(idx++, "PEDIDO_STATUS");
+            for (int id : idQueues) {
+                stmt.setBigDecimal(idx++, BigDecimal.valueOf(id));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getBigDecimal("IDQUEUE"));
+                }
+            }
+        }
+        return result;
+    }
+
+    private void insert(int id, String type, String key, String status, long createdAt) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO AD_FCQUEUE VALUES (?, ?, ?, ?, ?)")) {
+            stmt.setInt(1, id);
+            stmt.setString(2, type);
+            stmt.setString(3, key);
+            stmt.setString(4, status);
+            stmt.setTimestamp(5, new Timestamp(createdAt));
+            stmt.executeUpdate();
+        }
+    }
+
+    private static Set<BigDecimal> ids(int... values) {
+        Set<BigDecimal> set = new HashSet<>();
+        for (int v : values) {
+            set.add(BigDecimal.valueOf(v));
+        }
+        return set;
+    }
+}
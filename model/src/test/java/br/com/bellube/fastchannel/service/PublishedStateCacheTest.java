@@ -0,0 +1,84 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PublishedStateCacheTest {
+
+    @Test
+    public void hashIgnoresNumericScale() {
+        assertEquals(PublishedStateCache.hash(new BigDecimal("10.00")), PublishedStateCache.hash(new BigDecimal("10")));
+        assertEquals(PublishedStateCache.hash(new BigDecimal("0.000")), PublishedStateCache.hash(BigDecimal.ZERO));
+        assertNotEquals(PublishedStateCache.hash(new BigDecimal("10")), PublishedStateCache.hash(new BigDecimal("11")));
+    }
+
+    @Test
+    public void hashSeparatesValues() {
+        assertNotEquals(PublishedStateCache.hash("1", "23"), PublishedStateCache.hash("12", "3"));
+        assertNotEquals(PublishedStateCache.hash(new BigDecimal("5"), null), PublishedStateCache.hash(null, new BigDecimal("5")));
+    }
+
+    @Test
+    public void samePublishedValueIsSuppressedPerScope() {
+        PublishedStateCache cache = new PublishedStateCache();
+        String hash = PublishedStateCache.hash(new BigDecimal("7"));
+        String scope = PublishedStateCache.stockScope("ST1", "RS1");
+
+        assertFalse(cache.isUnchanged("ESTOQUE", "SKU-1", scope, hash));
+        cache.recordPublished("ESTOQUE", "SKU-1", scope, hash);
+
+        assertTrue(cache.isUnchanged("ESTOQUE", "SKU-1", scope, hash));
+        assertFalse(cache.isUnchanged("ESTOQUE", "SKU-1", scope, PublishedStateCache.hash(new BigDecimal("8"))));
+        assertFalse(cache.isUnchanged("ESTOQUE", "SKU-1", PublishedStateCache.stockScope("ST2", "RS1"), hash));
+    }
+
+    @Test
+    public void invalidateForcesNextSend() {
+        PublishedStateCache cache = new PublishedStateCache();
+        String hash = PublishedStateCache.hash(new BigDecimal("100"));
+        String scope = PublishedStateCache.priceScope(new BigDecimal("3"), "CONSUMPTION");
+        cache.recordPublished("PRECO", "SKU-2", scope, hash);
+        cache.invalidate("PRECO", "SKU-2", scope);
+        assertFalse(cache.isUnchanged("PRECO", "SKU-2", scope, hash));
+    }
+
+    @Test
+    public void bulkHashesSqlUsesOnePlaceholderPerSku() {
+        String sql = PublishedStateCache.buildHashesSql(3);
+        assertTrue(sql.contains("WHERE ENTITY_TYPE = ? AND ESCOPO = ?"));
+        assertTrue(sql.endsWith("ENTITY_KEY IN (?, ?, ?)"));
+    }
+
+    @Test
+    public void publishedHashesFallsBackToKnownValues() {
+        PublishedStateCache cache = new PublishedStateCache();
+        String scope = PublishedStateCache.stockScope("ST1", "RS1");
+        String hash = PublishedStateCache.hash(new BigDecimal("4"));
+        cache.recordPublished("ESTOQUE", "SKU-A", scope, hash);
+
+        Map<String, String> hashes = cache.publishedHashes("ESTOQUE", Arrays.asList("SKU-A", "SKU-B", null), scope);
+        assertEquals(hash, hashes.get("SKU-A"));
+        assertFalse(hashes.containsKey("SKU-B"));
+        assertTrue(cache.publishedHashes("ESTOQUE", Arrays.asList("SKU-A"), PublishedStateCache.stockScope("ST2", null)).isEmpty());
+    }
+
+    @Test
+    public void forgetDropsKnownValue() {
+        PublishedStateCache cache = new PublishedStateCache();
+        String scope = PublishedStateCache.stockScope("ST1", null);
+        String hash = PublishedStateCache.hash(BigDecimal.ONE);
+        cache.recordPublished("ESTOQUE", "SKU-C", scope, hash);
+        cache.forget("ESTOQUE", "SKU-C", scope);
+        assertNull(cache.publishedHashes("ESTOQUE", Arrays.asList("SKU-C"), scope).get("SKU-C"));
+        assertFalse(cache.isUnchanged("ESTOQUE", "SKU-C", scope, hash));
+    }
+}
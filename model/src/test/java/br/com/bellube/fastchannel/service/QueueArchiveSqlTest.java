@@ -0,0 +1,80 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueueArchiveSqlTest {
+
+    @Test
+    public void archiveMovesKeyedChunkIntoHistory() {
+        String sql = QueueService.getInstance().buildArchiveChunkSql(true);
+        assertTrue(sql.contains("SELECT TOP (?) * FROM AD_FCQUEUE WITH (ROWLOCK, READPAST)"));
+        assertTrue(sql.contains("ORDER BY IDQUEUE"));
+        assertTrue(sql.contains("OUTPUT deleted.IDQUEUE"));
+        assertTrue(sql.contains("INTO AD_FCQUEUE_HIST (IDQUEUE"));
+        assertTrue(sql.endsWith("DH_ARQUIVAMENTO)"));
+    }
+
+    @Test
+    public void dropModeOnlyDeletesTheChunk() {
+        String sql = QueueService.getInstance().buildArchiveChunkSql(false);
+        assertTrue(sql.endsWith("DELETE FROM LOTE"));
+        assertFalse(sql.contains("AD_FCQUEUE_HIST"));
+    }
+
+    @Test
+    public void pendingAndRetryableRowsAreNeverArchived() {
+        String sql = QueueService.getInstance().buildArchiveChunkSql(true);
+        assertFalse(sql.contains("'PENDENTE'"));
+        assertFalse(sql.contains("'ERRO',"));
+        assertFalse(sql.contains("'PROCESSANDO'"));
+    }
+
+    @Test
+    public void stopsAtFirstPartialChunk() throws Exception {
+        FakeQueue queue = new FakeQueue(2500);
+        assertEquals(2500, QueueService.drainInChunks(queue, 1000, 0L, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(1000, 1000, 500), queue.chunks);
+    }
+
+    @Test
+    public void exactMultipleNeedsOneEmptyChunkToStop() throws Exception {
+        FakeQueue queue = new FakeQueue(2000);
+        assertEquals(2000, QueueService.drainInChunks(queue, 1000, 0L, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(1000, 1000, 0), queue.chunks);
+    }
+
+    @Test
+    public void expiredBudgetLeavesTheRestForNextRun() throws Exception {
+        FakeQueue queue = new FakeQueue(2500);
+        assertEquals(1000, QueueService.drainInChunks(queue, 1000, 0L, 0L));
+        assertEquals(1500, queue.remaining);
+    }
+
+    /**
+     * Fila com {@code remaining} linhas elegiveis; cada bloco remove ate o tamanho pedido.
+     */
+    private static final class FakeQueue implements QueueService.ChunkStep {
+        private final List<Integer> chunks = new ArrayList<>();
+        private int remaining;
+
+        private FakeQueue(int remaining) {
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int run(int size) {
+            int moved = Math.min(size, remaining);
+            remaining -= moved;
+            chunks.add(moved);
+            return moved;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueueDebounceCacheTest {
+
+    @Test
+    public void hitsWithinWindowByIdOrKey() {
+        QueueDebounceCache cache = new QueueDebounceCache(60_000);
+        assertFalse(cache.isRecentlyQueued("ESTOQUE", new BigDecimal("10"), "SKU10"));
+        cache.recordQueued("ESTOQUE", new BigDecimal("10"), "SKU10");
+
+        assertTrue(cache.isRecentlyQueued("ESTOQUE", new BigDecimal("10"), null));
+        assertTrue(cache.isRecentlyQueued("ESTOQUE", null, "SKU10"));
+        assertFalse(cache.isRecentlyQueued("PRECO", new BigDecimal("10"), "SKU10"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void expiresAfterWindowAndOnInvalidate() throws Exception {
+        QueueDebounceCache cache = new QueueDebounceCache(30);
+        cache.recordQueued("ESTOQUE", BigDecimal.ONE, "A");
+        Thread.sleep(60);
+        assertFalse(cache.isRecentlyQueued("ESTOQUE", BigDecimal.ONE, "A"));
+
+        QueueDebounceCache longCache = new QueueDebounceCache(60_000);
+        longCache.recordQueued("ESTOQUE", BigDecimal.ONE, "A");
+        longCache.invalidate("ESTOQUE", BigDecimal.ONE, "A");
+        assertFalse(longCache.isRecentlyQueued("ESTOQUE", BigDecimal.ONE, "A"));
+    }
+}
@@ -0,0 +1,79 @@
+package br.com.bellube.fastchannel.service;
+
+import br.com.bellube.fastchannel.dto.QueueItemDTO;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QueueServiceBulkEnqueueTest {
+
+    @Test
+    public void bulkInsertDebouncesWithNotExists() {
+        String sql = QueueService.getInstance().buildBulkInsertSql(2);
+        assertTrue(sql.startsWith("INSERT INTO AD_FCQUEUE"));
+        assertTrue(sql.contains("(?, ?, ?, ?, ?, ?, ?), (?, ?, ?, ?, ?, ?, ?)"));
+        assertTrue(sql.contains("WHERE NOT EXISTS"));
+        assertEquals(15, sql.length() - sql.replace("?", "").length());
+    }
+
+    @Test
+    public void scopeReportsFlushThatCouldNotBeWritten() {
+        QueueService queue = QueueService.getInstance();
+        try (QueueService.BulkScope scope = queue.openBulkScope()) {
+            assertFalse(scope.hasFailed());
+            // Sem datasource no teste: a gravacao do lote falha
+            queue.enqueue("ESTOQUE", "UPDATE", new BigDecimal("987001"), "SKU-FALHA", null);
+            assertEquals(0, scope.flush());
+            assertTrue(scope.hasFailed());
+            assertEquals(0, scope.getEnqueued());
+        }
+    }
+
+    @Test
+    public void dedupeKeepsLastItemPerKeyAtItsPosition() {
+        QueueItemDTO firstA = item("ESTOQUE", 987101, "SKU-A", "{\"q\":1}");
+        QueueItemDTO b = item("ESTOQUE", 987102, "SKU-B", "{\"q\":5}");
+        QueueItemDTO lastA = item("ESTOQUE", 987101, "SKU-A", "{\"q\":2}");
+        QueueItemDTO priceA = item("PRECO", 987101, "SKU-A", "{\"p\":9}");
+
+        List<QueueItemDTO> rows = QueueService.getInstance().dedupe(Arrays.asList(firstA, b, null, lastA, priceA));
+
+        assertEquals(3, rows.size());
+        assertSame(b, rows.get(0));
+        assertSame(lastA, rows.get(1));
+        assertSame(priceA, rows.get(2));
+    }
+
+    @Test
+    public void dedupeSkipsRecentlyQueuedItems() {
+        QueueService queue = QueueService.getInstance();
+        queue.getDebounceCache().recordQueued("ESTOQUE", new BigDecimal("987201"), "SKU-RECENTE");
+        QueueItemDTO recent = item("ESTOQUE", 987201, "SKU-RECENTE", null);
+        QueueItemDTO fresh = item("ESTOQUE", 987202, "SKU-NOVO", null);
+
+        List<QueueItemDTO> rows = queue.dedupe(Arrays.asList(recent, fresh));
+
+        assertEquals(1, rows.size());
+        assertSame(fresh, rows.get(0));
+    }
+
+    @Test
+    public void emptyListEnqueuesNothing() {
+        assertEquals(0, QueueService.getInstance().enqueueAll(Collections.emptyList()));
+    }
+
+    private static QueueItemDTO item(String type, int id, String key, String payload) {
+        QueueItemDTO item = new QueueItemDTO(type, "UPDATE", BigDecimal.valueOf(id));
+        item.setEntityKey(key);
+        item.setPayload(payload);
+        return item;
+    }
+}
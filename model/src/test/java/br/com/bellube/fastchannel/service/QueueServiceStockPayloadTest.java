@@ -4,6 +4,7 @@ import org.junit.Test;
 
 import java.math.BigDecimal;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class QueueServiceStockPayloadTest {
@@ -22,4 +23,10 @@ public class QueueServiceStockPayloadTest {
         assertTrue(payload.contains("\"codEmp\":26"));
         assertTrue(payload.contains("\"codLocal\":99000000"));
     }
+
+    @Test
+    public void scopeIdentifiesStorageAndReseller() {
+        QueueService queueService = QueueService.getInstance();
+        assertEquals("2|21", queueService.buildStockScope("2", "21"));
+    }
 }
@@ -0,0 +1,61 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueueStatusBatchSqlTest {
+
+    @Test
+    public void successUsesSingleInListGuardedByLeaseOwner() throws Exception {
+        String sql = invoke("buildSuccessSql", new Class<?>[]{int.class}, 3);
+        assertTrue(sql.contains("IDQUEUE IN (?, ?, ?)"));
+        assertTrue(sql.contains("LEASE_OWNER = ? OR LEASE_OWNER IS NULL"));
+    }
+
+    @Test
+    public void onlyRetryableErrorIncrementsRetryCount() throws Exception {
+        Class<?>[] types = {String.class, int.class};
+        String erro = invoke("buildStatusWithMessageSql", types, "ERRO", 2);
+        String fatal = invoke("buildStatusWithMessageSql", types, "ERRO_FATAL", 2);
+        assertTrue(erro.contains("RETRY_COUNT = Q.RETRY_COUNT + 1"));
+        assertFalse(fatal.contains("RETRY_COUNT"));
+    }
+
+    @Test
+    public void retryableErrorSchedulesNextAttempt() throws Exception {
+        Class<?>[] types = {String.class, int.class};
+        String erro = invoke("buildStatusWithMessageSql", types, "ERRO", 2);
+        String fatal = invoke("buildStatusWithMessageSql", types, "ERRO_FATAL", 2);
+        assertTrue(erro.contains("VALUES (?, ?, ?), (?, ?, ?)"));
+        assertTrue(erro.contains("NEXT_ATTEMPT_AT = DATEADD(SECOND, V.DELAY, CURRENT_TIMESTAMP)"));
+        assertTrue(fatal.contains("VALUES (?, ?), (?, ?)"));
+        assertTrue(fatal.contains("NEXT_ATTEMPT_AT = NULL"));
+    }
+
+    @Test
+    public void supersededStampsProcessingTime() throws Exception {
+        Class<?>[] types = {String.class, int.class};
+        String superseded = invoke("buildStatusWithMessageSql", types, "SUBSTITUIDO", 1);
+        assertTrue(superseded.contains("DH_PROCESSAMENTO = CURRENT_TIMESTAMP"));
+        assertFalse(superseded.contains("RETRY_COUNT"));
+    }
+
+    @Test
+    public void deferredSchedulesWithoutCountingAttempt() throws Exception {
+        Class<?>[] types = {String.class, int.class};
+        String deferred = invoke("buildStatusWithMessageSql", types, "PENDENTE", 2);
+        assertTrue(deferred.contains("VALUES (?, ?, ?), (?, ?, ?)"));
+        assertTrue(deferred.contains("NEXT_ATTEMPT_AT = DATEADD(SECOND, V.DELAY, CURRENT_TIMESTAMP)"));
+        assertFalse(deferred.contains("RETRY_COUNT"));
+    }
+
+    private String invoke(String name, Class<?>[] types, Object... args) throws Exception {
+        Method method = QueueService.class.getDeclaredMethod(name, types);
+        method.setAccessible(true);
+        return (String) method.invoke(QueueService.getInstance(), args);
+    }
+}
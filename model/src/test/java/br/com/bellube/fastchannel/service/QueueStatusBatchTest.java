@@ -0,0 +1,94 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueueStatusBatchTest {
+
+    private final Map<String, List<QueueStatusBatch.Outcome>> written = new LinkedHashMap<>();
+    private int writes;
+
+    private final QueueStatusBatch.StatusWriter writer = (status, outcomes) -> {
+        writes++;
+        written.computeIfAbsent(status, key -> new ArrayList<>()).addAll(outcomes);
+        return outcomes.size();
+    };
+
+    @Test
+    public void flushWritesOneGroupPerStatus() {
+        QueueStatusBatch batch = new QueueStatusBatch(writer, 100, 60_000L);
+        batch.success(id(1));
+        batch.error(id(2), 1, "timeout");
+        batch.success(id(3));
+        batch.fatal(id(4), "400");
+        batch.error(id(5), 0, "503");
+
+        assertEquals(0, writes);
+        assertEquals(5, batch.flush());
+
+        assertEquals(3, writes);
+        assertEquals("1,3", ids(written.get("ENVIADO")));
+        assertEquals("2,5", ids(written.get("ERRO")));
+        assertEquals("4", ids(written.get("ERRO_FATAL")));
+        assertEquals(0, batch.getPendingCount());
+        assertEquals(0, batch.flush());
+    }
+
+    @Test
+    public void errorCarriesAttemptAndDeferredCarriesDelay() {
+        QueueStatusBatch batch = new QueueStatusBatch(writer, 100, 60_000L);
+        batch.error(id(1), 2, "timeout");
+        batch.deferred(id(2), 30, "circuito aberto");
+        batch.deferred(id(3), 0, "circuito aberto");
+        batch.flush();
+
+        QueueStatusBatch.Outcome error = written.get("ERRO").get(0);
+        assertEquals(3, error.attempt);
+        assertEquals(0, error.delaySeconds);
+
+        List<QueueStatusBatch.Outcome> deferred = written.get("PENDENTE");
+        assertEquals(0, deferred.get(0).attempt);
+        assertEquals(30, deferred.get(0).delaySeconds);
+        assertEquals(1, deferred.get(1).delaySeconds);
+    }
+
+    @Test
+    public void flushesWhenPendingLimitIsReached() {
+        QueueStatusBatch batch = new QueueStatusBatch(writer, 2, 60_000L);
+        batch.success(id(1));
+        assertEquals(0, writes);
+
+        batch.superseded(id(2), "substituido");
+        assertEquals(2, writes);
+        assertEquals(0, batch.getPendingCount());
+        assertEquals("2", ids(written.get("SUBSTITUIDO")));
+    }
+
+    @Test
+    public void ignoresOutcomeWithoutQueueId() {
+        QueueStatusBatch batch = new QueueStatusBatch(writer, 100, 60_000L);
+        batch.success(null);
+        assertEquals(0, batch.getPendingCount());
+        assertEquals(0, batch.flush());
+        assertEquals(0, writes);
+    }
+
+    private static BigDecimal id(int value) {
+        return BigDecimal.valueOf(value);
+    }
+
+    private static String ids(List<QueueStatusBatch.Outcome> outcomes) {
+        StringBuilder sb = new StringBuilder();
+        for (QueueStatusBatch.Outcome outcome : outcomes) {
+            sb.append(sb.length() == 0 ? "" : ",").append(outcome.idQueue.toPlainString());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Executa a gravacao em lote de ENVIADO contra um banco em memoria para
+ * conferir a cerca do lease com escritas atrasadas.
+ */
+public class QueueStatusFenceSqlTest {
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:fence;MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE AD_FCQUEUE (IDQUEUE INT PRIMARY KEY, STATUS VARCHAR(20), " +
+                    "LAST_ERROR VARCHAR(4000), DH_PROCESSAMENTO TIMESTAMP, NEXT_ATTEMPT_AT TIMESTAMP, " +
+                    "LEASE_OWNER VARCHAR(100), LEASE_EXPIRES TIMESTAMP)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+        }
+        conn.close();
+    }
+
+    @Test
+    public void lateWriterCannotRewriteRowFinishedByAnotherNode() throws Exception {
+        // Lease de A expirou, B reivindicou, enviou e finalizou com ERRO_FATAL
+        insert(1, "ERRO_FATAL", null);
+
+        assertEquals(0, writeSuccess("node-A", 1));
+        assertEquals("ERRO_FATAL", status(1));
+    }
+
+    @Test
+    public void lateWriterCannotTouchRowReclaimedByAnotherNode() throws Exception {
+        insert(1, "PROCESSANDO", "node-B");
+
+        assertEquals(0, writeSuccess("node-A", 1));
+        assertEquals("PROCESSANDO", status(1));
+    }
+
+    @Test
+    public void ownerAndLegacyRowsWithoutLeaseAreWritten() throws Exception {
+        insert(1, "PROCESSANDO", "node-A");
+        insert(2, "PROCESSANDO", null);
+
+        assertEquals(2, writeSuccess("node-A", 1, 2));
+        assertEquals("ENVIADO", status(1));
+        assertEquals("ENVIADO", status(2));
+    }
+
+    @Test
+    public void messageWritesUseTheSameFence() {
+        String sql = QueueService.buildStatusWithMessageSql("ERRO", 1);
+        assertTrue(sql.endsWith("WHERE Q.STATUS = 'PROCESSANDO' AND (Q.LEASE_OWNER = ? OR Q.LEASE_OWNER IS NULL)"));
+    }
+
+    private int writeSuccess(String owner, int... idQueues) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(QueueService.buildSuccessSql(idQueues.length))) {
+            int idx = 1;
+            stmt.setString(idx++, "ENVIADO");
+            for (int id : idQueues) {
+                stmt.setInt(idx++, id);
+            }
+            stmt.setString(idx, owner);
+            return stmt.executeUpdate();
+        }
+    }
+
+    private String status(int idQueue) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT STATUS FROM AD_FCQUEUE WHERE IDQUEUE = ?")) {
+            stmt.setInt(1, idQueue);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private void insert(int id, String status, String owner) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO AD_FCQUEUE (IDQUEUE, STATUS, LEASE_OWNER) VALUES (?, ?, ?)")) {
+            stmt.setInt(1, id);
+            stmt.setString(2, status);
+            stmt.setString(3, owner);
+            stmt.executeUpdate();
+        }
+    }
+}
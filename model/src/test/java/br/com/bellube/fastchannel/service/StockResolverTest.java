@@ -2,6 +2,12 @@ package br.com.bellube.fastchannel.service;
 
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class StockResolverTest {
@@ -19,4 +25,56 @@ public class StockResolverTest {
         StockResolver resolver = new StockResolver();
         assertTrue(resolver.resolve(null, null, null) == null);
     }
+
+    @Test
+    public void bulkSqlGroupsByProductWithBrandFilter() {
+        String sql = StockResolver.buildManySql(true, 3);
+        assertTrue(sql.contains("SUM(E.ESTOQUE - E.RESERVADO)"));
+        assertTrue(sql.contains("INNER JOIN TGFMAR M"));
+        assertTrue(sql.contains("M.AD_FASTREF IN ('C','R')"));
+        assertTrue(sql.contains("E.CODPROD IN (:p0, :p1, :p2)"));
+        assertTrue(sql.endsWith("GROUP BY E.CODPROD"));
+    }
+
+    @Test
+    public void bulkSqlFallbackSkipsBrandTables() {
+        String sql = StockResolver.buildManySql(false, 1);
+        assertFalse(sql.contains("TGFMAR"));
+        assertFalse(sql.contains("AD_FAST"));
+        assertTrue(sql.contains("P.ATIVO = 'S'"));
+        assertTrue(sql.contains("E.CODPROD IN (:p0)"));
+    }
+
+    @Test
+    public void resolveManyReturnsEmptyMapWithoutKeys() {
+        StockResolver resolver = new StockResolver();
+        assertTrue(resolver.resolveMany(Collections.<BigDecimal>emptyList(), BigDecimal.ONE, BigDecimal.ONE).isEmpty());
+        assertTrue(resolver.resolveMany(Arrays.asList(BigDecimal.ONE), null, BigDecimal.ONE).isEmpty());
+        assertEquals(0, resolver.resolveMany(null, BigDecimal.ONE, BigDecimal.ONE).size());
+    }
+
+    @Test
+    public void pageSqlJoinsSkuAndStockInKeyOrder() {
+        String sql = StockResolver.buildPageSql(true, 200);
+        assertTrue(sql.startsWith("SELECT TOP 200 P.CODPROD, P.ATIVO, P.REFFORN, M.AD_FAST, M.AD_FASTREF"));
+        assertTrue(sql.contains("LEFT JOIN TGFMAR M ON M.CODIGO = P.CODMARCA"));
+        assertTrue(sql.contains("E.CODPROD = P.CODPROD AND E.CODEMP = :codEmp AND E.CODLOCAL = :codLocal"));
+        assertTrue(sql.contains("WHERE P.CODPROD > :afterCodProd"));
+        assertTrue(sql.endsWith("ORDER BY P.CODPROD"));
+
+        String fallback = StockResolver.buildPageSql(false, 0);
+        assertTrue(fallback.startsWith("SELECT TOP 1 "));
+        assertFalse(fallback.contains("TGFMAR"));
+    }
+
+    @Test
+    public void pageQuantityFollowsResolveFilter() {
+        BigDecimal qtd = new BigDecimal("7");
+        assertEquals(qtd, StockResolver.availableQuantity(true, "S", "S", "R", qtd));
+        assertEquals(BigDecimal.ZERO, StockResolver.availableQuantity(true, "S", "N", "C", qtd));
+        assertEquals(BigDecimal.ZERO, StockResolver.availableQuantity(true, "S", "S", "X", qtd));
+        assertEquals(BigDecimal.ZERO, StockResolver.availableQuantity(true, "N", "S", "C", qtd));
+        assertEquals(qtd, StockResolver.availableQuantity(false, "S", null, null, qtd));
+        assertEquals(BigDecimal.ZERO, StockResolver.availableQuantity(false, "S", null, null, null));
+    }
 }
@@ -0,0 +1,44 @@
+package br.com.bellube.fastchannel.service;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyncStateServiceTest {
+
+    private static SyncStateService.SyncState state(String status, String lastKey, long updatedAt) {
+        return new SyncStateService.SyncState("STOCK_FULL", status, lastKey, 400, 100, 95, 5,
+                new Timestamp(updatedAt - 60_000L), new Timestamp(updatedAt), null);
+    }
+
+    @Test
+    public void unfinishedRunWithKeyIsResumable() {
+        long now = System.currentTimeMillis();
+        assertTrue(state(SyncStateService.STATUS_EXECUTANDO, "1500", now).isResumable());
+        assertTrue(state(SyncStateService.STATUS_INTERROMPIDO, "1500", now).isResumable());
+        assertFalse(state(SyncStateService.STATUS_CONCLUIDO, "1500", now).isResumable());
+        assertFalse(state(SyncStateService.STATUS_INTERROMPIDO, null, now).isResumable());
+    }
+
+    @Test
+    public void staleCheckpointIsNotAnActiveRun() {
+        long now = System.currentTimeMillis();
+        assertTrue(state(SyncStateService.STATUS_EXECUTANDO, "10", now - 60_000L).isRunningElsewhere(now));
+        assertFalse(state(SyncStateService.STATUS_EXECUTANDO, "10",
+                now - SyncStateService.ACTIVE_RUN_WINDOW_MS - 1).isRunningElsewhere(now));
+        assertFalse(state(SyncStateService.STATUS_INTERROMPIDO, "10", now).isRunningElsewhere(now));
+    }
+
+    @Test
+    public void toMapReportsProgress() {
+        Map<String, Object> map = state(SyncStateService.STATUS_EXECUTANDO, "10", System.currentTimeMillis()).toMap();
+        assertEquals("STOCK_FULL", map.get("name"));
+        assertEquals(25d, map.get("percent"));
+        assertEquals(5L, map.get("failed"));
+    }
+}
@@ -0,0 +1,37 @@
+package br.com.bellube.fastchannel.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryBackoffTest {
+
+    @Test
+    public void delayDoublesPerAttempt() {
+        assertEquals(60, RetryBackoff.delaySeconds(1, 60, 3600, 1d));
+        assertEquals(120, RetryBackoff.delaySeconds(2, 60, 3600, 1d));
+        assertEquals(240, RetryBackoff.delaySeconds(3, 60, 3600, 1d));
+    }
+
+    @Test
+    public void jitterKeepsAtLeastHalfOfTheDelay() {
+        assertEquals(60, RetryBackoff.delaySeconds(2, 60, 3600, 0d));
+        int delay = RetryBackoff.delaySeconds(2, 60, 3600);
+        assertTrue(delay >= 60 && delay <= 120);
+    }
+
+    @Test
+    public void decorrelatedJitterStaysBetweenBaseAndTriplePrevious() {
+        assertEquals(1000L, RetryBackoff.decorrelatedJitterMs(1000L, 1000L, 30000L, 0d));
+        assertEquals(3000L, RetryBackoff.decorrelatedJitterMs(1000L, 1000L, 30000L, 1d));
+        assertEquals(6000L, RetryBackoff.decorrelatedJitterMs(3000L, 1000L, 30000L, 0.625d));
+        assertEquals(30000L, RetryBackoff.decorrelatedJitterMs(20000L, 1000L, 30000L, 1d));
+    }
+
+    @Test
+    public void delayIsCappedForLargeAttempts() {
+        assertEquals(3600, RetryBackoff.delaySeconds(50, 60, 3600, 1d));
+        assertEquals(1800, RetryBackoff.delaySeconds(50, 60, 3600, 0d));
+    }
+}